@@ -0,0 +1,81 @@
+package ca.ubc.cs317.dict.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Minimal benchmark harness: runs a body repeatedly for a warmup period and then for a measurement period, reporting
+ * throughput, average time per operation and bytes allocated per operation by the benchmark thread.
+ */
+public final class Bench {
+
+    public interface Body {
+        Object run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final PrintStream OUT = System.out;
+
+    private static volatile int sink;
+
+    private final long warmupMillis;
+    private final long measureMillis;
+
+    public Bench(long warmupMillis, long measureMillis) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+    }
+
+    public static void printHeader() {
+        OUT.printf(Locale.ROOT, "%-44s %14s %12s %12s %14s%n", "benchmark", "ops/s", "us/op", "MB/s", "alloc B/op");
+    }
+
+    /**
+     * Prints a line of information that is not a timing result (e.g., a memory footprint), below the header.
+     */
+    public static void note(String format, Object... args) {
+        OUT.printf(Locale.ROOT, "# " + format + "%n", args);
+    }
+
+    /**
+     * Measures a benchmark body and prints one result line.
+     *
+     * @param name       Name printed for the benchmark.
+     * @param bytesPerOp Size of the input processed by each operation, used to report MB/s, or 0 if not applicable.
+     * @param body       Code being measured. Its result is consumed so the JIT can't discard the work.
+     */
+    public void run(String name, long bytesPerOp, Body body) throws Exception {
+        loop(body, warmupMillis);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = loop(body, measureMillis);
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        double seconds = elapsed / 1e9;
+        double opsPerSecond = ops / seconds;
+        OUT.printf(Locale.ROOT, "%-44s %14.1f %12.3f %12s %14d%n", name, opsPerSecond, 1e6 / opsPerSecond,
+                bytesPerOp > 0 ? String.format(Locale.ROOT, "%.1f", bytesPerOp * opsPerSecond / (1 << 20)) : "-",
+                allocated / Math.max(1, ops));
+    }
+
+    private static long loop(Body body, long millis) throws Exception {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long ops = 0;
+        int batch = 1;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < batch; i++) {
+                Object result = body.run();
+                sink += result == null ? 0 : result.hashCode();
+            }
+            ops += batch;
+            if (batch < 1024) batch *= 2;
+        }
+        return ops;
+    }
+}
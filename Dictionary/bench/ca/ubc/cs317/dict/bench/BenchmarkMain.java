@@ -0,0 +1,27 @@
+package ca.ubc.cs317.dict.bench;
+
+/**
+ * Runs the benchmark suites. The first argument, if present, selects the suite ("parser", "connection", "trie" or
+ * "gateway"); the warmup and measurement periods can be changed with the bench.warmup and bench.measure system
+ * properties (in milliseconds).
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String suite = args.length > 0 ? args[0] : "all";
+        Bench bench = new Bench(Long.getLong("bench.warmup", 1000), Long.getLong("bench.measure", 2000));
+
+        Bench.printHeader();
+        if (suite.equals("all") || suite.equals("parser"))
+            ParserBenchmarks.run(bench);
+        if (suite.equals("all") || suite.equals("connection"))
+            ConnectionBenchmarks.run(bench);
+        if (suite.equals("all") || suite.equals("trie"))
+            TrieBenchmarks.run(bench);
+        if (suite.equals("all") || suite.equals("gateway"))
+            GatewayBenchmarks.run(bench);
+    }
+}
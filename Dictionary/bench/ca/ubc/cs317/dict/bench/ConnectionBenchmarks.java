@@ -0,0 +1,86 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * End-to-end benchmarks of DictionaryConnection against an in-process FakeDictServer, covering single requests and
+ * pipelined batches.
+ */
+public final class ConnectionBenchmarks {
+
+    private static final Database ALL = new Database("*", "All databases");
+    private static final MatchingStrategy PREFIX = new MatchingStrategy("prefix", "Match prefixes");
+    private static final int BATCH_SIZE = 100;
+    private static final int DEFINITION_LINES = 40;
+
+    private ConnectionBenchmarks() {
+    }
+
+    public static void run(Bench bench) throws Exception {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++)
+            words.add("word" + i);
+
+        for (int databases : new int[]{1, 20}) {
+            try (FakeDictServer server = createServer(databases, words, 0)) {
+                DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+                long replyBytes = connection.getDefinitions("set", ALL).size() * DEFINITION_LINES * 60L;
+                bench.run("connection.define." + databases, replyBytes,
+                        () -> connection.getDefinitions("set", ALL));
+                bench.run("connection.defineSequential." + databases + "x" + BATCH_SIZE, replyBytes * BATCH_SIZE, () -> {
+                    int count = 0;
+                    for (String word : words)
+                        count += connection.getDefinitions(word, ALL).size();
+                    return count;
+                });
+                bench.run("connection.definePipelined." + databases + "x" + BATCH_SIZE, replyBytes * BATCH_SIZE,
+                        () -> connection.getDefinitions(words, ALL));
+                connection.close();
+            }
+        }
+
+        for (int matches : new int[]{100, 10000}) {
+            try (FakeDictServer server = createServer(1, words, matches)) {
+                DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+                bench.run("connection.match." + matches, 0, () -> connection.getMatchList("set", PREFIX, ALL));
+                connection.close();
+            }
+        }
+
+        // With 2ms of latency per command, pipelining should hide most of it
+        try (FakeDictServer server = createServer(1, words, 0).setLatency("define", 2)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            bench.run("connection.defineSequential.latency2ms", 0, () -> {
+                int count = 0;
+                for (String word : words)
+                    count += connection.getDefinitions(word, ALL).size();
+                return count;
+            });
+            bench.run("connection.definePipelined.latency2ms", 0, () -> connection.getDefinitions(words, ALL));
+            connection.close();
+        }
+    }
+
+    private static FakeDictServer createServer(int databases, List<String> words, int extraHeadwords) throws Exception {
+        FakeDictServer server = new FakeDictServer();
+        Random random = new Random(databases);
+        String[] names = ReplyFixtures.databases();
+        for (int i = 0; i < databases; i++) {
+            server.addDatabase(names[i], names[i] + " dictionary");
+            server.addDefinition(names[i], "set", ReplyFixtures.definitionText("set", DEFINITION_LINES, random));
+            for (String word : words)
+                server.addDefinition(names[i], word, ReplyFixtures.definitionText(word, DEFINITION_LINES, random));
+            for (int j = 0; j < extraHeadwords; j++)
+                server.addDefinition(names[i], "set" + j, "set " + j);
+        }
+        server.start(0);
+        return server;
+    }
+}
@@ -0,0 +1,97 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.cache.LruDefinitionCache;
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.http.DictHttpGateway;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Load on DictHttpGateway from an HTTP client in the same process, with a FakeDictServer behind it that takes 1ms per
+ * DEFINE: single requests answered from the shared cache, with and without gzip, bursts of concurrent requests, and
+ * bursts of identical uncached requests that the gateway coalesces into one DICT command.
+ */
+public final class GatewayBenchmarks {
+
+    private static final int WORDS = 100;
+    private static final int DEFINITION_LINES = 40;
+    private static final int BURST = 64;
+
+    private GatewayBenchmarks() {
+    }
+
+    public static void run(Bench bench) throws Exception {
+        FakeDictServer server = new FakeDictServer();
+        Random random = new Random(WORDS);
+        String database = ReplyFixtures.databases()[0];
+        server.addDatabase(database, database + " dictionary");
+        for (int i = 0; i < WORDS; i++)
+            server.addDefinition(database, "word" + i, ReplyFixtures.definitionText("word" + i, DEFINITION_LINES, random));
+        server.setLatency("define", 1);
+        server.start(0);
+
+        DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 8,
+                DictionaryConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        LruDefinitionCache cache = new LruDefinitionCache(10000, 64 * 1024 * 1024, 60 * 60 * 1000);
+        pool.setDefinitionCache(cache);
+        DictHttpGateway gateway = new DictHttpGateway(pool, new InetSocketAddress("localhost", 0),
+                DictHttpGateway.DEFAULT_THREADS);
+        gateway.start();
+
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://localhost:" + gateway.getPort() + "/define?db=" + database + "&word=";
+            List<HttpRequest> plain = new ArrayList<>(), gzip = new ArrayList<>();
+            for (int i = 0; i < WORDS; i++) {
+                plain.add(HttpRequest.newBuilder(URI.create(base + "word" + i)).build());
+                gzip.add(HttpRequest.newBuilder(URI.create(base + "word" + i)).header("Accept-Encoding", "gzip").build());
+            }
+
+            HttpResponse<byte[]> sample = client.send(plain.get(0), HttpResponse.BodyHandlers.ofByteArray());
+            HttpResponse<byte[]> compressed = client.send(gzip.get(0), HttpResponse.BodyHandlers.ofByteArray());
+            Bench.note("define reply: %d bytes, %d with %s", sample.body().length, compressed.body().length,
+                    compressed.headers().firstValue("Content-Encoding").orElse("no encoding"));
+
+            bench.run("gateway.define.cached", sample.body().length,
+                    () -> client.send(plain.get(0), HttpResponse.BodyHandlers.ofByteArray()).body().length);
+            bench.run("gateway.define.cached.gzip", sample.body().length,
+                    () -> client.send(gzip.get(0), HttpResponse.BodyHandlers.ofByteArray()).body().length);
+            bench.run("gateway.define.concurrent" + BURST, sample.body().length * BURST, () -> {
+                List<CompletableFuture<HttpResponse<byte[]>>> replies = new ArrayList<>();
+                for (int i = 0; i < BURST; i++)
+                    replies.add(client.sendAsync(plain.get(i % WORDS), HttpResponse.BodyHandlers.ofByteArray()));
+                int bytes = 0;
+                for (CompletableFuture<HttpResponse<byte[]>> reply : replies)
+                    bytes += reply.join().body().length;
+                return bytes;
+            });
+
+            long coalescedBefore = gateway.getCoalescedCount(), requestsBefore = gateway.getRequestCount();
+            bench.run("gateway.define.uncachedBurst" + BURST, sample.body().length * BURST, () -> {
+                cache.clear();
+                List<CompletableFuture<HttpResponse<byte[]>>> replies = new ArrayList<>();
+                for (int i = 0; i < BURST; i++)
+                    replies.add(client.sendAsync(plain.get(0), HttpResponse.BodyHandlers.ofByteArray()));
+                int bytes = 0;
+                for (CompletableFuture<HttpResponse<byte[]>> reply : replies)
+                    bytes += reply.join().body().length;
+                return bytes;
+            });
+            Bench.note("uncached bursts: %.1f%% of requests coalesced",
+                    100.0 * (gateway.getCoalescedCount() - coalescedBefore) / (gateway.getRequestCount() - requestsBefore));
+        } finally {
+            gateway.close();
+            pool.close();
+            server.close();
+        }
+    }
+}
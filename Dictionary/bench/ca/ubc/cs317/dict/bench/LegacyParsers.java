@@ -0,0 +1,48 @@
+package ca.ubc.cs317.dict.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copies of the parsing code used before the ByteBuffer decoder and the hand-written tokenizer, kept as baselines so
+ * that the benchmarks show the effect of those changes.
+ */
+final class LegacyParsers {
+
+    private static final Pattern STRING_UNIT = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+    private LegacyParsers() {
+    }
+
+    static String[] splitAtoms(String original) {
+        List<String> list = new ArrayList<>();
+        Matcher m = STRING_UNIT.matcher(original);
+        while (m.find()) {
+            list.add(m.group(m.group(1) != null ? 1 : 2));
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    static int statusCode(String line) {
+        String[] components = line.split(" ", 2);
+        try {
+            return Integer.parseInt(components[0]);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    static String readDefinitionBody(BufferedReader input) throws IOException {
+        String fromServer;
+        String definition = "";
+        while ((fromServer = input.readLine()) != null) {
+            if (fromServer.equals(".")) break;
+            definition = definition.concat(fromServer + "\n");
+        }
+        return definition;
+    }
+}
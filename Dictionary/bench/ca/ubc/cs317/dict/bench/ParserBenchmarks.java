@@ -0,0 +1,91 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.net.DictReplyDecoder;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Benchmarks of the parsing hot paths: atom splitting, status lines, definition bodies and match lists. Each current
+ * implementation is measured next to the code it replaced.
+ */
+public final class ParserBenchmarks {
+
+    private static final String HEADER_LINE = "\"set\" gcide \"The Collaborative International Dictionary of English v.0.48\"";
+    private static final String STATUS_LINE = "151 \"set\" gcide \"The Collaborative International Dictionary of English v.0.48\"";
+
+    private ParserBenchmarks() {
+    }
+
+    public static void run(Bench bench) throws Exception {
+        int[] bounds = new int[8];
+        bench.run("splitAtoms.legacyRegex", HEADER_LINE.length(), () -> LegacyParsers.splitAtoms(HEADER_LINE));
+        bench.run("splitAtoms", HEADER_LINE.length(), () -> DictStringParser.splitAtoms(HEADER_LINE));
+        bench.run("tokenize", HEADER_LINE.length(), () -> DictStringParser.tokenize(HEADER_LINE, bounds));
+
+        byte[] statusBytes = ReplyFixtures.bytes(STATUS_LINE + "\r\n");
+        bench.run("status.legacySplit", statusBytes.length, () -> LegacyParsers.statusCode(STATUS_LINE));
+        DictReplyDecoder statusDecoder = new DictReplyDecoder();
+        bench.run("status.decoder", statusBytes.length, () -> {
+            statusDecoder.feed(ByteBuffer.wrap(statusBytes));
+            statusDecoder.nextLine();
+            return statusDecoder.parseStatus();
+        });
+
+        for (int lines : new int[]{10, 200, 2000}) {
+            String reply = ReplyFixtures.defineReply("set", 1, lines);
+            String body = reply.substring(reply.indexOf('\n', reply.indexOf("151 ")) + 1);
+            byte[] bodyBytes = ReplyFixtures.bytes(body);
+            bench.run("definitionBody.legacyConcat." + lines, bodyBytes.length,
+                    () -> LegacyParsers.readDefinitionBody(new BufferedReader(new StringReader(body))));
+            DictReplyDecoder decoder = new DictReplyDecoder();
+            StringBuilder text = new StringBuilder();
+            bench.run("definitionBody.decoder." + lines, bodyBytes.length, () -> {
+                decoder.feed(ByteBuffer.wrap(bodyBytes));
+                text.setLength(0);
+                while (decoder.nextLine() && !decoder.isTerminator()) {
+                    decoder.appendLine(text);
+                    text.append('\n');
+                }
+                while (decoder.nextLine()) ; // discard the completion status
+                return text.toString();
+            });
+        }
+
+        for (int matches : new int[]{100, 10000, 50000}) {
+            String reply = ReplyFixtures.matchReply(matches);
+            byte[] replyBytes = ReplyFixtures.bytes(reply);
+            bench.run("matchList.legacy." + matches, replyBytes.length, () -> {
+                BufferedReader input = new BufferedReader(new StringReader(reply));
+                Set<String> set = new LinkedHashSet<>();
+                input.readLine();
+                String line;
+                while ((line = input.readLine()) != null) {
+                    String[] atoms = LegacyParsers.splitAtoms(line);
+                    if (atoms.length < 2) break;
+                    set.add(atoms[1]);
+                }
+                return set;
+            });
+            DictReplyDecoder decoder = new DictReplyDecoder();
+            StringBuilder line = new StringBuilder();
+            bench.run("matchList.decoder." + matches, replyBytes.length, () -> {
+                decoder.feed(ByteBuffer.wrap(replyBytes));
+                Set<String> set = new LinkedHashSet<>();
+                decoder.nextLine();
+                while (decoder.nextLine() && !decoder.isTerminator()) {
+                    line.setLength(0);
+                    decoder.appendLine(line);
+                    if (DictStringParser.tokenize(line, bounds) > 1)
+                        set.add(DictStringParser.atom(line, bounds, 1));
+                }
+                decoder.nextLine();
+                return set;
+            });
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ca.ubc.cs317.dict.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates DICT replies shaped like those returned by dict.org, of configurable size. Output is deterministic so
+ * that results of different runs can be compared.
+ */
+public final class ReplyFixtures {
+
+    private static final String[] DATABASES = {"gcide", "wn", "moby-thesaurus", "elements", "vera", "jargon",
+            "foldoc", "easton", "hitchcock", "bouvier", "devil", "world02", "gaz2k-counties", "gaz2k-places",
+            "gaz2k-zips", "fd-eng-fra", "fd-eng-deu", "fd-eng-spa", "english", "all"};
+
+    private static final String[] VOCABULARY = {"the", "of", "a", "to", "set", "put", "place", "group", "collection",
+            "things", "that", "belong", "together", "state", "condition", "fixed", "determined", "prescribed",
+            "(Math.)", "{adj}", "[1913 Webster]", "--Shak.", "syn:", "see", "also", "verb", "noun", "settled",
+            "arranged", "ready", "prepared", "series", "number", "kind", "used", "together", "form", "a", "unit"};
+
+    private ReplyFixtures() {
+    }
+
+    /**
+     * @param definitions Number of 151 blocks in the reply.
+     * @param lines       Number of text lines in each definition.
+     * @return A complete reply to a DEFINE command, including the final 250 status line.
+     */
+    public static String defineReply(String word, int definitions, int lines) {
+        Random random = new Random(definitions * 31L + lines);
+        StringBuilder reply = new StringBuilder();
+        reply.append("150 ").append(definitions).append(" definitions retrieved\r\n");
+        for (int i = 0; i < definitions; i++) {
+            String database = DATABASES[i % DATABASES.length];
+            reply.append("151 \"").append(word).append("\" ").append(database).append(" \"")
+                    .append(database).append(" dictionary\"\r\n");
+            for (String line : definitionText(word, lines, random).split("\n")) {
+                if (line.startsWith(".")) reply.append('.'); // dot-stuffing
+                reply.append(line).append("\r\n");
+            }
+            reply.append(".\r\n");
+        }
+        reply.append("250 ok [d/m/c = ").append(definitions).append("/0/30; 0.000r 0.000u 0.000s]\r\n");
+        return reply.toString();
+    }
+
+    /**
+     * @param lines Number of lines in the definition.
+     * @return The text of a definition, as it would be shown to the user (i.e., without dot-stuffing).
+     */
+    public static String definitionText(String word, int lines, Random random) {
+        StringBuilder text = new StringBuilder();
+        text.append(word).append(" \\Set\\, v. t. [imp. & p. p. {Set}; p. pr. & vb. n. {Setting}.]\n");
+        for (int j = 1; j < lines; j++) {
+            if (j % 17 == 0) text.append('.');
+            text.append("   ");
+            int words = 6 + random.nextInt(8);
+            for (int k = 0; k < words; k++)
+                text.append(' ').append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return Names of the databases used in the fixtures, in the order dict.org lists them.
+     */
+    public static String[] databases() {
+        return DATABASES.clone();
+    }
+
+    /**
+     * @param matches Number of match lines in the reply.
+     * @return A complete reply to a MATCH command, including the final 250 status line.
+     */
+    public static String matchReply(int matches) {
+        Random random = new Random(matches);
+        StringBuilder reply = new StringBuilder();
+        reply.append("152 ").append(matches).append(" matches found\r\n");
+        for (int i = 0; i < matches; i++) {
+            reply.append(DATABASES[i % DATABASES.length]).append(" \"");
+            reply.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            if (random.nextInt(4) == 0)
+                reply.append(' ').append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            reply.append(i).append("\"\r\n");
+        }
+        reply.append(".\r\n");
+        reply.append("250 ok [d/m/c = 0/").append(matches).append("/1000; 0.000r 0.000u 0.000s]\r\n");
+        return reply.toString();
+    }
+
+    /**
+     * @return A complete reply to SHOW DB listing the databases used in the other fixtures.
+     */
+    public static String showDbReply() {
+        StringBuilder reply = new StringBuilder();
+        reply.append("110 ").append(DATABASES.length).append(" databases present\r\n");
+        for (String database : DATABASES)
+            reply.append(database).append(" \"").append(database).append(" dictionary\"\r\n");
+        reply.append(".\r\n250 ok\r\n");
+        return reply.toString();
+    }
+
+    public static byte[] bytes(String reply) {
+        return reply.getBytes(StandardCharsets.UTF_8);
+    }
+}
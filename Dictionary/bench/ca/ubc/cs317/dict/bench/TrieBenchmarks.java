@@ -0,0 +1,128 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.local.HeadwordTrie;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Memory and latency of HeadwordTrie, including fuzzy and soundex matches, on a synthetic list of headwords (two million by default, see the
+ * bench.trieWords property), next to a sorted array of strings searched by binary search and scanned linearly, which
+ * is what answering the same matches without the automata takes.
+ */
+public final class TrieBenchmarks {
+
+    private static final String[] SYLLABLES = {"ab", "ac", "ad", "al", "an", "ar", "as", "at", "be", "bi", "bo", "ca",
+            "ce", "ch", "co", "cu", "de", "di", "do", "el", "en", "er", "es", "ex", "fa", "fi", "fo", "ga", "ge", "gr",
+            "ha", "he", "hi", "ho", "in", "is", "it", "la", "le", "li", "lo", "ma", "me", "mi", "mo", "na", "ne", "ni",
+            "no", "ob", "on", "or", "pa", "pe", "pi", "po", "pr", "qu", "ra", "re", "ri", "ro", "sa", "se", "si", "so",
+            "st", "ta", "te", "th", "ti", "to", "tr", "un", "ur", "va", "ve", "vi", "wa", "we", "wh", "ya", "ze", "zo"};
+    private static final String[] ENDINGS = {"", "", "", "s", "ed", "ing", "er", "ly", "ness", "tion", "able", "ism"};
+    private static final int QUERIES = 1024;
+    private static final int SUGGESTIONS = 20;
+
+    private TrieBenchmarks() {
+    }
+
+    public static void run(Bench bench) throws Exception {
+        int count = Integer.getInteger("bench.trieWords", 2000000);
+        List<String> headwords = headwords(count, new Random(count));
+
+        long start = System.nanoTime();
+        HeadwordTrie trie = HeadwordTrie.build(headwords);
+        long buildMillis = (System.nanoTime() - start) / 1000000;
+
+        String[] sorted = new TreeSet<>(headwords).toArray(new String[0]);
+        long utf8Bytes = 0;
+        for (String headword : sorted)
+            utf8Bytes += headword.getBytes(StandardCharsets.UTF_8).length;
+        Bench.note("%d headwords, %d distinct, built in %d ms", count, trie.size(), buildMillis);
+        Bench.note("trie: %d bytes (%.2f B/headword, forward and reversed)", trie.memoryUsage(),
+                (double) trie.memoryUsage() / trie.size());
+        Bench.note("raw UTF-8: %d bytes (%.2f B/headword); String[] ~%.2f B/headword", utf8Bytes,
+                (double) utf8Bytes / trie.size(), 56 + (double) utf8Bytes / trie.size());
+
+        Random random = new Random(1);
+        String[] prefixes = new String[QUERIES], suffixes = new String[QUERIES], words = new String[QUERIES],
+                infixes = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String word = sorted[random.nextInt(sorted.length)];
+            words[i] = word;
+            prefixes[i] = word.substring(0, Math.min(word.length(), 3));
+            suffixes[i] = word.substring(Math.max(0, word.length() - 4));
+            int from = word.length() / 3;
+            infixes[i] = word.substring(from, Math.min(word.length(), from + 4));
+        }
+
+        int[] next = {0};
+        bench.run("trie.exact", 0, () -> match(trie, words, next, HeadwordTrie.EXACT, Integer.MAX_VALUE));
+        bench.run("sortedArray.exact", 0, () -> Arrays.binarySearch(sorted, words[next[0]++ & (QUERIES - 1)]));
+        bench.run("trie.prefix." + SUGGESTIONS, 0, () -> match(trie, prefixes, next, HeadwordTrie.PREFIX, SUGGESTIONS));
+        bench.run("sortedArray.prefix." + SUGGESTIONS, 0, () -> {
+            String prefix = prefixes[next[0]++ & (QUERIES - 1)];
+            Set<String> matches = new LinkedHashSet<>();
+            int i = Arrays.binarySearch(sorted, prefix);
+            for (i = i < 0 ? -i - 1 : i; i < sorted.length && matches.size() < SUGGESTIONS && sorted[i].startsWith(prefix); i++)
+                matches.add(sorted[i]);
+            return matches;
+        });
+        bench.run("trie.suffix." + SUGGESTIONS, 0, () -> match(trie, suffixes, next, HeadwordTrie.SUFFIX, SUGGESTIONS));
+        bench.run("trie.suffix.all", 0, () -> match(trie, suffixes, next, HeadwordTrie.SUFFIX, Integer.MAX_VALUE));
+        bench.run("scan.suffix.all", 0, () -> scan(sorted, suffixes[next[0]++ & (QUERIES - 1)], false));
+        bench.run("trie.substring." + SUGGESTIONS, 0, () -> match(trie, infixes, next, HeadwordTrie.SUBSTRING, SUGGESTIONS));
+        bench.run("trie.substring.all", 0, () -> match(trie, infixes, next, HeadwordTrie.SUBSTRING, Integer.MAX_VALUE));
+        bench.run("scan.substring.all", 0, () -> scan(sorted, infixes[next[0]++ & (QUERIES - 1)], true));
+
+        String[] typos = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            char[] chars = words[i].toCharArray();
+            chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+            typos[i] = new String(chars);
+        }
+        for (int distance = 1; distance <= 2; distance++) {
+            int maxDistance = distance;
+            bench.run("trie.fuzzy." + distance, 0, () -> {
+                Set<String> matches = new LinkedHashSet<>();
+                trie.fuzzy(typos[next[0]++ & (QUERIES - 1)], maxDistance, matches, Integer.MAX_VALUE);
+                return matches;
+            });
+        }
+
+        start = System.nanoTime();
+        match(trie, words, next, HeadwordTrie.SOUNDEX, 1);
+        Bench.note("soundex automaton built in %d ms, trie now %d bytes", (System.nanoTime() - start) / 1000000,
+                trie.memoryUsage());
+        bench.run("trie.soundex", 0, () -> match(trie, words, next, HeadwordTrie.SOUNDEX, Integer.MAX_VALUE));
+    }
+
+    private static Set<String> match(HeadwordTrie trie, String[] patterns, int[] next, String strategy, int limit) {
+        Set<String> matches = new LinkedHashSet<>();
+        trie.match(patterns[next[0]++ & (QUERIES - 1)], strategy, matches, limit);
+        return matches;
+    }
+
+    private static Set<String> scan(String[] sorted, String pattern, boolean substring) {
+        Set<String> matches = new LinkedHashSet<>();
+        for (String headword : sorted) {
+            if (substring ? headword.contains(pattern) : headword.endsWith(pattern))
+                matches.add(headword);
+        }
+        return matches;
+    }
+
+    private static List<String> headwords(int count, Random random) {
+        List<String> headwords = new ArrayList<>(count);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            word.setLength(0);
+            int syllables = 1 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++)
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            word.append(ENDINGS[random.nextInt(ENDINGS.length)]);
+            if (random.nextInt(10) == 0) // some multi-word entries
+                word.append(' ').append(SYLLABLES[random.nextInt(SYLLABLES.length)]).append("ing");
+            headwords.add(word.toString());
+        }
+        return headwords;
+    }
+}
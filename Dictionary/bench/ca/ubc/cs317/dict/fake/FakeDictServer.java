@@ -0,0 +1,516 @@
+package ca.ubc.cs317.dict.fake;
+
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for a DICT server, used to load-test and benchmark the client offline. It implements the banner,
+ * SHOW DB, SHOW STRAT, MATCH, DEFINE, STATUS and QUIT commands over content loaded from files or added in code, and
+ * can shape its replies to simulate slow or faulty servers: per-command latency, limited bandwidth, replies sent in
+ * small delayed chunks, error replies or dropped connections injected every n-th command, and an idle timeout.
+ *
+ * Content files use a simple line format: "%db name description" starts a database, "%word headword" starts an
+ * entry, and any other line is part of the current entry's definition.
+ */
+public class FakeDictServer implements Closeable {
+
+    public static final String[] STRATEGIES = {"exact", "prefix", "suffix", "substring"};
+
+    private final Map<String, FakeDatabase> databases = new LinkedHashMap<>();
+    private final Map<String, Long> latencyMillis = new ConcurrentHashMap<>();
+    private final Map<String, InjectedError> errors = new ConcurrentHashMap<>();
+    private final Map<String, InjectedError> disconnects = new ConcurrentHashMap<>();
+    private volatile long idleTimeoutMillis = 0;
+    private volatile long bytesPerSecond = 0;
+    private volatile int dripChunkSize = 0;
+    private volatile long dripDelayMillis = 0;
+    private volatile int bannerStatus = 220;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+
+    private ServerSocket serverSocket;
+
+    /**
+     * Adds an empty database to the server. Databases are listed by SHOW DB and searched by '*' and '!' in the order
+     * they were added.
+     */
+    public synchronized FakeDictServer addDatabase(String name, String description) {
+        databases.put(name, new FakeDatabase(name, description));
+        return this;
+    }
+
+    /**
+     * Adds a definition to a database previously created with addDatabase.
+     */
+    public synchronized FakeDictServer addDefinition(String database, String word, String definition) {
+        FakeDatabase db = databases.get(database);
+        if (db == null) throw new IllegalArgumentException("Unknown database: " + database);
+        db.entries.computeIfAbsent(word.toLowerCase(Locale.ROOT), k -> new ArrayList<>())
+                .add(new String[]{word, definition});
+        return this;
+    }
+
+    /**
+     * Loads databases and definitions from a content file.
+     *
+     * @param file File in the format described in the class documentation.
+     * @throws IOException If the file can't be read.
+     */
+    public synchronized FakeDictServer load(Path file) throws IOException {
+        String database = null, word = null;
+        StringBuilder definition = new StringBuilder();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("%db ") || line.startsWith("%word ")) {
+                if (word != null) addDefinition(database, word, definition.toString());
+                word = null;
+                definition.setLength(0);
+                String[] parts = line.split(" ", 3);
+                if (line.startsWith("%db ")) {
+                    database = parts[1];
+                    addDatabase(database, parts.length > 2 ? parts[2] : database);
+                } else if (database == null) {
+                    throw new IOException(file + ": %word before %db");
+                } else {
+                    word = line.substring("%word ".length());
+                }
+            } else if (word != null) {
+                definition.append(line).append('\n');
+            }
+        }
+        if (word != null) addDefinition(database, word, definition.toString());
+        return this;
+    }
+
+    /**
+     * Delays the reply to a command.
+     *
+     * @param command First word of the command (e.g., "define", "match", "show"), or "*" for all commands.
+     * @param millis  Delay between the arrival of the command and the first byte of its reply. Pipelined commands
+     *                are delayed concurrently, as they would be by network latency.
+     */
+    public FakeDictServer setLatency(String command, long millis) {
+        latencyMillis.put(command.toLowerCase(Locale.ROOT), millis);
+        return this;
+    }
+
+    /**
+     * Limits the rate at which reply bytes are written to each client.
+     *
+     * @param bytesPerSecond Maximum rate, or 0 for no limit.
+     */
+    public FakeDictServer setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Sends replies in small chunks separated by a delay, as a server behind a congested link would.
+     *
+     * @param chunkSize   Size of each chunk, or 0 to disable.
+     * @param delayMillis Delay between chunks.
+     */
+    public FakeDictServer setDrip(int chunkSize, long delayMillis) {
+        this.dripChunkSize = chunkSize;
+        this.dripDelayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * Replies to every n-th occurrence of a command with an error status instead of executing it.
+     *
+     * @param command    First word of the command, or "*" for all commands.
+     * @param statusCode Status code sent instead of the reply (e.g., 420, 550, 552).
+     * @param every      1 to fail every command, 2 for every second one, and so on.
+     */
+    public FakeDictServer injectError(String command, int statusCode, int every) {
+        errors.put(command.toLowerCase(Locale.ROOT), new InjectedError(statusCode, every));
+        return this;
+    }
+
+    /**
+     * Closes the connection instead of replying to every n-th occurrence of a command, as a server that crashes or
+     * restarts would. The command is not executed.
+     *
+     * @param command First word of the command, or "*" for all commands.
+     * @param every   1 to drop the connection on every command, 2 on every second one, and so on.
+     */
+    public FakeDictServer injectDisconnect(String command, int every) {
+        disconnects.put(command.toLowerCase(Locale.ROOT), new InjectedError(0, every));
+        return this;
+    }
+
+    /**
+     * Closes client connections that haven't sent a command for a while, as dictd does with its client timeout.
+     *
+     * @param millis Time without commands after which a client is dropped, or 0 to keep idle clients.
+     */
+    public FakeDictServer setIdleTimeout(long millis) {
+        this.idleTimeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * Changes the status of the banner sent to new clients, e.g., to 420 to simulate a server refusing connections.
+     */
+    public FakeDictServer setBannerStatus(int bannerStatus) {
+        this.bannerStatus = bannerStatus;
+        return this;
+    }
+
+    /**
+     * Starts accepting clients on a background thread.
+     *
+     * @param port Port to listen on, or 0 for any free port.
+     * @return The port the server is listening on.
+     */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::accept, "fake-dict-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                connections.incrementAndGet();
+                Thread handler = new Thread(() -> serve(client), "fake-dict-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket socket = client) {
+            socket.setTcpNoDelay(true);
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream output = socket.getOutputStream();
+
+            if (bannerStatus != 220) {
+                send(output, bannerStatus + " server temporarily unavailable\r\n");
+                return;
+            }
+            send(output, "220 fake.dict.local dictd-fake <auth.mime> <" + connections.get() + "@fake.dict.local>\r\n");
+
+            // Commands are timestamped as they arrive, so latency delays each reply without delaying the reading of
+            // pipelined commands behind it
+            BlockingQueue<Object[]> received = new LinkedBlockingQueue<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = input.readLine()) != null)
+                        received.add(new Object[]{line, System.nanoTime()});
+                } catch (IOException e) {
+                    // connection closed
+                }
+                received.add(new Object[]{null, 0L});
+            }, "fake-dict-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            while (true) {
+                long idleTimeout = idleTimeoutMillis;
+                Object[] next = idleTimeout > 0 ? received.poll(idleTimeout, TimeUnit.MILLISECONDS) : received.take();
+                if (next == null) return; // idle for too long
+                String line = (String) next[0];
+                if (line == null) return;
+                String[] atoms = DictStringParser.splitAtoms(line);
+                if (atoms.length == 0) continue;
+                commands.incrementAndGet();
+                String command = atoms[0].toLowerCase(Locale.ROOT);
+
+                long due = (Long) next[1] + latencyFor(command) * 1000000L;
+                sleep((due - System.nanoTime() + 999999) / 1000000);
+                if (isInjected(disconnects, command)) return;
+                String error = injectedError(command);
+                if (error != null) {
+                    send(output, error);
+                    continue;
+                }
+                if (command.equals("quit")) {
+                    send(output, "221 bye\r\n");
+                    return;
+                }
+                send(output, execute(command, atoms));
+            }
+        } catch (IOException e) {
+            // client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String execute(String command, String[] atoms) {
+        switch (command) {
+            case "show":
+                if (atoms.length > 1 && (atoms[1].equalsIgnoreCase("db") || atoms[1].equalsIgnoreCase("databases")))
+                    return showDatabases();
+                if (atoms.length > 1 && (atoms[1].equalsIgnoreCase("strat") || atoms[1].equalsIgnoreCase("strategies")))
+                    return showStrategies();
+                return "501 syntax error, illegal parameters\r\n";
+            case "match":
+                if (atoms.length != 4) return "501 syntax error, illegal parameters\r\n";
+                return match(atoms[1], atoms[2], atoms[3]);
+            case "define":
+                if (atoms.length != 3) return "501 syntax error, illegal parameters\r\n";
+                return define(atoms[1], atoms[2]);
+            case "status":
+                return "210 up " + commands.get() + " commands\r\n";
+            case "client":
+                return "250 ok\r\n";
+            default:
+                return "500 syntax error, command not recognized\r\n";
+        }
+    }
+
+    private synchronized String showDatabases() {
+        StringBuilder reply = new StringBuilder("110 " + databases.size() + " databases present\r\n");
+        for (FakeDatabase db : databases.values())
+            reply.append(db.name).append(" \"").append(db.description).append("\"\r\n");
+        return reply.append(".\r\n250 ok\r\n").toString();
+    }
+
+    private String showStrategies() {
+        StringBuilder reply = new StringBuilder("111 " + STRATEGIES.length + " strategies present\r\n");
+        for (String strategy : STRATEGIES)
+            reply.append(strategy).append(" \"Match headwords using ").append(strategy).append("\"\r\n");
+        return reply.append(".\r\n250 ok\r\n").toString();
+    }
+
+    private synchronized String define(String database, String word) {
+        List<FakeDatabase> searched = selectDatabases(database);
+        if (searched == null) return "550 invalid database, use \"SHOW DB\" for list of databases\r\n";
+
+        StringBuilder body = new StringBuilder();
+        int count = 0;
+        for (FakeDatabase db : searched) {
+            List<String[]> entries = db.entries.get(word.toLowerCase(Locale.ROOT));
+            if (entries == null) continue;
+            for (String[] entry : entries) {
+                body.append("151 \"").append(entry[0]).append("\" ").append(db.name).append(" \"")
+                        .append(db.description).append("\"\r\n");
+                appendText(body, entry[1]);
+                count++;
+            }
+            if (database.equals("!")) break;
+        }
+        if (count == 0) return "552 no match\r\n";
+        return "150 " + count + " definitions retrieved\r\n" + body + "250 ok\r\n";
+    }
+
+    private synchronized String match(String database, String strategy, String word) {
+        List<FakeDatabase> searched = selectDatabases(database);
+        if (searched == null) return "550 invalid database, use \"SHOW DB\" for list of databases\r\n";
+        if (!Arrays.asList(STRATEGIES).contains(strategy.toLowerCase(Locale.ROOT)))
+            return "551 invalid strategy, use \"SHOW STRAT\" for a list of strategies\r\n";
+
+        String pattern = word.toLowerCase(Locale.ROOT);
+        StringBuilder body = new StringBuilder();
+        int count = 0;
+        for (FakeDatabase db : searched) {
+            int before = count;
+            for (Map.Entry<String, List<String[]>> entry : candidates(db, strategy, pattern).entrySet()) {
+                if (!matches(strategy, entry.getKey(), pattern)) continue;
+                body.append(db.name).append(" \"").append(entry.getValue().get(0)[0]).append("\"\r\n");
+                count++;
+            }
+            if (database.equals("!") && count > before) break;
+        }
+        if (count == 0) return "552 no match\r\n";
+        return "152 " + count + " matches found\r\n" + body + ".\r\n250 ok\r\n";
+    }
+
+    private static SortedMap<String, List<String[]>> candidates(FakeDatabase db, String strategy, String pattern) {
+        if (strategy.equalsIgnoreCase("prefix") || strategy.equalsIgnoreCase("exact"))
+            return db.entries.subMap(pattern, pattern + Character.MAX_VALUE);
+        return db.entries;
+    }
+
+    private static boolean matches(String strategy, String headword, String pattern) {
+        switch (strategy.toLowerCase(Locale.ROOT)) {
+            case "exact":
+                return headword.equals(pattern);
+            case "prefix":
+                return headword.startsWith(pattern);
+            case "suffix":
+                return headword.endsWith(pattern);
+            default:
+                return headword.contains(pattern);
+        }
+    }
+
+    private List<FakeDatabase> selectDatabases(String database) {
+        if (database.equals("*") || database.equals("!"))
+            return new ArrayList<>(databases.values());
+        FakeDatabase db = databases.get(database);
+        return db == null ? null : Collections.singletonList(db);
+    }
+
+    private static void appendText(StringBuilder reply, String text) {
+        if (text.endsWith("\n")) text = text.substring(0, text.length() - 1);
+        for (String line : text.split("\n", -1)) {
+            if (line.startsWith(".")) reply.append('.'); // dot-stuffing
+            reply.append(line).append("\r\n");
+        }
+        reply.append(".\r\n");
+    }
+
+    private long latencyFor(String command) {
+        Long millis = latencyMillis.get(command);
+        if (millis == null) millis = latencyMillis.get("*");
+        return millis == null ? 0 : millis;
+    }
+
+    private String injectedError(String command) {
+        InjectedError error = errors.get(command);
+        if (error == null) error = errors.get("*");
+        if (error == null || error.counter.incrementAndGet() % error.every != 0) return null;
+        return error.statusCode + " injected error\r\n";
+    }
+
+    private static boolean isInjected(Map<String, InjectedError> injected, String command) {
+        InjectedError fault = injected.get(command);
+        if (fault == null) fault = injected.get("*");
+        return fault != null && fault.counter.incrementAndGet() % fault.every == 0;
+    }
+
+    private void send(OutputStream output, String reply) throws IOException {
+        byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+        int chunk = dripChunkSize > 0 ? dripChunkSize : bytes.length;
+        long rate = bytesPerSecond;
+        if (rate > 0) chunk = (int) Math.max(1, Math.min(chunk, rate / 20)); // ~50ms worth of data per write
+
+        long start = System.nanoTime();
+        for (int offset = 0; offset < bytes.length; offset += chunk) {
+            int length = Math.min(chunk, bytes.length - offset);
+            output.write(bytes, offset, length);
+            output.flush();
+            if (offset + length >= bytes.length) break;
+            if (dripChunkSize > 0) sleep(dripDelayMillis);
+            if (rate > 0) {
+                long due = start + (offset + length) * 1000000000L / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) sleep(wait / 1000000);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class FakeDatabase {
+        private final String name;
+        private final String description;
+        private final TreeMap<String, List<String[]>> entries = new TreeMap<>();
+
+        private FakeDatabase(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+    }
+
+    private static class InjectedError {
+        private final int statusCode;
+        private final int every;
+        private final AtomicLong counter = new AtomicLong();
+
+        private InjectedError(int statusCode, int every) {
+            this.statusCode = statusCode;
+            this.every = Math.max(1, every);
+        }
+    }
+
+    /**
+     * Runs the server from the command line:
+     * FakeDictServer port file... [-latency command=millis] [-bandwidth bytesPerSecond] [-drip chunk:millis]
+     * [-error command=code/every] [-disconnect command/every] [-idle millis] [-banner code]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: FakeDictServer port file... [-latency cmd=ms] [-bandwidth bps] " +
+                    "[-drip chunk:ms] [-error cmd=code/every] [-disconnect cmd/every] [-idle ms] [-banner code]");
+            System.exit(1);
+        }
+        FakeDictServer server = new FakeDictServer();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-latency": {
+                    String[] parts = args[++i].split("=", 2);
+                    server.setLatency(parts[0], Long.parseLong(parts[1]));
+                    break;
+                }
+                case "-bandwidth":
+                    server.setBandwidth(Long.parseLong(args[++i]));
+                    break;
+                case "-drip": {
+                    String[] parts = args[++i].split(":", 2);
+                    server.setDrip(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+                    break;
+                }
+                case "-error": {
+                    String[] parts = args[++i].split("[=/]", 3);
+                    server.injectError(parts[0], Integer.parseInt(parts[1]), parts.length > 2 ? Integer.parseInt(parts[2]) : 1);
+                    break;
+                }
+                case "-disconnect": {
+                    String[] parts = args[++i].split("/", 2);
+                    server.injectDisconnect(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+                    break;
+                }
+                case "-idle":
+                    server.setIdleTimeout(Long.parseLong(args[++i]));
+                    break;
+                case "-banner":
+                    server.setBannerStatus(Integer.parseInt(args[++i]));
+                    break;
+                default:
+                    server.load(Paths.get(args[i]));
+            }
+        }
+        int port = server.start(Integer.parseInt(args[0]));
+        System.out.println("Fake DICT server listening on port " + port);
+        Thread.currentThread().join(); // the acceptor is a daemon thread
+    }
+}
@@ -0,0 +1,133 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary encoding of cached replies, as stored in a DiskCacheStore. Strings are written as UTF-8 preceded by their
+ * length, so definitions longer than the 64KB limit of DataOutput.writeUTF are supported.
+ */
+class CacheCodec {
+
+    private CacheCodec() {
+    }
+
+    static byte[] encodeDefinitions(Collection<Definition> definitions) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(definitions.size());
+            for (Definition definition : definitions) {
+                writeString(out, definition.getWord());
+                writeString(out, definition.getDatabase() == null ? null : definition.getDatabase().getName());
+                writeString(out, definition.getDatabase() == null ? null : definition.getDatabase().getDescription());
+                writeString(out, definition.getDefinition());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not thrown by ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Definition> decodeDefinitions(byte[] value) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        int count = in.readInt();
+        List<Definition> definitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String word = readString(in);
+            String name = readString(in);
+            String description = readString(in);
+            Definition definition = new Definition(word, name == null ? null : new Database(name, description));
+            definition.setDefinition(readString(in));
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+
+    static byte[] encodeMatches(Set<String> matches) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(matches.size());
+            for (String match : matches)
+                writeString(out, match);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Set<String> decodeMatches(byte[] value) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        int count = in.readInt();
+        Set<String> matches = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++)
+            matches.add(readString(in));
+        return matches;
+    }
+
+    static byte[] encodeMetadata(ServerMetadata metadata) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(metadata.getSavedMillis());
+            writeString(out, metadata.getIdentity());
+            writeString(out, metadata.getMessageId());
+            out.writeInt(metadata.getCapabilities().size());
+            for (String capability : metadata.getCapabilities())
+                writeString(out, capability);
+            out.writeInt(metadata.getDatabases().size());
+            for (Database database : metadata.getDatabases()) {
+                writeString(out, database.getName());
+                writeString(out, database.getDescription());
+            }
+            out.writeInt(metadata.getStrategies().size());
+            for (MatchingStrategy strategy : metadata.getStrategies()) {
+                writeString(out, strategy.getName());
+                writeString(out, strategy.getDescription());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ServerMetadata decodeMetadata(byte[] value) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        long savedMillis = in.readLong();
+        String identity = readString(in);
+        String messageId = readString(in);
+        Set<String> capabilities = new LinkedHashSet<>();
+        for (int i = in.readInt(); i > 0; i--)
+            capabilities.add(readString(in));
+        List<Database> databases = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--)
+            databases.add(new Database(readString(in), readString(in)));
+        List<MatchingStrategy> strategies = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--)
+            strategies.add(new MatchingStrategy(readString(in), readString(in)));
+        if (identity == null) throw new EOFException("Missing server identity");
+        return new ServerMetadata(identity, capabilities, messageId, databases, strategies, savedMillis);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > in.available()) throw new EOFException("Truncated string");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
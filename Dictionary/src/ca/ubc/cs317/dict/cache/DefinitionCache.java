@@ -0,0 +1,42 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.Collection;
+
+/**
+ * A cache of definitions retrieved from a DICT server, keyed by the word and the database used in the request.
+ * Implementations must be safe to use from multiple threads.
+ */
+public interface DefinitionCache {
+
+    /**
+     * Retrieves the definitions previously stored for a word.
+     *
+     * @param word     The word used in the request.
+     * @param database The database used in the request.
+     * @return The cached definitions, or null if the request is not cached (or has expired).
+     */
+    Collection<Definition> get(String word, Database database);
+
+    /**
+     * Stores the definitions returned by the server for a word. An empty collection may be stored to remember that
+     * the word has no definitions.
+     *
+     * @param word        The word used in the request.
+     * @param database    The database used in the request.
+     * @param definitions The definitions returned by the server.
+     */
+    void put(String word, Database database, Collection<Definition> definitions);
+
+    /**
+     * Removes all entries from the cache.
+     */
+    void clear();
+
+    /**
+     * @return A snapshot of the hit, miss and eviction counters of this cache.
+     */
+    CacheStats getStats();
+}
@@ -0,0 +1,543 @@
+package ca.ubc.cs317.dict.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only key-value store kept in a single file, used to keep cached replies across restarts. Each record has
+ * the layout
+ *
+ * <pre>[magic][crc32][time][key length][value length][key][value]</pre>
+ *
+ * where the checksum covers everything after it, and a value length of -1 marks the removal of the key. Replacing a
+ * value appends a new record. The location of the latest record of each key is kept in an open-addressing hash table
+ * of primitive arrays (16 bytes per key), so keys themselves are only ever read from the file.
+ *
+ * When opened, the file is scanned once to rebuild the table; a torn or corrupt record (e.g., after a crash in the
+ * middle of a write) ends the scan and the file is truncated there. When the file grows past its size limit it is
+ * compacted: live records are copied to a new file, oldest first dropped until the file is at most half the limit.
+ *
+ * Records can also be written behind with putAsync, on a thread of the store, so that threads which must not block
+ * (the event dispatch thread, or the selector thread of a DictEventLoop) never wait for the disk or a compaction.
+ * Values waiting to be written are returned by get.
+ */
+public class DiskCacheStore implements Closeable {
+
+    private static final int MAGIC = 0x44435331; // "DCS1"
+    private static final int HEADER_BYTES = 24;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_KEY_BYTES = 4096;
+    private static final int MAX_VALUE_BYTES = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dict-disk-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel channel;
+    private long size;
+
+    // Open-addressing table with linear probing; positions are stored plus one so that 0 means an empty slot
+    private int[] hashes;
+    private int[] sizes;
+    private long[] positions;
+    private int count;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param file         The file where records are stored. It is created if it doesn't exist.
+     * @param maxBytes     Size of the file from which it is compacted.
+     * @param maxAgeMillis Time after which a record is no longer returned, or 0 if records never expire.
+     * @throws IOException If the file can't be opened.
+     */
+    public DiskCacheStore(Path file, long maxBytes, long maxAgeMillis) throws IOException {
+        if (maxBytes < HEADER_BYTES || maxAgeMillis < 0)
+            throw new IllegalArgumentException("Invalid store limits");
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lockFile();
+            load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the latest value stored for a key.
+     *
+     * @return The value, or null if the key is not in the store, was removed, has expired or its record is corrupt.
+     */
+    public byte[] get(String key) {
+        byte[] written = pending.get(key);
+        if (written != null) {
+            hits.increment();
+            return written;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        byte[] value = null;
+        boolean expired = false;
+        lock.readLock().lock();
+        try {
+            for (int slot = hash & (hashes.length - 1); positions[slot] != 0; slot = (slot + 1) & (hashes.length - 1)) {
+                if (hashes[slot] != hash) continue;
+                ByteBuffer record = readRecord(positions[slot] - 1, sizes[slot]);
+                if (record == null || !keyEquals(record, keyBytes)) continue;
+                if (isExpired(record.getLong(8), System.currentTimeMillis())) {
+                    expired = true;
+                } else {
+                    value = new byte[record.getInt(20)];
+                    record.position(HEADER_BYTES + keyBytes.length);
+                    record.get(value);
+                }
+                break;
+            }
+        } catch (IOException e) {
+            value = null; // treated as a miss; the record is rewritten on the next put
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (value != null) {
+            hits.increment();
+        } else {
+            if (expired) expirations.increment();
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value for a key, replacing any previous value.
+     *
+     * @throws IOException If the record can't be written.
+     */
+    public void put(String key, byte[] value) throws IOException {
+        replace(key, value);
+    }
+
+    /**
+     * Stores a value for a key on the writer thread of this store, replacing any previous value. The value is
+     * returned by get from now on; errors while writing it are ignored, as the record is then simply missing.
+     */
+    public void putAsync(String key, byte[] value) {
+        pending.put(key, value);
+        try {
+            writer.execute(() -> {
+                lock.writeLock().lock();
+                try {
+                    if (pending.get(key) == value) // not replaced or removed since
+                        append(key.getBytes(StandardCharsets.UTF_8), value);
+                } catch (IOException e) {
+                    // The disk tier is best effort
+                } finally {
+                    pending.remove(key, value);
+                    lock.writeLock().unlock();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, value); // closed
+        }
+    }
+
+    /**
+     * Removes a key from the store.
+     *
+     * @throws IOException If the removal can't be recorded.
+     */
+    public void remove(String key) throws IOException {
+        replace(key, null);
+    }
+
+    /**
+     * Appends a record that supersedes any value of the key still waiting to be written behind.
+     */
+    private void replace(String key, byte[] value) throws IOException {
+        lock.writeLock().lock();
+        try {
+            pending.remove(key);
+            append(key.getBytes(StandardCharsets.UTF_8), value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all records from the store.
+     *
+     * @throws IOException If the file can't be truncated.
+     */
+    public void clear() throws IOException {
+        pending.clear();
+        lock.writeLock().lock();
+        try {
+            channel.truncate(0);
+            size = 0;
+            resetTable(16);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for the values passed to putAsync to be written, then forces all records to the storage device.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (RejectedExecutionException | ExecutionException e) {
+            // closed: nothing left to write
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing records", e);
+        }
+        lock.readLock().lock();
+        try {
+            channel.force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return A snapshot of the counters of this store. Evictions count the records dropped by compaction, and bytes
+     * is the current size of the file.
+     */
+    public CacheStats getStats() {
+        lock.readLock().lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), count, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(byte[] key, byte[] value) throws IOException {
+        if (key.length > MAX_KEY_BYTES || (value != null && value.length > MAX_VALUE_BYTES))
+            throw new IOException("Record too large");
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        int recordBytes = HEADER_BYTES + key.length + Math.max(valueLength, 0);
+
+        ByteBuffer record = ByteBuffer.allocate(recordBytes);
+        record.putInt(MAGIC).putInt(0).putLong(System.currentTimeMillis()).putInt(key.length).putInt(valueLength);
+        record.put(key);
+        if (value != null) record.put(value);
+        record.putInt(4, checksum(record.array(), recordBytes));
+        record.flip();
+
+        lock.writeLock().lock();
+        try {
+            if (value == null && find(key, hash(key)) < 0) return; // nothing to remove
+            long position = size;
+            while (record.hasRemaining())
+                position += channel.write(record, position);
+            index(key, hash(key), size, value == null ? TOMBSTONE : recordBytes);
+            size = position;
+            if (size > maxBytes) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        resetTable(16);
+        size = 0;
+        long fileSize = channel.size();
+        long now = System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+        while (size + HEADER_BYTES <= fileSize) {
+            header.clear();
+            if (!readFully(header, size)) break;
+            int keyLength = header.getInt(16), valueLength = header.getInt(20);
+            if (header.getInt(0) != MAGIC || keyLength < 0 || keyLength > MAX_KEY_BYTES ||
+                    valueLength < TOMBSTONE || valueLength > MAX_VALUE_BYTES)
+                break;
+            int recordBytes = HEADER_BYTES + keyLength + Math.max(valueLength, 0);
+            if (size + recordBytes > fileSize) break;
+            ByteBuffer record = readRecord(size, recordBytes);
+            if (record == null) break;
+
+            byte[] key = new byte[keyLength];
+            record.position(HEADER_BYTES);
+            record.get(key);
+            boolean live = valueLength != TOMBSTONE && !isExpired(record.getLong(8), now);
+            index(key, hash(key), size, live ? recordBytes : TOMBSTONE);
+            size += recordBytes;
+        }
+
+        if (size < fileSize)
+            channel.truncate(size); // drop the torn or corrupt tail
+    }
+
+    /**
+     * Copies the live records to a new file that replaces the current one. If they don't fit in half the size limit,
+     * the oldest records are dropped. Must be called while holding the write lock.
+     */
+    private void compact() throws IOException {
+        long[] live = new long[count];
+        int[] liveSizes = new int[count];
+        int n = 0;
+        for (int slot = 0; slot < positions.length; slot++) {
+            if (positions[slot] != 0) {
+                live[n] = positions[slot] - 1;
+                liveSizes[n++] = sizes[slot];
+            }
+        }
+        // Records are appended in order, so sorting by position sorts by age
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        long[] sortKeys = live;
+        Arrays.sort(order, (a, b) -> Long.compare(sortKeys[a], sortKeys[b]));
+
+        long keep = 0;
+        int first = n;
+        while (first > 0 && keep + liveSizes[order[first - 1]] <= maxBytes / 2) {
+            first--;
+            keep += liveSizes[order[first]];
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long now = System.currentTimeMillis();
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            resetTable(16);
+            long position = 0;
+            for (int i = first; i < n; i++) {
+                ByteBuffer record = readRecord(live[order[i]], liveSizes[order[i]]);
+                if (record == null || isExpired(record.getLong(8), now)) {
+                    evictions.increment();
+                    continue;
+                }
+                byte[] key = new byte[record.getInt(16)];
+                record.position(HEADER_BYTES);
+                record.get(key);
+                record.rewind();
+                long start = position;
+                while (record.hasRemaining())
+                    position += target.write(record, position);
+                insert(hash(key), start, liveSizes[order[i]]);
+            }
+            evictions.add(first);
+            target.force(false);
+            size = position;
+        } catch (IOException e) {
+            // Keep using the current file; the table is rebuilt from it
+            Files.deleteIfExists(temp);
+            load();
+            throw e;
+        }
+
+        channel.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            lockFile();
+        } catch (IOException e) {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            lockFile();
+            Files.deleteIfExists(temp);
+            load();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes an exclusive lock on the file, so that records appended by two processes are never interleaved.
+     */
+    private void lockFile() throws IOException {
+        try {
+            if (channel.tryLock() == null)
+                throw new IOException(file + " is in use by another process");
+        } catch (OverlappingFileLockException e) {
+            throw new IOException(file + " is already open", e);
+        }
+    }
+
+    /**
+     * Reads and verifies a whole record.
+     *
+     * @return The record, or null if it is corrupt.
+     */
+    private ByteBuffer readRecord(long position, int recordBytes) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(recordBytes);
+        if (!readFully(record, position)) return null;
+        if (record.getInt(0) != MAGIC || record.getInt(4) != checksum(record.array(), recordBytes)) return null;
+        return record;
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        return true;
+    }
+
+    private boolean isExpired(long time, long now) {
+        return maxAgeMillis != 0 && now - time >= maxAgeMillis;
+    }
+
+    private boolean keyEquals(ByteBuffer record, byte[] key) {
+        if (record.getInt(16) != key.length) return false;
+        byte[] array = record.array();
+        for (int i = 0; i < key.length; i++) {
+            if (array[HEADER_BYTES + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the slot of a key, comparing the stored key when the hashes match.
+     *
+     * @return The slot, or -1 if the key is not in the table.
+     */
+    private int find(byte[] key, int hash) throws IOException {
+        for (int slot = hash & (hashes.length - 1); positions[slot] != 0; slot = (slot + 1) & (hashes.length - 1)) {
+            if (hashes[slot] != hash) continue;
+            ByteBuffer record = readRecord(positions[slot] - 1, sizes[slot]);
+            if (record != null && keyEquals(record, key)) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Points a key to a record, or removes it from the table if recordBytes is TOMBSTONE.
+     */
+    private void index(byte[] key, int hash, long position, int recordBytes) throws IOException {
+        int slot = find(key, hash);
+        if (slot < 0) {
+            if (recordBytes != TOMBSTONE) insert(hash, position, recordBytes);
+        } else if (recordBytes == TOMBSTONE) {
+            removeSlot(slot);
+        } else {
+            sizes[slot] = recordBytes;
+            positions[slot] = position + 1;
+        }
+    }
+
+    /**
+     * Adds a key known not to be in the table.
+     */
+    private void insert(int hash, long position, int recordBytes) {
+        if ((count + 1) * 4 > hashes.length * 3) grow();
+        int slot = hash & (hashes.length - 1);
+        while (positions[slot] != 0) slot = (slot + 1) & (hashes.length - 1);
+        hashes[slot] = hash;
+        sizes[slot] = recordBytes;
+        positions[slot] = position + 1;
+        count++;
+    }
+
+    private void removeSlot(int slot) {
+        int mask = hashes.length - 1;
+        positions[slot] = 0;
+        count--;
+        // Shift back the following entries of the probe sequence so that lookups don't stop at the hole
+        for (int next = (slot + 1) & mask; positions[next] != 0; next = (next + 1) & mask) {
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                hashes[slot] = hashes[next];
+                sizes[slot] = sizes[next];
+                positions[slot] = positions[next];
+                positions[next] = 0;
+                slot = next;
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes, oldSizes = sizes;
+        long[] oldPositions = positions;
+        hashes = new int[oldHashes.length * 2];
+        sizes = new int[hashes.length];
+        positions = new long[hashes.length];
+        int mask = hashes.length - 1;
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldPositions[i] == 0) continue;
+            int slot = oldHashes[i] & mask;
+            while (positions[slot] != 0) slot = (slot + 1) & mask;
+            hashes[slot] = oldHashes[i];
+            sizes[slot] = oldSizes[i];
+            positions[slot] = oldPositions[i];
+        }
+    }
+
+    private void resetTable(int capacity) {
+        hashes = new int[capacity];
+        sizes = new int[capacity];
+        positions = new long[capacity];
+        count = 0;
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static int checksum(byte[] record, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, length - 8);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,161 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A DefinitionCache bounded by number of entries and by an estimate of the memory used by the definitions. Entries
+ * are evicted in least-recently-used order and expire after a fixed time to live.
+ *
+ * The cache is split into independently locked segments, selected by the hash of the key, so that concurrent
+ * lookups of different words rarely wait for each other. Each segment enforces its share of the limits.
+ */
+public class LruDefinitionCache implements DefinitionCache {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final Segment[] segments;
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxEntries Maximum number of (word, database) requests kept in the cache.
+     * @param maxBytes   Maximum estimated size, in bytes, of the cached definitions.
+     * @param ttlMillis  Time after which an entry is no longer returned, or 0 if entries never expire.
+     */
+    public LruDefinitionCache(int maxEntries, long maxBytes, long ttlMillis) {
+        this(maxEntries, maxBytes, ttlMillis, DEFAULT_SEGMENTS);
+    }
+
+    public LruDefinitionCache(int maxEntries, long maxBytes, long ttlMillis, int segmentCount) {
+        if (maxEntries < 1 || maxBytes < 1 || ttlMillis < 0 || segmentCount < 1)
+            throw new IllegalArgumentException("Invalid cache limits");
+        segmentCount = Math.min(segmentCount, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / segmentCount), Math.max(1, maxBytes / segmentCount));
+        }
+    }
+
+    @Override
+    public Collection<Definition> get(String word, Database database) {
+        String key = key(word, database);
+        Entry entry = segmentFor(key).get(key, System.currentTimeMillis());
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.definitions;
+    }
+
+    @Override
+    public void put(String word, Database database, Collection<Definition> definitions) {
+        String key = key(word, database);
+        long expiresAt = ttlMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis;
+        segmentFor(key).put(key, new Entry(Collections.unmodifiableList(new ArrayList<>(definitions)),
+                estimateBytes(key, definitions), expiresAt));
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        long entries = 0, bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                entries += segment.map.size();
+                bytes += segment.bytes;
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), entries, bytes);
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    private static String key(String word, Database database) {
+        return database.getName() + " " + word;
+    }
+
+    private static long estimateBytes(String key, Collection<Definition> definitions) {
+        long bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length();
+        for (Definition definition : definitions) {
+            bytes += ENTRY_OVERHEAD_BYTES + 2L * definition.getWord().length();
+            if (definition.getDefinition() != null)
+                bytes += 2L * definition.getDefinition().length();
+        }
+        return bytes;
+    }
+
+    private static class Entry {
+        private final Collection<Definition> definitions;
+        private final long bytes;
+        private final long expiresAt;
+
+        private Entry(Collection<Definition> definitions, long bytes, long expiresAt) {
+            this.definitions = definitions;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private class Segment {
+        private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxBytes;
+        private long bytes = 0;
+
+        private Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized Entry get(String key, long now) {
+            Entry entry = map.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                map.remove(key);
+                bytes -= entry.bytes;
+                expirations.increment();
+                return null;
+            }
+            return entry;
+        }
+
+        private synchronized void put(String key, Entry entry) {
+            if (entry.bytes > maxBytes) return; // would evict the whole segment and still not fit
+            Entry previous = map.put(key, entry);
+            if (previous != null) bytes -= previous.bytes;
+            bytes += entry.bytes;
+
+            Iterator<Entry> it = map.values().iterator();
+            while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                bytes -= eldest.bytes;
+                evictions.increment();
+            }
+        }
+
+        private synchronized void clear() {
+            map.clear();
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of match lists keyed by strategy, database and pattern. Besides exact lookups, the cache can answer a
+ * pattern from the cached result of a shorter pattern when the strategy guarantees that the longer pattern only
+ * matches a subset of the words (e.g., every word starting with "abc" also starts with "ab"). In that case the cached
+ * words are filtered locally instead of sending a new MATCH command. Like dictd, the filter ignores case and any
+ * character other than letters, digits and spaces, both in the pattern and in the words.
+ *
+ * Results with at least truncationThreshold words are assumed to possibly have been cut short by the server, and
+ * are only used for exact lookups.
+ */
+public class MatchCache {
+
+    public static final String PREFIX = "prefix";
+    public static final String SUFFIX = "suffix";
+    public static final String SUBSTRING = "substring";
+
+    private final int maxEntries;
+    private final int truncationThreshold;
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder narrowedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries          Maximum number of match lists kept in the cache.
+     * @param truncationThreshold Size from which a match list is considered possibly truncated by the server.
+     */
+    public MatchCache(int maxEntries, int truncationThreshold) {
+        if (maxEntries < 1 || truncationThreshold < 1)
+            throw new IllegalArgumentException("Invalid cache limits");
+        this.maxEntries = maxEntries;
+        this.truncationThreshold = truncationThreshold;
+    }
+
+    /**
+     * Retrieves the match list for a pattern, either directly or by filtering the cached list of a shorter pattern.
+     *
+     * @param word     The pattern used in the request.
+     * @param strategy The strategy used in the request.
+     * @param database The database used in the request.
+     * @return The set of matching words, or null if the server has to be consulted.
+     */
+    public Set<String> get(String word, MatchingStrategy strategy, Database database) {
+        Entry entry;
+        synchronized (this) {
+            entry = map.get(key(word, strategy, database));
+        }
+        if (entry != null) {
+            hits.increment();
+            return entry.matches;
+        }
+
+        Set<String> narrowed = narrow(word, strategy, database);
+        if (narrowed != null) {
+            narrowedHits.increment();
+            put(word, strategy, database, narrowed);
+            return narrowed;
+        }
+
+        Set<String> loaded = load(word, strategy, database);
+        if (loaded != null) {
+            hits.increment();
+            return remember(word, strategy, database, loaded).matches;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Called when a lookup can't be answered from memory, to retrieve the match list from a slower tier. The result
+     * is kept in memory but not passed to put.
+     *
+     * @return The set of matching words, or null if it is not available. This implementation always returns null.
+     */
+    protected Set<String> load(String word, MatchingStrategy strategy, Database database) {
+        return null;
+    }
+
+    /**
+     * Stores the match list returned by the server for a pattern.
+     *
+     * @param word     The pattern used in the request.
+     * @param strategy The strategy used in the request.
+     * @param database The database used in the request.
+     * @param matches  The set of matching words returned by the server.
+     */
+    public void put(String word, MatchingStrategy strategy, Database database, Set<String> matches) {
+        remember(word, strategy, database, matches);
+    }
+
+    private Entry remember(String word, MatchingStrategy strategy, Database database, Set<String> matches) {
+        Entry entry = new Entry(Collections.unmodifiableSet(new LinkedHashSet<>(matches)),
+                matches.size() >= truncationThreshold);
+        synchronized (this) {
+            map.put(key(word, strategy, database), entry);
+            Iterator<Entry> it = map.values().iterator();
+            while (map.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        }
+        return entry;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * @return The number of lookups answered by filtering the result of a shorter pattern. These are also included in
+     * the hit count of getStats.
+     */
+    public long getNarrowedHits() {
+        return narrowedHits.sum();
+    }
+
+    public CacheStats getStats() {
+        long entries;
+        synchronized (this) {
+            entries = map.size();
+        }
+        return new CacheStats(hits.sum() + narrowedHits.sum(), misses.sum(), evictions.sum(), 0, entries, 0);
+    }
+
+    private Set<String> narrow(String word, MatchingStrategy strategy, Database database) {
+        // With '!' the server picks the first database with any match, which may differ for a longer pattern
+        if (database.getName().equals("!")) return null;
+
+        String name = strategy.getName();
+        boolean prefix = name.equals(PREFIX), suffix = name.equals(SUFFIX), substring = name.equals(SUBSTRING);
+        if (!prefix && !suffix && !substring) return null;
+
+        String normalizedWord = normalize(word);
+        for (int length = word.length() - 1; length > 0; length--) {
+            // Both the shorter prefixes and suffixes of the pattern are also substrings of it
+            if (prefix || substring) {
+                Set<String> narrowed = filter(word.substring(0, length), normalizedWord, strategy, database);
+                if (narrowed != null) return narrowed;
+            }
+            if (suffix || substring) {
+                Set<String> narrowed = filter(word.substring(word.length() - length), normalizedWord, strategy, database);
+                if (narrowed != null) return narrowed;
+            }
+        }
+        return null;
+    }
+
+    private Set<String> filter(String shorter, String normalizedWord, MatchingStrategy strategy, Database database) {
+        Entry entry;
+        synchronized (this) {
+            entry = map.get(key(shorter, strategy, database));
+        }
+        if (entry == null || entry.truncated) return null;
+
+        Set<String> narrowed = new LinkedHashSet<>();
+        for (String match : entry.matches) {
+            String normalizedMatch = normalize(match);
+            switch (strategy.getName()) {
+                case PREFIX:
+                    if (normalizedMatch.startsWith(normalizedWord)) narrowed.add(match);
+                    break;
+                case SUFFIX:
+                    if (normalizedMatch.endsWith(normalizedWord)) narrowed.add(match);
+                    break;
+                default:
+                    if (normalizedMatch.contains(normalizedWord)) narrowed.add(match);
+                    break;
+            }
+        }
+        return narrowed;
+    }
+
+    /**
+     * Returns a word as dictd compares it: without characters other than letters, digits and spaces, and in lower
+     * case. Each character is mapped on its own, so the result for a prefix (or suffix) of a word is a prefix (or
+     * suffix) of the result for the word.
+     */
+    private static String normalize(String word) {
+        StringBuilder normalized = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == ' ') normalized.append(Character.toLowerCase(c));
+        }
+        return normalized.toString();
+    }
+
+    private static String key(String word, MatchingStrategy strategy, Database database) {
+        return strategy.getName() + " " + database.getName() + " " + word;
+    }
+
+    private static class Entry {
+        private final Set<String> matches;
+        private final boolean truncated;
+
+        private Entry(Set<String> matches, boolean truncated) {
+            this.matches = matches;
+            this.truncated = truncated;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A DefinitionCache with two tiers: an in-memory cache in front of a DiskCacheStore. Lookups that miss in memory are
+ * answered from disk, and promoted into memory, so words fetched in previous runs of the client are served without a
+ * request to the server. Every definition put in the cache is written to both tiers, to disk behind the caller.
+ *
+ * Entries on disk are keyed by server as well as by database and word, so a single store can be shared by all the
+ * servers the client connects to.
+ */
+public class PersistentDefinitionCache implements DefinitionCache {
+
+    private final DefinitionCache memory;
+    private final DiskCacheStore store;
+    private final String server;
+
+    /**
+     * @param memory The in-memory cache consulted first.
+     * @param store  The store used as the second tier.
+     * @param server Identifies the server whose definitions are cached, e.g., "dict.org:2628".
+     */
+    public PersistentDefinitionCache(DefinitionCache memory, DiskCacheStore store, String server) {
+        this.memory = memory;
+        this.store = store;
+        this.server = server;
+    }
+
+    @Override
+    public Collection<Definition> get(String word, Database database) {
+        Collection<Definition> definitions = memory.get(word, database);
+        if (definitions != null) return definitions;
+
+        byte[] value = store.get(key(word, database));
+        if (value == null) return null;
+        try {
+            definitions = CacheCodec.decodeDefinitions(value);
+        } catch (IOException e) {
+            return null; // written by an incompatible version; replaced once fetched again
+        }
+        memory.put(word, database, definitions); // may be skipped by the memory tier, if larger than it allows
+        return definitions;
+    }
+
+    @Override
+    public void put(String word, Database database, Collection<Definition> definitions) {
+        memory.put(word, database, definitions);
+        // Written behind, since this is called on the selector thread for replies of an AsyncDictionaryConnection
+        store.putAsync(key(word, database), CacheCodec.encodeDefinitions(definitions));
+    }
+
+    /**
+     * Removes all entries from the memory tier. Entries on disk are kept, as they may belong to other servers; use
+     * DiskCacheStore.clear to remove them.
+     */
+    @Override
+    public void clear() {
+        memory.clear();
+    }
+
+    /**
+     * @return The counters of the memory tier. The counters of the disk tier are available from the store.
+     */
+    @Override
+    public CacheStats getStats() {
+        return memory.getStats();
+    }
+
+    public DiskCacheStore getStore() {
+        return store;
+    }
+
+    private String key(String word, Database database) {
+        return "define " + server + " " + database.getName() + " " + word;
+    }
+}
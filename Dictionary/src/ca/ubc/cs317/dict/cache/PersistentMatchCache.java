@@ -0,0 +1,56 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A MatchCache backed by a DiskCacheStore. Match lists are written behind to disk as they are put in the cache, and
+ * lookups that can't be answered from memory (directly or by narrowing a shorter pattern) are tried on disk before
+ * the server is consulted.
+ */
+public class PersistentMatchCache extends MatchCache {
+
+    private final DiskCacheStore store;
+    private final String server;
+
+    /**
+     * @param maxEntries          Maximum number of match lists kept in memory.
+     * @param truncationThreshold Size from which a match list is considered possibly truncated by the server.
+     * @param store               The store used as the second tier.
+     * @param server              Identifies the server whose match lists are cached, e.g., "dict.org:2628".
+     */
+    public PersistentMatchCache(int maxEntries, int truncationThreshold, DiskCacheStore store, String server) {
+        super(maxEntries, truncationThreshold);
+        this.store = store;
+        this.server = server;
+    }
+
+    @Override
+    public void put(String word, MatchingStrategy strategy, Database database, Set<String> matches) {
+        super.put(word, strategy, database, matches);
+        // Written behind, since this is called on the selector thread for replies of an AsyncDictionaryConnection
+        store.putAsync(key(word, strategy, database), CacheCodec.encodeMatches(matches));
+    }
+
+    @Override
+    protected Set<String> load(String word, MatchingStrategy strategy, Database database) {
+        byte[] value = store.get(key(word, strategy, database));
+        if (value == null) return null;
+        try {
+            return CacheCodec.decodeMatches(value);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public DiskCacheStore getStore() {
+        return store;
+    }
+
+    private String key(String word, MatchingStrategy strategy, Database database) {
+        return "match " + server + " " + strategy.getName() + " " + database.getName() + " " + word;
+    }
+}
@@ -0,0 +1,108 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A snapshot of the lists of databases and strategies of a server, together with what its welcome message
+ * announced, kept in a DiskCacheStore so that the next run can show the lists before asking the server for them.
+ */
+public class ServerMetadata {
+
+    private final String identity;
+    private final Set<String> capabilities;
+    private final String messageId;
+    private final List<Database> databases;
+    private final List<MatchingStrategy> strategies;
+    private final long savedMillis;
+
+    /**
+     * @param identity     Server identity, as returned by DictionaryConnection.getServerIdentity().
+     * @param capabilities Capabilities announced in the welcome message.
+     * @param messageId    msg-id of the welcome message of the connection the lists were retrieved from.
+     * @param databases    The databases supported by the server.
+     * @param strategies   The matching strategies supported by the server.
+     */
+    public ServerMetadata(String identity, Set<String> capabilities, String messageId, Collection<Database> databases,
+                          Collection<MatchingStrategy> strategies) {
+        this(identity, capabilities, messageId, databases, strategies, System.currentTimeMillis());
+    }
+
+    ServerMetadata(String identity, Set<String> capabilities, String messageId, Collection<Database> databases,
+                   Collection<MatchingStrategy> strategies, long savedMillis) {
+        this.identity = identity;
+        this.capabilities = Collections.unmodifiableSet(new LinkedHashSet<>(capabilities));
+        this.messageId = messageId;
+        this.databases = Collections.unmodifiableList(new ArrayList<>(databases));
+        this.strategies = Collections.unmodifiableList(new ArrayList<>(strategies));
+        this.savedMillis = savedMillis;
+    }
+
+    /**
+     * Reads the snapshot of a server from a store.
+     *
+     * @param server Identifies the server, e.g., "dict.org:2628".
+     * @return The snapshot, or null if none was saved or it can't be read.
+     */
+    public static ServerMetadata load(DiskCacheStore store, String server) {
+        byte[] value = store.get(key(server));
+        if (value == null) return null;
+        try {
+            return CacheCodec.decodeMetadata(value);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes this snapshot to a store, replacing any previous snapshot of the same server.
+     *
+     * @param server Identifies the server, e.g., "dict.org:2628".
+     * @throws IOException If the record can't be written.
+     */
+    public void save(DiskCacheStore store, String server) throws IOException {
+        store.put(key(server), CacheCodec.encodeMetadata(this));
+    }
+
+    /**
+     * Indicates if the lists of this snapshot can be used for a connection without requesting them again.
+     *
+     * @param identity  Identity of the server the connection is talking to.
+     * @param ttlMillis Time after which a snapshot is requested again even if the server identity is unchanged.
+     * @return true if the snapshot was taken from the same server software less than ttlMillis ago.
+     */
+    public boolean isCurrent(String identity, long ttlMillis) {
+        return this.identity.equals(identity) && System.currentTimeMillis() - savedMillis < ttlMillis;
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    public Set<String> getCapabilities() {
+        return capabilities;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public List<Database> getDatabases() {
+        return databases;
+    }
+
+    public List<MatchingStrategy> getStrategies() {
+        return strategies;
+    }
+
+    public long getSavedMillis() {
+        return savedMillis;
+    }
+
+    private static String key(String server) {
+        return "metadata " + server;
+    }
+}
@@ -0,0 +1,379 @@
+package ca.ubc.cs317.dict.cli;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.local.LocalDictionary;
+import ca.ubc.cs317.dict.metrics.DictMetrics;
+import ca.ubc.cs317.dict.metrics.LatencyHistogram;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.DictionarySource;
+import ca.ubc.cs317.dict.util.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up the definitions of a list of words without the graphical interface, and writes one JSON object per word
+ * (JSON Lines). Words are read from a file, or from the standard input, one per line, and sent in pipelined batches
+ * over several connections in parallel. Results are written in the order they complete, not in input order.
+ *
+ * Both the batches waiting for a connection and the results waiting to be written are held in bounded queues, so a
+ * slow server or a slow consumer of the output stops the input from being read instead of filling the memory. When
+ * all words have been handled, the throughput and the latency of the DEFINE commands are reported on the standard
+ * error.
+ *
+ * With a server named file:directory, the words are looked up in the dictd databases of that directory instead (see
+ * LocalDictionary), by as many threads as there would be connections.
+ *
+ * Usage: BulkLookup [-server host[:port] | -server file:directory] [-database name] [-connections n] [-pipeline n]
+ * [-queue n] [-output file] [file]
+ */
+public class BulkLookup {
+
+    public static final int DEFAULT_CONNECTIONS = 4;
+    public static final int DEFAULT_PIPELINE = DictionaryConnection.DEFAULT_PIPELINE_WINDOW;
+    public static final int DEFAULT_QUEUE = 1024;
+
+    private static final List<String> END_OF_INPUT = new ArrayList<>();
+    private static final String END_OF_OUTPUT = "";
+
+    private final DictionaryConnectionPool pool;
+    private final DictionarySource source;
+    private final Database database;
+    private final int connections;
+    private final int pipeline;
+    private final BlockingQueue<List<String>> batches;
+    private final BlockingQueue<String> results;
+
+    private final AtomicLong words = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile IOException writeFailure;
+
+    /**
+     * @param pool        Pool with at least as many connections as the number of parallel lookups.
+     * @param database    Database used for every word; may be one of the special databases '*' and '!'.
+     * @param connections Number of batches looked up in parallel.
+     * @param pipeline    Number of words per batch, all sent before the first reply is read.
+     * @param queue       Maximum number of results waiting to be written.
+     */
+    public BulkLookup(DictionaryConnectionPool pool, Database database, int connections, int pipeline, int queue) {
+        this(pool, null, database, connections, pipeline, queue);
+    }
+
+    /**
+     * @param source      Source used directly for every word, such as a LocalDictionary. It must support concurrent
+     *                    requests.
+     * @param database    Database used for every word; may be one of the special databases '*' and '!'.
+     * @param threads     Number of batches looked up in parallel.
+     * @param batch       Number of words per batch.
+     * @param queue       Maximum number of results waiting to be written.
+     */
+    public BulkLookup(DictionarySource source, Database database, int threads, int batch, int queue) {
+        this(null, source, database, threads, batch, queue);
+    }
+
+    private BulkLookup(DictionaryConnectionPool pool, DictionarySource source, Database database, int connections,
+                       int pipeline, int queue) {
+        this.pool = pool;
+        this.source = source;
+        this.database = database;
+        this.connections = connections;
+        this.pipeline = pipeline;
+        this.batches = new ArrayBlockingQueue<>(2 * connections);
+        this.results = new ArrayBlockingQueue<>(queue);
+    }
+
+    /**
+     * Looks up every word read from the input, and writes the results to the output.
+     *
+     * @param input  Source of the words, one per line; blank lines are ignored.
+     * @param output Destination of the JSON lines. It is flushed, but not closed.
+     * @throws IOException          If the input can't be read or the output can't be written.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public void run(BufferedReader input, Writer output) throws IOException, InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            Thread worker = new Thread(this::lookUpBatches, "bulk-lookup-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        Thread writer = new Thread(() -> writeResults(output), "bulk-lookup-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        try {
+            List<String> batch = new ArrayList<>(pipeline);
+            String line;
+            while ((line = input.readLine()) != null && writeFailure == null) {
+                String word = line.trim();
+                if (word.isEmpty()) continue;
+                batch.add(word);
+                if (batch.size() == pipeline) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(pipeline);
+                }
+            }
+            if (!batch.isEmpty()) batches.put(batch);
+        } finally {
+            for (int i = 0; i < connections; i++)
+                batches.put(END_OF_INPUT);
+            for (Thread worker : workers)
+                worker.join();
+            results.put(END_OF_OUTPUT);
+            writer.join();
+        }
+        if (writeFailure != null) throw writeFailure;
+    }
+
+    /**
+     * @return The number of words looked up so far, including failed ones.
+     */
+    public long getWordCount() {
+        return words.get();
+    }
+
+    /**
+     * @return The number of words whose lookup failed.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    private void lookUpBatches() {
+        try {
+            List<String> batch;
+            while ((batch = batches.take()) != END_OF_INPUT) {
+                try {
+                    Map<String, Collection<Definition>> definitions = lookUp(batch);
+                    for (String word : batch)
+                        results.put(result(word, definitions.get(word)));
+                } catch (DictConnectionException e) {
+                    if (batch.size() > 1 && !isDisconnect(e)) {
+                        // An error reply to one word fails the whole batch: look the words up one at a time, so that
+                        // only the words the server rejects fail
+                        for (String word : batch)
+                            lookUpWord(word);
+                    } else {
+                        for (String word : batch)
+                            results.put(error(word, e));
+                        failures.addAndGet(batch.size());
+                    }
+                }
+                words.addAndGet(batch.size());
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void lookUpWord(String word) throws InterruptedException {
+        try {
+            results.put(result(word, lookUp(Collections.singletonList(word)).get(word)));
+        } catch (DictConnectionException e) {
+            results.put(error(word, e));
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Looks up a batch of words on a connection of the pool, retrying once on another connection if the first one
+     * breaks, since a pooled connection may have been closed by the server while idle. An error reply is not
+     * retried. Without a pool, the words are looked up one by one in the source.
+     */
+    private Map<String, Collection<Definition>> lookUp(List<String> batch) throws DictConnectionException {
+        if (pool == null) {
+            Map<String, Collection<Definition>> definitions = new LinkedHashMap<>();
+            for (String word : batch)
+                definitions.put(word, source.getDefinitions(word, database));
+            return definitions;
+        }
+
+        DictConnectionException failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            DictionaryConnection connection = pool.borrow();
+            boolean usable = false;
+            try {
+                Map<String, Collection<Definition>> definitions = connection.getDefinitions(batch, database, pipeline);
+                usable = true;
+                return definitions;
+            } catch (DictConnectionException e) {
+                // A failed pipeline is abandoned by closing the connection; a single error reply leaves it usable
+                usable = !connection.isClosed();
+                if (!isDisconnect(e)) throw e;
+                failure = e;
+            } finally {
+                if (usable) pool.release(connection);
+                else pool.invalidate(connection);
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * @return true if the exception was caused by a broken connection, rather than by an error reply of the server.
+     */
+    private static boolean isDisconnect(DictConnectionException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes results until the end of the output. After a write fails, results are still taken from the queue (and
+     * discarded), so that workers never wait for a writer that has stopped.
+     */
+    private void writeResults(Writer output) {
+        try {
+            String result;
+            while ((result = results.take()) != END_OF_OUTPUT) {
+                if (writeFailure != null) continue;
+                try {
+                    output.write(result);
+                    output.write('\n');
+                } catch (IOException e) {
+                    writeFailure = e;
+                }
+            }
+            if (writeFailure == null) output.flush();
+        } catch (IOException e) {
+            writeFailure = e;
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private static String result(String word, Collection<Definition> definitions) {
+        StringBuilder json = new StringBuilder();
+        Json.appendString(json.append("{\"word\":"), word);
+        return Json.appendDefinitions(json.append(",\"definitions\":"), definitions).append('}').toString();
+    }
+
+    private static String error(String word, Exception e) {
+        StringBuilder json = new StringBuilder();
+        Json.appendString(json.append("{\"word\":"), word);
+        return Json.appendString(json.append(",\"error\":"), String.valueOf(e.getMessage())).append('}').toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String server = "dict.org", databaseName = "*", inputFile = null, outputFile = null;
+        int connections = DEFAULT_CONNECTIONS, pipeline = DEFAULT_PIPELINE, queue = DEFAULT_QUEUE;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-server": server = args[++i]; break;
+                    case "-database": databaseName = args[++i]; break;
+                    case "-connections": connections = Integer.parseInt(args[++i]); break;
+                    case "-pipeline": pipeline = Integer.parseInt(args[++i]); break;
+                    case "-queue": queue = Integer.parseInt(args[++i]); break;
+                    case "-output": outputFile = args[++i]; break;
+                    default:
+                        if (args[i].startsWith("-") && !args[i].equals("-") || inputFile != null)
+                            throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                        inputFile = args[i];
+                }
+            }
+            if (connections < 1 || pipeline < 1 || queue < 1)
+                throw new IllegalArgumentException("Sizes must be positive");
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println("Usage: BulkLookup [-server host[:port] | -server file:directory] [-database name] " +
+                    "[-connections n] [-pipeline n] [-queue n] [-output file] [file]");
+            System.exit(2);
+            return;
+        }
+
+        if (LocalDictionary.isLocal(server)) {
+            LocalDictionary dictionary = LocalDictionary.open(server);
+            try {
+                Database database = findDatabase(dictionary, databaseName);
+                if (database == null) {
+                    System.err.println("Unknown database: " + databaseName);
+                    System.exit(2);
+                    return;
+                }
+                run(new BulkLookup(dictionary, database, connections, pipeline, queue), inputFile, outputFile);
+            } finally {
+                dictionary.close();
+            }
+            return;
+        }
+
+        String host = server;
+        int port = DictionaryConnection.DEFAULT_PORT;
+        if (server.contains(":")) {
+            host = server.substring(0, server.indexOf(':'));
+            port = Integer.parseInt(server.substring(server.indexOf(':') + 1));
+        }
+
+        DictionaryConnectionPool pool = new DictionaryConnectionPool(host, port, 1, connections,
+                DictionaryConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        try {
+            Database database = findDatabase(pool, databaseName);
+            if (database == null) {
+                System.err.println("Unknown database: " + databaseName);
+                System.exit(2);
+                return;
+            }
+            run(new BulkLookup(pool, database, connections, pipeline, queue), inputFile, outputFile);
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Looks up the words of the input file (or the standard input), and reports the throughput and the latency.
+     */
+    private static void run(BulkLookup lookup, String inputFile, String outputFile)
+            throws IOException, InterruptedException {
+        DictMetrics metrics = DictMetrics.getDefault();
+        metrics.reset();
+        long start = System.nanoTime();
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(
+                inputFile == null || inputFile.equals("-") ? System.in : new FileInputStream(inputFile),
+                StandardCharsets.UTF_8));
+             Writer output = new BufferedWriter(new OutputStreamWriter(
+                     outputFile == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(outputFile),
+                     StandardCharsets.UTF_8), 1 << 16)) {
+            lookup.run(input, output);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram latency = metrics.getTotalTime(DictMetrics.Command.DEFINE);
+        System.err.printf(Locale.ROOT, "%d words (%d failed) in %.1f s: %.1f words/s, latency p50=%.2f " +
+                        "p99=%.2f max=%.2f ms%n", lookup.getWordCount(), lookup.getFailureCount(), seconds,
+                lookup.getWordCount() / seconds, latency.getPercentileMillis(50),
+                latency.getPercentileMillis(99), latency.getMaxMillis());
+    }
+
+    private static Database findDatabase(DictionaryConnectionPool pool, String name) throws DictConnectionException {
+        DictionaryConnection connection = pool.borrow();
+        try {
+            return findDatabase(connection, name);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    private static Database findDatabase(DictionarySource source, String name) throws DictConnectionException {
+        if (name.equals("*") || name.equals("!")) return new Database(name, "");
+        for (Database database : source.getDatabaseList()) {
+            if (database.getName().equals(name)) return database;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,415 @@
+package ca.ubc.cs317.dict.http;
+
+import ca.ubc.cs317.dict.cache.LruDefinitionCache;
+import ca.ubc.cs317.dict.cache.MatchCache;
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.local.LocalDictionary;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.DictionarySource;
+import ca.ubc.cs317.dict.util.DictStringParser;
+import ca.ubc.cs317.dict.util.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves lookups from a DICT server over HTTP, so that other programs can use the pool and the caches of one client
+ * instead of opening their own DICT connections. Lookups can also be served from local databases (see
+ * LocalDictionary). Replies are JSON:
+ *
+ * GET /databases                                - the databases of the server
+ * GET /define?word=w[&db=name]                  - definitions of a word (db defaults to *)
+ * GET /match?word=w[&strategy=s][&db=name]      - matches of a pattern (strategy defaults to prefix)
+ *
+ * Concurrent requests for the same lookup are coalesced: only the first one is sent to the DICT server, and the
+ * others wait for its reply. Replies larger than GZIP_THRESHOLD bytes are compressed for clients that accept gzip.
+ * Connections are kept alive between requests, since every reply has a known length.
+ */
+public class DictHttpGateway implements Closeable {
+
+    public static final int DEFAULT_PORT = 8628;
+    public static final int DEFAULT_THREADS = 16;
+    public static final int GZIP_THRESHOLD = 1024;
+
+    private static final int DEFINITION_CACHE_ENTRIES = 10000;
+    private static final long DEFINITION_CACHE_BYTES = 64 * 1024 * 1024;
+    private static final long DEFINITION_CACHE_TTL_MILLIS = 30 * 60 * 1000;
+    private static final int MATCH_CACHE_ENTRIES = 5000;
+    private static final int MATCH_CACHE_TRUNCATION_THRESHOLD = 1000;
+
+    static {
+        // The JDK server writes the headers and the body of a reply separately; with Nagle's algorithm, the body
+        // then waits for the client's delayed ACK (about 40ms) on every kept-alive connection
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final DictionaryConnectionPool pool;
+    private final DictionarySource source;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Database> databases = new LinkedHashMap<>();
+    private final Map<String, MatchingStrategy> strategies = new LinkedHashMap<>();
+    private final Response databaseList;
+    private final ConcurrentHashMap<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Creates a gateway for the server of a pool, retrieving its databases and strategies right away. The gateway
+     * only accepts requests once start is called.
+     *
+     * @param pool    Pool used for every lookup. Caches set on the pool are shared by all clients of the gateway.
+     * @param address Address where the HTTP server listens; port 0 picks a free port.
+     * @param threads Number of requests handled at the same time.
+     * @throws IOException             If the HTTP server can't be created.
+     * @throws DictConnectionException If the databases or strategies of the DICT server can't be retrieved.
+     */
+    public DictHttpGateway(DictionaryConnectionPool pool, InetSocketAddress address, int threads)
+            throws IOException, DictConnectionException {
+        this(pool, null, address, threads);
+    }
+
+    /**
+     * Creates a gateway for a source that is used directly, such as a LocalDictionary, instead of through a pool.
+     *
+     * @param source  Source used for every lookup. It must support concurrent requests.
+     * @param address Address where the HTTP server listens; port 0 picks a free port.
+     * @param threads Number of requests handled at the same time.
+     * @throws IOException             If the HTTP server can't be created.
+     * @throws DictConnectionException If the databases or strategies of the source can't be retrieved.
+     */
+    public DictHttpGateway(DictionarySource source, InetSocketAddress address, int threads)
+            throws IOException, DictConnectionException {
+        this(null, source, address, threads);
+    }
+
+    private DictHttpGateway(DictionaryConnectionPool pool, DictionarySource source, InetSocketAddress address,
+                            int threads) throws IOException, DictConnectionException {
+        this.pool = pool;
+        this.source = source;
+
+        lookUp(lists -> {
+            for (Database database : lists.getDatabaseList())
+                databases.put(database.getName(), database);
+            for (MatchingStrategy strategy : lists.getStrategyList())
+                strategies.put(strategy.getName(), strategy);
+            return null;
+        });
+        databases.put("*", new Database("*", "All databases"));
+        databases.put("!", new Database("!", "Any database"));
+
+        StringBuilder json = new StringBuilder("[");
+        for (Database database : databases.values()) {
+            if (json.length() > 1) json.append(',');
+            Json.appendString(json.append("{\"name\":"), database.getName());
+            Json.appendString(json.append(",\"description\":"), database.getDescription()).append('}');
+        }
+        databaseList = new Response(200, json.append(']').toString());
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "dict-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/databases", exchange -> handle(exchange, this::databases));
+        server.createContext("/define", exchange -> handle(exchange, this::define));
+        server.createContext("/match", exchange -> handle(exchange, this::match));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting up to a second for the requests in progress. The pool is not closed.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of requests received.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of requests answered with the reply of an identical request that was already in progress.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private Response databases(Map<String, String> query) {
+        return databaseList;
+    }
+
+    private Response define(Map<String, String> query) {
+        String word = query.get("word");
+        Database database = databases.get(query.getOrDefault("db", "*"));
+        if (word == null || word.isEmpty())
+            return Response.error(400, "Missing word");
+        if (!DictStringParser.isValidWord(word))
+            return Response.error(400, "Invalid word");
+        if (database == null)
+            return Response.error(400, "Unknown database: " + query.get("db"));
+
+        return coalesce("define " + database.getName() + " " + word, () -> {
+            Collection<Definition> definitions = lookUp(connection -> connection.getDefinitions(word, database));
+            StringBuilder json = new StringBuilder();
+            Json.appendString(json.append("{\"word\":"), word);
+            return Json.appendDefinitions(json.append(",\"definitions\":"), definitions).append('}');
+        });
+    }
+
+    private Response match(Map<String, String> query) {
+        String word = query.get("word");
+        Database database = databases.get(query.getOrDefault("db", "*"));
+        MatchingStrategy strategy = strategies.get(query.getOrDefault("strategy", MatchCache.PREFIX));
+        if (word == null || word.isEmpty())
+            return Response.error(400, "Missing word");
+        if (!DictStringParser.isValidWord(word))
+            return Response.error(400, "Invalid word");
+        if (database == null)
+            return Response.error(400, "Unknown database: " + query.get("db"));
+        if (strategy == null)
+            return Response.error(400, "Unknown strategy: " + query.get("strategy"));
+
+        return coalesce("match " + database.getName() + " " + strategy.getName() + " " + word, () -> {
+            Set<String> matches = lookUp(connection -> connection.getMatchList(word, strategy, database));
+            StringBuilder json = new StringBuilder();
+            Json.appendString(json.append("{\"word\":"), word);
+            Json.appendString(json.append(",\"strategy\":"), strategy.getName());
+            return Json.appendStrings(json.append(",\"matches\":"), matches).append('}');
+        });
+    }
+
+    /**
+     * Runs a lookup, unless an identical one is already in progress, in which case its reply is shared.
+     *
+     * @param key    Identifies the lookup.
+     * @param lookup Builds the JSON reply.
+     */
+    private Response coalesce(String key, Reply lookup) {
+        CompletableFuture<Response> reply = new CompletableFuture<>();
+        CompletableFuture<Response> existing = inFlight.putIfAbsent(key, reply);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.join();
+        }
+
+        try {
+            reply.complete(new Response(200, lookup.build().toString()));
+        } catch (DictConnectionException e) {
+            reply.complete(Response.error(502, e.getMessage() != null ? e.getMessage() : String.valueOf(e.getCause())));
+        } catch (RuntimeException e) {
+            reply.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, reply);
+        }
+        return reply.join();
+    }
+
+    /**
+     * Runs a request on a pooled connection, retrying once on another connection, since an idle connection may have
+     * been closed by the server. Without a pool, the request is run on the source.
+     */
+    private <T> T lookUp(Lookup<T> request) throws DictConnectionException {
+        if (pool == null) return request.apply(source);
+
+        DictConnectionException failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            DictionaryConnection connection = pool.borrow();
+            boolean usable = false;
+            try {
+                T result = request.apply(connection);
+                usable = true;
+                return result;
+            } catch (DictConnectionException e) {
+                failure = e;
+            } finally {
+                if (usable) pool.release(connection);
+                else pool.invalidate(connection);
+            }
+        }
+        throw failure;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        requests.increment();
+        try {
+            Response response;
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                response = Response.error(405, "Only GET is supported");
+            } else {
+                try {
+                    response = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+                } catch (IllegalArgumentException e) {
+                    response = Response.error(400, "Invalid query");
+                }
+            }
+
+            byte[] body = response.body;
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (body.length > GZIP_THRESHOLD) {
+                exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                if (accept != null && accept.contains("gzip")) {
+                    body = response.gzipped();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0) continue;
+            query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private interface Handler {
+        Response handle(Map<String, String> query);
+    }
+
+    private interface Reply {
+        CharSequence build() throws DictConnectionException;
+    }
+
+    private interface Lookup<T> {
+        T apply(DictionarySource source) throws DictConnectionException;
+    }
+
+    /**
+     * A reply shared by coalesced requests. The compressed body is computed the first time a client asks for it.
+     */
+    private static class Response {
+        final int status;
+        final byte[] body;
+        private byte[] gzipped;
+
+        Response(int status, String json) {
+            this.status = status;
+            this.body = json.getBytes(StandardCharsets.UTF_8);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, Json.appendString(new StringBuilder("{\"error\":"), message).append('}')
+                    .toString());
+        }
+
+        synchronized byte[] gzipped() throws IOException {
+            if (gzipped == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                    gzip.write(body);
+                }
+                gzipped = bytes.toByteArray();
+            }
+            return gzipped;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String server = "dict.org";
+        int port = DEFAULT_PORT, connections = DictionaryConnectionPool.DEFAULT_MAX_CONNECTIONS, threads = DEFAULT_THREADS;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-server": server = args[++i]; break;
+                    case "-port": port = Integer.parseInt(args[++i]); break;
+                    case "-connections": connections = Integer.parseInt(args[++i]); break;
+                    case "-threads": threads = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+            if (connections < 1 || threads < 1)
+                throw new IllegalArgumentException("Sizes must be positive");
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println("Usage: DictHttpGateway [-server host[:port] | -server file:directory] [-port n] " +
+                    "[-connections n] [-threads n]");
+            System.exit(2);
+            return;
+        }
+
+        if (LocalDictionary.isLocal(server)) {
+            LocalDictionary dictionary = LocalDictionary.open(server);
+            DictHttpGateway gateway = new DictHttpGateway(dictionary, new InetSocketAddress(port), threads);
+            gateway.start();
+            System.err.println("Serving " + server + " on http://localhost:" + gateway.getPort() + "/");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gateway.close();
+                dictionary.close();
+            }));
+            Thread.currentThread().join();
+            return;
+        }
+
+        String host = server;
+        int dictPort = DictionaryConnection.DEFAULT_PORT;
+        if (server.contains(":")) {
+            host = server.substring(0, server.indexOf(':'));
+            dictPort = Integer.parseInt(server.substring(server.indexOf(':') + 1));
+        }
+
+        DictionaryConnectionPool pool = new DictionaryConnectionPool(host, dictPort,
+                DictionaryConnectionPool.DEFAULT_MIN_CONNECTIONS, connections,
+                DictionaryConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        pool.setDefinitionCache(new LruDefinitionCache(DEFINITION_CACHE_ENTRIES, DEFINITION_CACHE_BYTES,
+                DEFINITION_CACHE_TTL_MILLIS));
+        pool.setMatchCache(new MatchCache(MATCH_CACHE_ENTRIES, MATCH_CACHE_TRUNCATION_THRESHOLD));
+
+        DictHttpGateway gateway = new DictHttpGateway(pool, new InetSocketAddress(port), threads);
+        gateway.start();
+        System.err.println("Serving " + server + " on http://localhost:" + gateway.getPort() + "/");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateway.close();
+            pool.close();
+        }));
+        Thread.currentThread().join();
+    }
+}
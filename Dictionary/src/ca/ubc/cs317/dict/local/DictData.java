@@ -0,0 +1,20 @@
+package ca.ubc.cs317.dict.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Random access to the text of a dictd database (the .dict file), addressed by the offsets stored in its index.
+ */
+public interface DictData extends Closeable {
+
+    /**
+     * Reads part of the database text.
+     *
+     * @param offset Offset of the first byte, as stored in the index.
+     * @param length Number of bytes to read.
+     * @return The bytes read.
+     * @throws IOException If the data can't be read or the range is outside the file.
+     */
+    byte[] read(long offset, int length) throws IOException;
+}
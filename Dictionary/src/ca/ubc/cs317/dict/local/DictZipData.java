@@ -0,0 +1,229 @@
+package ca.ubc.cs317.dict.local;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to a dictzip (.dict.dz) file. A dictzip file is a gzip file whose deflate stream is flushed every
+ * chunk of uncompressed data, with a table of compressed chunk sizes stored in the "RA" field of the gzip header.
+ * Reads only inflate the chunks covering the requested range, and the most recently used chunks are kept in a small
+ * LRU cache, so memory use is bounded regardless of the size of the database.
+ */
+public class DictZipData implements DictData {
+
+    public static final int DEFAULT_CACHED_CHUNKS = 32;
+
+    private static final int FTEXT_FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    private final FileChannel channel;
+    private final int chunkLength;
+    private final long[] chunkOffsets; // chunk i is [chunkOffsets[i], chunkOffsets[i + 1]) in the file
+    private final Map<Integer, byte[]> cache;
+
+    public DictZipData(Path file) throws IOException {
+        this(file, DEFAULT_CACHED_CHUNKS);
+    }
+
+    /**
+     * @param file         The .dict.dz file.
+     * @param cachedChunks Number of decompressed chunks kept in memory.
+     * @throws IOException If the file can't be read or is not a dictzip file.
+     */
+    public DictZipData(Path file, int cachedChunks) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            HeaderReader header = new HeaderReader(channel);
+            if (channel.size() < 10 || header.u8() != 0x1f || header.u8() != 0x8b || header.u8() != 8)
+                throw new IOException(file + ": not a gzip file");
+            int flags = header.u8();
+            header.seek(10);
+            if ((flags & FEXTRA) == 0)
+                throw new IOException(file + ": gzip file without dictzip chunk table");
+
+            int extraLength = header.u16();
+            long extraEnd = header.position() + extraLength;
+            int[] chunkSizes = null;
+            int length = 0;
+            while (header.position() + 4 <= extraEnd) {
+                int si1 = header.u8(), si2 = header.u8();
+                int fieldLength = header.u16();
+                long fieldEnd = header.position() + fieldLength;
+                if (si1 == 'R' && si2 == 'A') {
+                    int version = header.u16();
+                    if (version != 1)
+                        throw new IOException(file + ": unsupported dictzip version " + version);
+                    length = header.u16();
+                    int count = header.u16();
+                    chunkSizes = new int[count];
+                    for (int i = 0; i < count; i++)
+                        chunkSizes[i] = header.u16();
+                }
+                header.seek(fieldEnd);
+            }
+            if (chunkSizes == null)
+                throw new IOException(file + ": gzip file without dictzip chunk table");
+            header.seek(extraEnd);
+
+            if ((flags & FNAME) != 0) header.skipString();
+            if ((flags & FCOMMENT) != 0) header.skipString();
+            if ((flags & FTEXT_FHCRC) != 0) header.seek(header.position() + 2);
+
+            chunkLength = length;
+            chunkOffsets = new long[chunkSizes.length + 1];
+            chunkOffsets[0] = header.position();
+            for (int i = 0; i < chunkSizes.length; i++)
+                chunkOffsets[i + 1] = chunkOffsets[i] + chunkSizes[i];
+        } catch (RuntimeException e) {
+            channel.close();
+            throw new IOException(file + ": invalid dictzip header", e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > cachedChunks;
+            }
+        };
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0)
+            throw new IOException("Invalid range " + offset + "+" + length);
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long position = offset + copied;
+            int chunk = (int) (position / chunkLength);
+            if (chunk >= chunkOffsets.length - 1)
+                throw new IOException("Range " + offset + "+" + length + " outside of data");
+            byte[] data = chunk(chunk);
+            int start = (int) (position % chunkLength);
+            if (start >= data.length)
+                throw new IOException("Range " + offset + "+" + length + " outside of data");
+            int count = Math.min(length - copied, data.length - start);
+            System.arraycopy(data, start, bytes, copied, count);
+            copied += count;
+        }
+        return bytes;
+    }
+
+    public int getChunkLength() {
+        return chunkLength;
+    }
+
+    public int getChunkCount() {
+        return chunkOffsets.length - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private byte[] chunk(int index) throws IOException {
+        synchronized (cache) {
+            byte[] cached = cache.get(index);
+            if (cached != null) return cached;
+        }
+
+        ByteBuffer compressed = ByteBuffer.allocate((int) (chunkOffsets[index + 1] - chunkOffsets[index]));
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, chunkOffsets[index] + compressed.position()) < 0)
+                throw new IOException("Unexpected end of dictzip file");
+        }
+
+        // Each chunk ends at a full flush point, so it can be inflated on its own as a raw deflate stream
+        byte[] data = new byte[chunkLength];
+        int length = 0;
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array());
+            while (length < chunkLength && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, chunkLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt dictzip chunk " + index, e);
+        } finally {
+            inflater.end();
+        }
+        if (length < chunkLength) {
+            byte[] shorter = new byte[length]; // only the last chunk may be shorter
+            System.arraycopy(data, 0, shorter, 0, length);
+            data = shorter;
+        }
+
+        synchronized (cache) {
+            cache.put(index, data);
+        }
+        return data;
+    }
+
+    /**
+     * Reads the gzip header sequentially, one buffer at a time: the chunk table alone can take up to 64 KB, and the
+     * file name and comment that follow it have no limit at all.
+     */
+    private static class HeaderReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        private long bufferStart = 0; // position in the file of the first byte of the buffer
+
+        HeaderReader(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        long position() {
+            return bufferStart + buffer.position();
+        }
+
+        void seek(long position) {
+            if (position >= bufferStart && position <= bufferStart + buffer.limit()) {
+                buffer.position((int) (position - bufferStart));
+            } else {
+                bufferStart = position;
+                buffer.limit(0);
+            }
+        }
+
+        int u8() throws IOException {
+            if (!buffer.hasRemaining()) fill();
+            return buffer.get() & 0xff;
+        }
+
+        int u16() throws IOException {
+            return u8() | u8() << 8;
+        }
+
+        void skipString() throws IOException {
+            while (u8() != 0) ;
+        }
+
+        private void fill() throws IOException {
+            bufferStart += buffer.limit();
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer, bufferStart);
+            } while (read == 0);
+            if (read < 0) throw new EOFException("Unexpected end of dictzip header");
+            buffer.flip();
+        }
+    }
+}
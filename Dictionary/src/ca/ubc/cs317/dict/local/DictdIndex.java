@@ -0,0 +1,187 @@
+package ca.ubc.cs317.dict.local;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compact in-memory form of a dictd .index file. Headwords are stored as UTF-8 in a single byte array, sorted
+ * case-insensitively (ASCII letters only), with the location of each entry's text packed in a long, so an index of
+ * millions of headwords needs no per-entry objects. Lookups use binary search.
+ */
+public class DictdIndex {
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int LENGTH_BITS = 24;
+
+    private final byte[] headwords;
+    private final int[] starts;      // headword i is headwords[starts[i], starts[i + 1])
+    private final long[] locations;  // offset << LENGTH_BITS | length
+
+    private DictdIndex(byte[] headwords, int[] starts, long[] locations) {
+        this.headwords = headwords;
+        this.starts = starts;
+        this.locations = locations;
+    }
+
+    /**
+     * Loads a dictd .index file, where each line has a headword, the base64-encoded offset and the base64-encoded
+     * length of its entry, separated by tabs.
+     *
+     * @param file Index file to be loaded.
+     * @return The loaded index.
+     * @throws IOException If the file can't be read or is not a valid index.
+     */
+    public static DictdIndex load(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+
+        int lines = 0;
+        for (byte b : data)
+            if (b == '\n') lines++;
+        int[] lineStarts = new int[lines + 1];
+        int[] wordEnds = new int[lines + 1];
+        long[] lineLocations = new long[lines + 1];
+
+        int count = 0;
+        int lineStart = 0;
+        while (lineStart < data.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < data.length && data[lineEnd] != '\n') lineEnd++;
+            int firstTab = indexOf(data, (byte) '\t', lineStart, lineEnd);
+            int secondTab = indexOf(data, (byte) '\t', firstTab + 1, lineEnd);
+            if (firstTab < 0 || secondTab < 0) {
+                if (lineEnd > lineStart)
+                    throw new IOException(file + ": invalid index line " + (count + 1));
+            } else {
+                int thirdTab = indexOf(data, (byte) '\t', secondTab + 1, lineEnd);
+                long offset = decodeNumber(data, firstTab + 1, secondTab);
+                long length = decodeNumber(data, secondTab + 1, thirdTab < 0 ? lineEnd : thirdTab);
+                if (length >= 1L << LENGTH_BITS)
+                    throw new IOException(file + ": entry too long on line " + (count + 1));
+                lineStarts[count] = lineStart;
+                wordEnds[count] = firstTab;
+                lineLocations[count] = offset << LENGTH_BITS | length;
+                count++;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        if (!isSorted(data, lineStarts, wordEnds, count)) {
+            Arrays.sort(order, (a, b) -> compare(data, lineStarts[a], wordEnds[a], data, lineStarts[b], wordEnds[b]));
+        }
+
+        int total = 0;
+        for (int i = 0; i < count; i++) total += wordEnds[i] - lineStarts[i];
+        byte[] headwords = new byte[total];
+        int[] starts = new int[count + 1];
+        long[] locations = new long[count];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int line = order[i];
+            int length = wordEnds[line] - lineStarts[line];
+            System.arraycopy(data, lineStarts[line], headwords, position, length);
+            starts[i] = position;
+            locations[i] = lineLocations[line];
+            position += length;
+        }
+        starts[count] = position;
+        return new DictdIndex(headwords, starts, locations);
+    }
+
+    public int size() {
+        return locations.length;
+    }
+
+    public String headword(int i) {
+        return new String(headwords, starts[i], starts[i + 1] - starts[i], StandardCharsets.UTF_8);
+    }
+
+    public long offset(int i) {
+        return locations[i] >>> LENGTH_BITS;
+    }
+
+    public int length(int i) {
+        return (int) (locations[i] & ((1L << LENGTH_BITS) - 1));
+    }
+
+    /**
+     * @return The number of bytes used by the headwords and the arrays of this index.
+     */
+    public long memoryUsage() {
+        return headwords.length + 4L * starts.length + 8L * locations.length;
+    }
+
+    /**
+     * @return The position of the first headword not smaller than the given word, ignoring case.
+     */
+    public int lowerBound(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(headwords, starts[middle], starts[middle + 1], key, 0, key.length) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return true if headword i is equal to the word, ignoring case.
+     */
+    public boolean equalsIgnoreCase(int i, String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        return compare(headwords, starts[i], starts[i + 1], key, 0, key.length) == 0;
+    }
+
+    /**
+     * @return true if headword i starts with the prefix, ignoring case.
+     */
+    public boolean startsWithIgnoreCase(int i, String prefix) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int length = starts[i + 1] - starts[i];
+        return length >= key.length && compare(headwords, starts[i], starts[i] + key.length, key, 0, key.length) == 0;
+    }
+
+    static int compare(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < length; i++) {
+            int x = fold(a[aStart + i]), y = fold(b[bStart + i]);
+            if (x != y) return x - y;
+        }
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+    }
+
+    private static boolean isSorted(byte[] data, int[] starts, int[] ends, int count) {
+        for (int i = 1; i < count; i++) {
+            if (compare(data, starts[i - 1], ends[i - 1], data, starts[i], ends[i]) > 0) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] data, byte value, int from, int to) {
+        if (from < 0) return -1;
+        for (int i = from; i < to; i++)
+            if (data[i] == value) return i;
+        return -1;
+    }
+
+    private static long decodeNumber(byte[] data, int start, int end) throws IOException {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = BASE64.indexOf(data[i]);
+            if (digit < 0) throw new IOException("Invalid base64 digit in index: " + (char) data[i]);
+            value = value * 64 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,78 @@
+package ca.ubc.cs317.dict.local;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+
+import java.util.*;
+
+/**
+ * Retrieves every headword of a database from a DICT server, so that matches can afterwards be answered locally by
+ * a HeadwordTrie. If the server supports regular expressions (strategy "re"), a single MATCH for "." lists all
+ * headwords. Otherwise, the headwords are retrieved by prefix, one pipelined MATCH per letter or digit, splitting a
+ * prefix further when its list may have been truncated by the server; headwords that don't start with a letter or
+ * digit can't be found this way.
+ */
+public class HeadwordCrawler {
+
+    public static final int DEFAULT_TRUNCATION_THRESHOLD = 10000;
+
+    private static final String REGEX = "re";
+    private static final int MAX_PREFIX_LENGTH = 6;
+    private static final String INITIALS = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    private final DictionaryConnection connection;
+    private final int truncationThreshold;
+
+    public HeadwordCrawler(DictionaryConnection connection) {
+        this(connection, DEFAULT_TRUNCATION_THRESHOLD);
+    }
+
+    /**
+     * @param connection          Connection used for the MATCH commands. Replies don't go through its match cache.
+     * @param truncationThreshold Size from which a prefix match list is considered possibly truncated by the server,
+     *                            and is retrieved again one character further.
+     */
+    public HeadwordCrawler(DictionaryConnection connection, int truncationThreshold) {
+        this.connection = connection;
+        this.truncationThreshold = truncationThreshold;
+    }
+
+    /**
+     * @return The headwords of a database.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public Set<String> crawl(Database database) throws DictConnectionException {
+        for (MatchingStrategy strategy : connection.getStrategyList()) {
+            if (strategy.getName().equals(REGEX))
+                return connection.getMatchLists(Collections.singletonList("."), strategy, database).get(".");
+        }
+
+        Set<String> headwords = new HashSet<>();
+        MatchingStrategy prefix = new MatchingStrategy(HeadwordTrie.PREFIX, "");
+        List<String> prefixes = new ArrayList<>();
+        for (char c : INITIALS.toCharArray())
+            prefixes.add(String.valueOf(c));
+        while (!prefixes.isEmpty()) {
+            List<String> longer = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> entry : connection.getMatchLists(prefixes, prefix, database).entrySet()) {
+                headwords.addAll(entry.getValue());
+                if (entry.getValue().size() >= truncationThreshold && entry.getKey().length() < MAX_PREFIX_LENGTH) {
+                    for (char c : INITIALS.toCharArray())
+                        longer.add(entry.getKey() + c);
+                }
+            }
+            prefixes = longer;
+        }
+        return headwords;
+    }
+
+    /**
+     * @return The headwords of a database, ready to answer matches.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public HeadwordTrie build(Database database) throws DictConnectionException {
+        return HeadwordTrie.build(crawl(database));
+    }
+}
@@ -0,0 +1,640 @@
+package ca.ubc.cs317.dict.local;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An in-memory set of headwords that answers exact, prefix, suffix, substring, lev and soundex matches without
+ * consulting a server. The headwords are stored twice as minimal acyclic automata (DAWGs) over their UTF-8 bytes: once forwards,
+ * for exact, prefix and substring matches, and once reversed, so that suffixes become prefixes. Minimization merges
+ * both the common prefixes and the common endings of the headwords, so a list of millions of headwords typically
+ * takes a few bytes per headword.
+ *
+ * Each automaton is a pair of arrays indexed by edge: the label byte and an int holding the target state and two
+ * flags (last edge of its state, and headword ending after this edge). A state is identified by the position of its
+ * first edge; state 0 has no edges. Matches ignore case for ASCII letters only, like DictdIndex.
+ *
+ * Fuzzy matches walk the forward automaton while computing one row of the edit distance table per byte, abandoning a
+ * branch as soon as no cell of the row is within the distance, which is equivalent to running a Levenshtein
+ * automaton in parallel with the headword automaton. Soundex matches use a third automaton, built by prepareSoundex()
+ * or else the first time it is needed, whose entries are the soundex code of each headword followed by the headword.
+ */
+public class HeadwordTrie {
+
+    public static final String EXACT = "exact";
+    public static final String PREFIX = "prefix";
+    public static final String SUFFIX = "suffix";
+    public static final String SUBSTRING = "substring";
+    public static final String LEV = "lev";
+    public static final String SOUNDEX = "soundex";
+
+    /**
+     * Maximum number of edges examined by a single fuzzy match, so that the cost of a query is bounded even for short
+     * patterns with a large edit distance. Matches found up to that point are still returned.
+     */
+    public static final int MAX_FUZZY_STEPS = 2000000;
+
+    private static final String SOUNDEX_CODES = "01230120022455012623010202"; // for A to Z, 0 for vowels
+
+    private static final int LAST = 1 << 31;
+    private static final int FINAL = 1 << 30;
+    private static final int TARGET = FINAL - 1;
+
+    private final Automaton forward;
+    private final Automaton reverse;
+    private final int size;
+    private Automaton soundex;
+
+    private HeadwordTrie(Automaton forward, Automaton reverse, int size) {
+        this.forward = forward;
+        this.reverse = reverse;
+        this.size = size;
+    }
+
+    /**
+     * Builds the automata for a collection of headwords. Duplicates and empty headwords are ignored.
+     *
+     * @param headwords The headwords, in any order.
+     * @return The set of headwords.
+     */
+    public static HeadwordTrie build(Collection<String> headwords) {
+        byte[][] words = new byte[headwords.size()][];
+        int count = 0;
+        for (String headword : headwords) {
+            if (!headword.isEmpty())
+                words[count++] = headword.getBytes(StandardCharsets.UTF_8);
+        }
+        return build(words, count);
+    }
+
+    /**
+     * Builds the automata for the headwords of a dictd index, leaving out the entries dictd uses for the database
+     * information (e.g., 00-database-short).
+     */
+    public static HeadwordTrie build(DictdIndex index) {
+        byte[][] words = new byte[index.size()][];
+        int count = 0;
+        for (int i = 0; i < index.size(); i++) {
+            String headword = index.headword(i);
+            if (!headword.isEmpty() && !LocalDictionary.isHidden(headword))
+                words[count++] = headword.getBytes(StandardCharsets.UTF_8);
+        }
+        return build(words, count);
+    }
+
+    private static HeadwordTrie build(byte[][] words, int count) {
+        Arrays.parallelSort(words, 0, count, Arrays::compareUnsigned);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || !Arrays.equals(words[unique - 1], words[i]))
+                words[unique++] = words[i];
+        }
+        Automaton forward = new Builder().build(words, unique);
+
+        for (int i = 0; i < unique; i++)
+            words[i] = reversed(words[i]);
+        Arrays.parallelSort(words, 0, unique, Arrays::compareUnsigned);
+        Automaton reverse = new Builder().build(words, unique);
+
+        return new HeadwordTrie(forward, reverse, unique);
+    }
+
+    /**
+     * @return The number of distinct headwords in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Builds the automaton used by soundex matches now, so that the first soundex match doesn't have to. Building it
+     * takes about as long as building the set, so it should be called on the thread that built the set.
+     */
+    public void prepareSoundex() {
+        soundexAutomaton();
+    }
+
+    /**
+     * @return The number of bytes used by the arrays of the automata built so far.
+     */
+    public synchronized long memoryUsage() {
+        return 5L * (forward.edges.length + reverse.edges.length + (soundex == null ? 0 : soundex.edges.length));
+    }
+
+    /**
+     * Adds the headwords that match a pattern to a set.
+     *
+     * @param word     The pattern.
+     * @param strategy One of EXACT, PREFIX, SUFFIX, SUBSTRING, LEV (edit distance 1, as in dictd) or SOUNDEX.
+     * @param matches  The set receiving the matching headwords.
+     * @param limit    Maximum number of headwords added to the set.
+     * @return true if the strategy is supported, false otherwise (in which case the set is not modified).
+     */
+    public boolean match(String word, String strategy, Set<String> matches, int limit) {
+        byte[] pattern = word.getBytes(StandardCharsets.UTF_8);
+        Collector out = new Collector(matches, limit, false, 0);
+        switch (strategy) {
+            case EXACT:
+                forward.prefix(forward.root, pattern, 0, false, new ByteStack(), out, false);
+                return true;
+            case PREFIX:
+                forward.prefix(forward.root, pattern, 0, false, new ByteStack(), out, true);
+                return true;
+            case SUFFIX:
+                reverse.prefix(reverse.root, reversed(pattern), 0, false, new ByteStack(),
+                        new Collector(matches, limit, true, 0), true);
+                return true;
+            case SUBSTRING:
+                forward.substring(pattern, out);
+                return true;
+            case LEV:
+                fuzzy(word, 1, matches, limit);
+                return true;
+            case SOUNDEX: {
+                String code = soundex(word);
+                if (code == null) return true;
+                byte[] key = (code + '\0').getBytes(StandardCharsets.US_ASCII);
+                Automaton codes = soundexAutomaton();
+                codes.prefix(codes.root, key, 0, false, new ByteStack(),
+                        new Collector(matches, limit, false, key.length), true);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Adds the headwords within an edit distance of a word to a set. Insertions, deletions, substitutions and
+     * transpositions of adjacent characters each count as one edit; letters are compared ignoring case, and a
+     * non-ASCII character counts as many edits as its UTF-8 encoding has bytes.
+     *
+     * @param word        The word to be matched.
+     * @param maxDistance Maximum number of edits, usually 1 or 2.
+     * @param matches     The set receiving the matching headwords.
+     * @param limit       Maximum number of headwords added to the set.
+     */
+    public void fuzzy(String word, int maxDistance, Set<String> matches, int limit) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int[] pattern = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++)
+            pattern[i] = fold(bytes[i]);
+
+        // A path longer than the pattern plus the distance can't be within the distance, so rows can be preallocated
+        int[][] rows = new int[pattern.length + maxDistance + 2][pattern.length + 1];
+        for (int j = 0; j <= pattern.length; j++)
+            rows[0][j] = j;
+        forward.fuzzy(forward.root, 1, -1, pattern, maxDistance, rows, new ByteStack(),
+                new Collector(matches, limit, false, 0), new int[]{MAX_FUZZY_STEPS});
+    }
+
+    /**
+     * Computes the American soundex code of a word: its first letter followed by three digits encoding the
+     * consonants that follow, e.g., "R163" for both "Robert" and "Rupert". Characters other than ASCII letters are
+     * ignored.
+     *
+     * @return The code, or null if the word has no ASCII letters.
+     */
+    public static String soundex(String word) {
+        StringBuilder code = new StringBuilder(4);
+        char previous = 0;
+        for (int i = 0; i < word.length() && code.length() < 4; i++) {
+            char c = Character.toUpperCase(word.charAt(i));
+            if (c < 'A' || c > 'Z') continue;
+            char digit = SOUNDEX_CODES.charAt(c - 'A');
+            if (code.length() == 0) {
+                code.append(c);
+            } else if (digit != '0' && digit != previous) {
+                code.append(digit);
+            }
+            // H and W don't separate consonants with the same code, but vowels do
+            if (c != 'H' && c != 'W') previous = digit;
+        }
+        if (code.length() == 0) return null;
+        while (code.length() < 4) code.append('0');
+        return code.toString();
+    }
+
+    private synchronized Automaton soundexAutomaton() {
+        if (soundex == null) {
+            List<byte[]> keys = new ArrayList<>(size);
+            forward.forEachWord(forward.root, new ByteStack(), word -> {
+                String code = soundex(new String(word, StandardCharsets.UTF_8));
+                if (code == null) return;
+                byte[] key = new byte[code.length() + 1 + word.length];
+                System.arraycopy(code.getBytes(StandardCharsets.US_ASCII), 0, key, 0, code.length());
+                System.arraycopy(word, 0, key, code.length() + 1, word.length);
+                keys.add(key);
+            });
+            byte[][] sorted = keys.toArray(new byte[0][]);
+            Arrays.parallelSort(sorted, Arrays::compareUnsigned);
+            soundex = new Builder().build(sorted, sorted.length);
+        }
+        return soundex;
+    }
+
+    public boolean contains(String word) {
+        Set<String> matches = new HashSet<>();
+        match(word, EXACT, matches, Integer.MAX_VALUE);
+        return matches.contains(word);
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+    }
+
+    private static byte[] reversed(byte[] word) {
+        byte[] reversed = new byte[word.length];
+        for (int i = 0; i < word.length; i++)
+            reversed[i] = word[word.length - 1 - i];
+        return reversed;
+    }
+
+    private static class Automaton {
+        private final byte[] labels;
+        private final int[] edges;
+        private final int root;
+
+        private Automaton(byte[] labels, int[] edges, int root) {
+            this.labels = labels;
+            this.edges = edges;
+            this.root = root;
+        }
+
+        /**
+         * Follows the pattern from a state, ignoring case, and collects the headwords found at its end: the headword
+         * equal to the pattern and, if all is set, every headword that continues it.
+         *
+         * @param ended Whether a headword ends at the state, i.e., the edge that led to it has the FINAL flag.
+         */
+        private void prefix(int state, byte[] pattern, int i, boolean ended, ByteStack path, Collector out,
+                            boolean all) {
+            if (i == pattern.length) {
+                if (ended) out.add(path);
+                if (all) collect(state, path, out);
+                return;
+            }
+            if (state == 0) return;
+            int wanted = fold(pattern[i]);
+            for (int e = state; !out.full(); e++) {
+                if (fold(labels[e]) == wanted) {
+                    path.push(labels[e]);
+                    prefix(edges[e] & TARGET, pattern, i + 1, (edges[e] & FINAL) != 0, path, out, all);
+                    path.pop();
+                }
+                if ((edges[e] & LAST) != 0) break;
+            }
+        }
+
+        /**
+         * Collects every headword that continues the current path, in byte order.
+         */
+        private void collect(int state, ByteStack path, Collector out) {
+            if (state == 0) return;
+            for (int e = state; !out.full(); e++) {
+                path.push(labels[e]);
+                if ((edges[e] & FINAL) != 0) out.add(path);
+                collect(edges[e] & TARGET, path, out);
+                path.pop();
+                if ((edges[e] & LAST) != 0) break;
+            }
+        }
+
+        /**
+         * Calls an action with the UTF-8 bytes of every headword that continues the current path, in byte order.
+         */
+        private void forEachWord(int state, ByteStack path, java.util.function.Consumer<byte[]> action) {
+            if (state == 0) return;
+            for (int e = state; ; e++) {
+                path.push(labels[e]);
+                if ((edges[e] & FINAL) != 0) action.accept(Arrays.copyOf(path.bytes, path.length));
+                forEachWord(edges[e] & TARGET, path, action);
+                path.pop();
+                if ((edges[e] & LAST) != 0) break;
+            }
+        }
+
+        /**
+         * Collects the headwords within an edit distance of a pattern. rows[depth - 1] holds the distances between the
+         * current path and each prefix of the pattern; rows[depth - 2] and the last label are needed for
+         * transpositions.
+         */
+        private void fuzzy(int state, int depth, int lastLabel, int[] pattern, int maxDistance, int[][] rows,
+                           ByteStack path, Collector out, int[] steps) {
+            if (state == 0) return;
+            int[] previous = rows[depth - 1];
+            int[] row = rows[depth];
+            for (int e = state; !out.full() && --steps[0] >= 0; e++) {
+                int label = fold(labels[e]);
+                row[0] = depth;
+                int best = row[0];
+                for (int j = 1; j <= pattern.length; j++) {
+                    int distance = Math.min(Math.min(row[j - 1], previous[j]) + 1,
+                            previous[j - 1] + (pattern[j - 1] == label ? 0 : 1));
+                    if (depth > 1 && j > 1 && pattern[j - 1] == lastLabel && pattern[j - 2] == label)
+                        distance = Math.min(distance, rows[depth - 2][j - 2] + 1);
+                    row[j] = distance;
+                    best = Math.min(best, distance);
+                }
+
+                path.push(labels[e]);
+                if ((edges[e] & FINAL) != 0 && row[pattern.length] <= maxDistance) out.add(path);
+                if (best <= maxDistance && depth + 1 < rows.length)
+                    fuzzy(edges[e] & TARGET, depth + 1, label, pattern, maxDistance, rows, path, out, steps);
+                path.pop();
+                if ((edges[e] & LAST) != 0) break;
+            }
+        }
+
+        /**
+         * Collects the headwords containing a pattern by walking the automaton with the state of a Knuth-Morris-Pratt
+         * matcher. Because states are shared, the same (state, matcher position) pair is reached through many paths;
+         * pairs known to lead to no match are remembered and not explored again.
+         */
+        private void substring(byte[] pattern, Collector out) {
+            int[] folded = new int[pattern.length];
+            for (int i = 0; i < pattern.length; i++)
+                folded[i] = fold(pattern[i]);
+            if (folded.length == 0) {
+                collect(root, new ByteStack(), out);
+                return;
+            }
+            int[] failure = new int[folded.length];
+            for (int i = 1, k = 0; i < folded.length; i++) {
+                while (k > 0 && folded[i] != folded[k]) k = failure[k - 1];
+                if (folded[i] == folded[k]) k++;
+                failure[i] = k;
+            }
+            substring(root, 0, folded, failure, new ByteStack(), out, new LongSet());
+        }
+
+        /**
+         * @return true if any headword was found below the state.
+         */
+        private boolean substring(int state, int matched, int[] pattern, int[] failure, ByteStack path,
+                                  Collector out, LongSet dead) {
+            if (state == 0) return false;
+            long key = (long) state * (pattern.length + 1) + matched;
+            if (dead.contains(key)) return false;
+
+            boolean found = false;
+            for (int e = state; !out.full(); e++) {
+                int label = fold(labels[e]);
+                int k = matched;
+                while (k > 0 && label != pattern[k]) k = failure[k - 1];
+                if (label == pattern[k]) k++;
+
+                path.push(labels[e]);
+                if (k == pattern.length) {
+                    if ((edges[e] & FINAL) != 0) out.add(path);
+                    collect(edges[e] & TARGET, path, out);
+                    found = true;
+                } else if (substring(edges[e] & TARGET, k, pattern, failure, path, out, dead)) {
+                    found = true;
+                }
+                path.pop();
+                if ((edges[e] & LAST) != 0) break;
+            }
+            if (!found && !out.full()) dead.add(key);
+            return found;
+        }
+    }
+
+    /**
+     * Builds a minimal automaton from sorted, distinct byte strings, with the incremental algorithm of Daciuk et al.:
+     * the states along the path of the previous word that are not shared with the current word can no longer change,
+     * so they are replaced by an equivalent state already built, or added to the automaton. Equivalent states are
+     * found through an open-addressing table of state positions, compared against the edges already written.
+     */
+    private static class Builder {
+        private byte[] labels = new byte[1024];
+        private int[] edges = new int[1024];
+        private int edgeCount = 1; // edge 0 is unused so that 0 can mean "no edges"
+
+        private int[] register = new int[1024];
+        private int registered = 0;
+
+        private final List<PendingState> path = new ArrayList<>();
+
+        private Automaton build(byte[][] words, int count) {
+            path.add(new PendingState());
+            byte[] previous = new byte[0];
+            for (int w = 0; w < count; w++) {
+                byte[] word = words[w];
+                int common = 0;
+                while (common < previous.length && common < word.length && previous[common] == word[common])
+                    common++;
+                freeze(common);
+                for (int i = common; i < word.length; i++) {
+                    path.get(i).add(word[i], i == word.length - 1);
+                    path.add(new PendingState());
+                }
+                previous = word;
+            }
+            freeze(0);
+            int root = store(path.get(0));
+            return new Automaton(Arrays.copyOf(labels, edgeCount), Arrays.copyOf(edges, edgeCount), root);
+        }
+
+        /**
+         * Stores the states of the path deeper than a given depth, linking each one from its parent.
+         */
+        private void freeze(int depth) {
+            for (int i = path.size() - 1; i > depth; i--) {
+                int state = store(path.remove(i));
+                PendingState parent = path.get(i - 1);
+                parent.targets[parent.count - 1] = state;
+            }
+        }
+
+        /**
+         * @return The position of a stored state equivalent to the pending one, storing it if there is none.
+         */
+        private int store(PendingState pending) {
+            if (pending.count == 0) return 0;
+            int mask = register.length - 1;
+            int slot = slot(pending.hashCode(), mask);
+            for (; register[slot] != 0; slot = (slot + 1) & mask) {
+                if (pending.sameAs(register[slot], labels, edges)) return register[slot];
+            }
+
+            if (edgeCount + pending.count > edges.length) {
+                int capacity = Math.max(edges.length * 2, edgeCount + pending.count);
+                labels = Arrays.copyOf(labels, capacity);
+                edges = Arrays.copyOf(edges, capacity);
+            }
+            int state = edgeCount;
+            for (int j = 0; j < pending.count; j++) {
+                labels[state + j] = pending.labels[j];
+                edges[state + j] = pending.targets[j] | (pending.finals[j] ? FINAL : 0) |
+                        (j == pending.count - 1 ? LAST : 0);
+            }
+            edgeCount += pending.count;
+            if (edgeCount > TARGET)
+                throw new IllegalStateException("Too many headwords");
+
+            register[slot] = state;
+            if (++registered * 2 > register.length) growRegister();
+            return state;
+        }
+
+        private void growRegister() {
+            int[] old = register;
+            register = new int[old.length * 2];
+            int mask = register.length - 1;
+            for (int state : old) {
+                if (state == 0) continue;
+                int slot = slot(hashState(state), mask);
+                while (register[slot] != 0) slot = (slot + 1) & mask;
+                register[slot] = state;
+            }
+        }
+
+        /**
+         * Targets are consecutive positions, so the hashes of similar states are close together; they are scrambled
+         * (with the finalizer of MurmurHash3) to avoid long probe sequences.
+         */
+        private static int slot(int hash, int mask) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return hash & mask;
+        }
+
+        private int hashState(int state) {
+            int hash = 1;
+            for (int e = state; ; e++) {
+                hash = PendingState.mix(hash, labels[e], edges[e] & ~LAST);
+                if ((edges[e] & LAST) != 0) return hash;
+            }
+        }
+    }
+
+    private static class PendingState {
+        private byte[] labels = new byte[2];
+        private int[] targets = new int[2];
+        private boolean[] finals = new boolean[2];
+        private int count = 0;
+
+        private void add(byte label, boolean ending) {
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                targets = Arrays.copyOf(targets, count * 2);
+                finals = Arrays.copyOf(finals, count * 2);
+            }
+            labels[count] = label;
+            finals[count] = ending;
+            count++;
+        }
+
+        private boolean sameAs(int state, byte[] storedLabels, int[] storedEdges) {
+            for (int j = 0; j < count; j++) {
+                int edge = storedEdges[state + j];
+                if (storedLabels[state + j] != labels[j] || (edge & TARGET) != targets[j] ||
+                        ((edge & FINAL) != 0) != finals[j] || ((edge & LAST) != 0) != (j == count - 1))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (int j = 0; j < count; j++)
+                hash = mix(hash, labels[j], targets[j] | (finals[j] ? FINAL : 0));
+            return hash;
+        }
+
+        private static int mix(int hash, byte label, int edge) {
+            return 31 * (31 * hash + label) + edge;
+        }
+    }
+
+    /**
+     * A set of positive longs, with open addressing, so that remembering states doesn't allocate per entry.
+     */
+    private static class LongSet {
+        private long[] keys = new long[1024];
+        private int count = 0;
+
+        private boolean contains(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return true;
+            }
+            return false;
+        }
+
+        private void add(long key) {
+            if (++count * 2 > keys.length) {
+                long[] old = keys;
+                keys = new long[old.length * 2];
+                for (long k : old) {
+                    if (k != 0) insert(k);
+                }
+            }
+            insert(key);
+        }
+
+        private void insert(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+            keys[slot] = key;
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+
+    /**
+     * The bytes of the path being explored.
+     */
+    private static class ByteStack {
+        private byte[] bytes = new byte[64];
+        private int length = 0;
+
+        private void push(byte b) {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = b;
+        }
+
+        private void pop() {
+            length--;
+        }
+    }
+
+    private static class Collector {
+        private final Set<String> matches;
+        private final int limit;
+        private final boolean reversed;
+        private final int skip;
+        private int added = 0;
+
+        /**
+         * @param reversed Whether paths are reversed headwords.
+         * @param skip     Number of bytes at the start of each path that are not part of the headword.
+         */
+        private Collector(Set<String> matches, int limit, boolean reversed, int skip) {
+            this.matches = matches;
+            this.limit = limit;
+            this.reversed = reversed;
+            this.skip = skip;
+        }
+
+        private boolean full() {
+            return added >= limit;
+        }
+
+        private void add(ByteStack path) {
+            if (full()) return;
+            byte[] bytes = Arrays.copyOfRange(path.bytes, skip, path.length);
+            if (reversed) bytes = reversed(bytes);
+            if (matches.add(new String(bytes, StandardCharsets.UTF_8))) added++;
+        }
+    }
+}
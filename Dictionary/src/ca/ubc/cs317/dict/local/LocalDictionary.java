@@ -0,0 +1,278 @@
+package ca.ubc.cs317.dict.local;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionarySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * A DictionarySource that serves dictd databases (.index and .dict or .dict.dz files) from local disk, with no network
+ * access. Each database is loaded into a compact DictdIndex, and its text is read from a memory-mapped file or, for
+ * compressed databases, by inflating only the dictzip chunks that are needed.
+ */
+public class LocalDictionary implements DictionarySource {
+
+    public static final String EXACT = "exact";
+    public static final String PREFIX = "prefix";
+    public static final String SUFFIX = "suffix";
+    public static final String SUBSTRING = "substring";
+    public static final String LEV = "lev";
+    public static final String SOUNDEX = "soundex";
+
+    /**
+     * Prefix of the server names that designate a directory of dictd databases instead of a DICT server, e.g.,
+     * "file:/usr/share/dictd". Such names are accepted wherever a server is asked for.
+     */
+    public static final String SERVER_PREFIX = "file:";
+
+    private static final String[] DESCRIPTION_ENTRIES = {"00-database-short", "00databaseshort"};
+    private static final String[] HIDDEN_PREFIXES = {"00-database-", "00database"};
+
+    private final Map<String, LocalDatabase> databases = new LinkedHashMap<>();
+
+    /**
+     * @return true if a server name designates a directory of local databases (see SERVER_PREFIX).
+     */
+    public static boolean isLocal(String server) {
+        return server.startsWith(SERVER_PREFIX);
+    }
+
+    /**
+     * Opens the databases in the directory named by a server name starting with SERVER_PREFIX.
+     *
+     * @throws DictConnectionException If the directory or any of the databases can't be read.
+     */
+    public static LocalDictionary open(String server) throws DictConnectionException {
+        return open(Paths.get(server.substring(SERVER_PREFIX.length())));
+    }
+
+    /**
+     * Opens every dictd database in a directory, i.e., every name.index file with a matching name.dict file (or
+     * name.dict.dz, if there is no uncompressed file).
+     * Databases are listed in alphabetical order of their names.
+     *
+     * @param directory Directory containing the database files.
+     * @return The local dictionary serving those databases.
+     * @throws DictConnectionException If the directory or any of the databases can't be read.
+     */
+    public static LocalDictionary open(Path directory) throws DictConnectionException {
+        LocalDictionary dictionary = new LocalDictionary();
+        SortedSet<Path> indexFiles = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.index")) {
+            for (Path file : files) indexFiles.add(file);
+        } catch (IOException e) {
+            throw new DictConnectionException(e);
+        }
+        for (Path indexFile : indexFiles) {
+            String fileName = indexFile.getFileName().toString();
+            String name = fileName.substring(0, fileName.length() - ".index".length());
+            Path dataFile = indexFile.resolveSibling(name + ".dict");
+            if (!Files.exists(dataFile))
+                dataFile = indexFile.resolveSibling(name + ".dict.dz");
+            if (Files.exists(dataFile))
+                dictionary.addDatabase(name, indexFile, dataFile);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Adds a database stored in an index file and a data file, which is read as a dictzip file if its name ends in
+     * ".dz".
+     *
+     * @throws DictConnectionException If the files can't be read.
+     */
+    public void addDatabase(String name, Path indexFile, Path dataFile) throws DictConnectionException {
+        try {
+            DictData data = dataFile.getFileName().toString().endsWith(".dz") ?
+                    new DictZipData(dataFile) : new MappedDictData(dataFile);
+            addDatabase(name, DictdIndex.load(indexFile), data);
+        } catch (IOException e) {
+            throw new DictConnectionException("Could not load database " + name, e);
+        }
+    }
+
+    /**
+     * Adds a database from an index that has already been loaded and its data.
+     */
+    public synchronized void addDatabase(String name, DictdIndex index, DictData data) throws DictConnectionException {
+        LocalDatabase database = new LocalDatabase(name, index, data);
+        database.info = new Database(name, describe(database));
+        databases.put(name, database);
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        Collection<Definition> definitions = new ArrayList<>();
+        for (LocalDatabase db : select(database)) {
+            DictdIndex index = db.index;
+            for (int i = index.lowerBound(word); i < index.size() && index.equalsIgnoreCase(i, word); i++)
+                definitions.add(definition(db, i));
+            if (database.getName().equals("!") && !definitions.isEmpty()) break;
+        }
+        return definitions;
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return getMatchList(word, strategy, database, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most limit matching headwords, without walking the remaining headwords once that many are found.
+     *
+     * @see #getMatchList(String, MatchingStrategy, Database)
+     */
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database, int limit)
+            throws DictConnectionException {
+        Set<String> matches = new LinkedHashSet<>();
+        for (LocalDatabase db : select(database)) {
+            int before = matches.size();
+            match(db, word, strategy.getName(), matches, limit);
+            if (matches.size() >= limit) break;
+            if (database.getName().equals("!") && matches.size() > before) break;
+        }
+        return matches;
+    }
+
+    @Override
+    public synchronized Collection<Database> getDatabaseList() {
+        List<Database> list = new ArrayList<>();
+        for (LocalDatabase db : databases.values())
+            list.add(db.info);
+        return list;
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() {
+        Set<MatchingStrategy> strategies = new LinkedHashSet<>();
+        strategies.add(new MatchingStrategy(EXACT, "Match headwords exactly"));
+        strategies.add(new MatchingStrategy(PREFIX, "Match prefixes"));
+        strategies.add(new MatchingStrategy(SUFFIX, "Match suffixes"));
+        strategies.add(new MatchingStrategy(SUBSTRING, "Match substring occurring anywhere in a headword"));
+        strategies.add(new MatchingStrategy(LEV, "Match headwords within Levenshtein distance one"));
+        strategies.add(new MatchingStrategy(SOUNDEX, "Match using SOUNDEX algorithm"));
+        return strategies;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (LocalDatabase db : databases.values()) {
+            try {
+                db.data.close();
+            } catch (IOException e) {
+                // ignore all exceptions
+            }
+        }
+        databases.clear();
+    }
+
+    /**
+     * Adds the headwords of a database that match a pattern to a set, until the set holds limit headwords.
+     *
+     * @throws DictConnectionException If the strategy is not supported.
+     */
+    void match(LocalDatabase db, String word, String strategy, Set<String> matches, int limit) throws DictConnectionException {
+        DictdIndex index = db.index;
+        switch (strategy) {
+            case EXACT:
+                for (int i = index.lowerBound(word);
+                     i < index.size() && matches.size() < limit && index.equalsIgnoreCase(i, word); i++)
+                    matches.add(index.headword(i));
+                break;
+            case PREFIX:
+                for (int i = index.lowerBound(word);
+                     i < index.size() && matches.size() < limit && index.startsWithIgnoreCase(i, word); i++)
+                    addVisible(index.headword(i), matches);
+                break;
+            case SUFFIX:
+            case SUBSTRING:
+            case LEV:
+            case SOUNDEX:
+                if (matches.size() < limit)
+                    db.headwords().match(word, strategy, matches, limit - matches.size());
+                break;
+            default:
+                throw new DictConnectionException("Invalid strategy");
+        }
+    }
+
+    private synchronized List<LocalDatabase> select(Database database) throws DictConnectionException {
+        String name = database.getName();
+        if (name.equals("*") || name.equals("!"))
+            return new ArrayList<>(databases.values());
+        LocalDatabase db = databases.get(name);
+        if (db == null)
+            throw new DictConnectionException("Invalid database");
+        return Collections.singletonList(db);
+    }
+
+    private Definition definition(LocalDatabase db, int i) throws DictConnectionException {
+        Definition definition = new Definition(db.index.headword(i), db.info);
+        try {
+            String text = new String(db.data.read(db.index.offset(i), db.index.length(i)), StandardCharsets.UTF_8);
+            definition.setDefinition(text.endsWith("\n") ? text : text + "\n");
+        } catch (IOException e) {
+            throw new DictConnectionException(e);
+        }
+        return definition;
+    }
+
+    private String describe(LocalDatabase db) throws DictConnectionException {
+        DictdIndex index = db.index;
+        for (String entry : DESCRIPTION_ENTRIES) {
+            int i = index.lowerBound(entry);
+            if (i < index.size() && index.equalsIgnoreCase(i, entry)) {
+                String text = definition(db, i).getDefinition().trim();
+                // The entry's text usually starts with its own headword on a separate line
+                if (text.startsWith(entry)) text = text.substring(entry.length()).trim();
+                return text;
+            }
+        }
+        return db.name;
+    }
+
+    private static void addVisible(String headword, Set<String> matches) {
+        if (!isHidden(headword)) matches.add(headword);
+    }
+
+    /**
+     * @return true if the headword is one of the entries dictd uses for the database information.
+     */
+    static boolean isHidden(String headword) {
+        for (String prefix : HIDDEN_PREFIXES)
+            if (headword.startsWith(prefix)) return true;
+        return false;
+    }
+
+    static class LocalDatabase {
+        final String name;
+        final DictdIndex index;
+        final DictData data;
+        Database info;
+        private HeadwordTrie headwords;
+
+        LocalDatabase(String name, DictdIndex index, DictData data) {
+            this.name = name;
+            this.index = index;
+            this.data = data;
+        }
+
+        /**
+         * @return The headwords of the database, used for the matches the sorted index can't answer directly. They
+         * are only built the first time they are needed.
+         */
+        synchronized HeadwordTrie headwords() {
+            if (headwords == null) headwords = HeadwordTrie.build(index);
+            return headwords;
+        }
+    }
+}
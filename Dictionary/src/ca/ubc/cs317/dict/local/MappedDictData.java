@@ -0,0 +1,53 @@
+package ca.ubc.cs317.dict.local;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uncompressed .dict file mapped into memory, so lookups read directly from the page cache without system calls.
+ * Files larger than 1GB are mapped as several segments.
+ */
+public class MappedDictData implements DictData {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    public MappedDictData(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size)
+            throw new IOException("Range " + offset + "+" + length + " outside of data (" + size + " bytes)");
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long position = offset + copied;
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int start = (int) (position & (SEGMENT_SIZE - 1));
+            int count = Math.min(length - copied, segment.capacity() - start);
+            segment.get(start, bytes, copied, count);
+            copied += count;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
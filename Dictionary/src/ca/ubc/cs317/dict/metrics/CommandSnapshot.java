@@ -0,0 +1,88 @@
+package ca.ubc.cs317.dict.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+
+/**
+ * Immutable summary of the requests of one kind of command (e.g., DEFINE), with times in milliseconds. The time to
+ * first byte is measured from sending the command to receiving the first status line of its reply.
+ */
+public class CommandSnapshot {
+    private final String command;
+    private final long count;
+    private final long lines;
+    private final double firstByteP50Millis;
+    private final double firstByteP99Millis;
+    private final double totalMeanMillis;
+    private final double totalP50Millis;
+    private final double totalP90Millis;
+    private final double totalP99Millis;
+    private final double totalMaxMillis;
+
+    @ConstructorProperties({"command", "count", "lines", "firstByteP50Millis", "firstByteP99Millis", "totalMeanMillis",
+            "totalP50Millis", "totalP90Millis", "totalP99Millis", "totalMaxMillis"})
+    public CommandSnapshot(String command, long count, long lines, double firstByteP50Millis,
+                           double firstByteP99Millis, double totalMeanMillis, double totalP50Millis,
+                           double totalP90Millis, double totalP99Millis, double totalMaxMillis) {
+        this.command = command;
+        this.count = count;
+        this.lines = lines;
+        this.firstByteP50Millis = firstByteP50Millis;
+        this.firstByteP99Millis = firstByteP99Millis;
+        this.totalMeanMillis = totalMeanMillis;
+        this.totalP50Millis = totalP50Millis;
+        this.totalP90Millis = totalP90Millis;
+        this.totalP99Millis = totalP99Millis;
+        this.totalMaxMillis = totalMaxMillis;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The total number of reply lines received, including status lines.
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    public double getFirstByteP50Millis() {
+        return firstByteP50Millis;
+    }
+
+    public double getFirstByteP99Millis() {
+        return firstByteP99Millis;
+    }
+
+    public double getTotalMeanMillis() {
+        return totalMeanMillis;
+    }
+
+    public double getTotalP50Millis() {
+        return totalP50Millis;
+    }
+
+    public double getTotalP90Millis() {
+        return totalP90Millis;
+    }
+
+    public double getTotalP99Millis() {
+        return totalP99Millis;
+    }
+
+    public double getTotalMaxMillis() {
+        return totalMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-7s count=%d lines=%d ttfb p50=%.2f p99=%.2f total mean=%.2f p50=%.2f " +
+                        "p90=%.2f p99=%.2f max=%.2f ms", command, count, lines, firstByteP50Millis, firstByteP99Millis,
+                totalMeanMillis, totalP50Millis, totalP90Millis, totalP99Millis, totalMaxMillis);
+    }
+}
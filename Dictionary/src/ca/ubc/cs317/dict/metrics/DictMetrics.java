@@ -0,0 +1,225 @@
+package ca.ubc.cs317.dict.metrics;
+
+import ca.ubc.cs317.dict.cache.CacheStats;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms of the commands sent by the connections of this client: time to first byte and
+ * total time per command, reply lines, bytes sent and received, error replies by status code, and the hit rates of
+ * the registered caches. Recording only touches atomic counters, so it can stay enabled on the hot path; summaries
+ * are computed when they are read, through JMX or a periodic report.
+ */
+public class DictMetrics implements DictMetricsMXBean {
+
+    public static final String OBJECT_NAME = "ca.ubc.cs317.dict:type=DictMetrics";
+
+    public enum Command {
+        DEFINE, MATCH, SHOW, STATUS
+    }
+
+    private static final DictMetrics DEFAULT = new DictMetrics();
+
+    private final EnumMap<Command, CommandMetrics> commands = new EnumMap<>(Command.class);
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicLongArray statusCounts = new AtomicLongArray(600);
+    private final Map<String, Supplier<CacheStats>> caches = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService reporter;
+    private ScheduledFuture<?> report;
+
+    public DictMetrics() {
+        for (Command command : Command.values())
+            commands.put(command, new CommandMetrics());
+    }
+
+    /**
+     * @return The instance used by connections unless they are given another one.
+     */
+    public static DictMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records a completed command.
+     *
+     * @param command        The kind of command.
+     * @param sentNanos      System.nanoTime when the command was sent.
+     * @param firstByteNanos System.nanoTime when the first status line of the reply was received.
+     * @param doneNanos      System.nanoTime when the reply was complete.
+     * @param lines          Number of lines in the reply.
+     */
+    public void recordCommand(Command command, long sentNanos, long firstByteNanos, long doneNanos, long lines) {
+        CommandMetrics metrics = commands.get(command);
+        metrics.firstByte.record(firstByteNanos - sentNanos);
+        metrics.total.record(doneNanos - sentNanos);
+        metrics.lines.add(lines);
+    }
+
+    public void recordBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void recordBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Counts a status code received from the server, if it is an error (4xx or 5xx).
+     */
+    public void recordStatus(int code) {
+        if (code >= 400 && code < statusCounts.length())
+            statusCounts.incrementAndGet(code);
+    }
+
+    /**
+     * Includes the hit rate of a cache in the metrics, replacing any cache registered with the same name.
+     *
+     * @param name  Name of the cache in the metrics.
+     * @param stats Returns the current statistics of the cache, or null if the cache is not in use.
+     */
+    public void registerCache(String name, Supplier<CacheStats> stats) {
+        caches.put(name, stats);
+    }
+
+    @Override
+    public List<CommandSnapshot> getCommands() {
+        List<CommandSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<Command, CommandMetrics> entry : commands.entrySet()) {
+            LatencyHistogram firstByte = entry.getValue().firstByte, total = entry.getValue().total;
+            snapshots.add(new CommandSnapshot(entry.getKey().name(), total.getCount(), entry.getValue().lines.sum(),
+                    firstByte.getPercentileMillis(50), firstByte.getPercentileMillis(99), total.getMeanMillis(),
+                    total.getPercentileMillis(50), total.getPercentileMillis(90), total.getPercentileMillis(99),
+                    total.getMaxMillis()));
+        }
+        return snapshots;
+    }
+
+    public LatencyHistogram getTotalTime(Command command) {
+        return commands.get(command).total;
+    }
+
+    public LatencyHistogram getTimeToFirstByte(Command command) {
+        return commands.get(command).firstByte;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public Map<Integer, Long> getErrorCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int code = 400; code < statusCounts.length(); code++) {
+            long count = statusCounts.get(code);
+            if (count > 0) counts.put(code, count);
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRates() {
+        Map<String, Double> rates = new TreeMap<>();
+        for (Map.Entry<String, Supplier<CacheStats>> entry : caches.entrySet()) {
+            CacheStats stats = entry.getValue().get();
+            if (stats != null) rates.put(entry.getKey(), stats.getHitRate());
+        }
+        return rates;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (CommandSnapshot snapshot : getCommands()) {
+            if (snapshot.getCount() > 0) report.append(snapshot).append('\n');
+        }
+        report.append("bytes in=").append(getBytesIn()).append(" out=").append(getBytesOut()).append('\n');
+        if (!getErrorCounts().isEmpty())
+            report.append("errors ").append(getErrorCounts()).append('\n');
+        for (Map.Entry<String, Supplier<CacheStats>> entry : new TreeMap<>(caches).entrySet()) {
+            CacheStats stats = entry.getValue().get();
+            if (stats != null) report.append("cache ").append(entry.getKey()).append(' ').append(stats).append('\n');
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (CommandMetrics metrics : commands.values()) {
+            metrics.firstByte.reset();
+            metrics.total.reset();
+            metrics.lines.reset();
+        }
+        bytesIn.reset();
+        bytesOut.reset();
+        for (int i = 0; i < statusCounts.length(); i++)
+            statusCounts.set(i, 0);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, so they can be inspected with tools such as JConsole.
+     * Registering the same instance again has no effect.
+     *
+     * @throws JMException If the metrics can't be registered.
+     */
+    public void registerMBean() throws JMException {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        }
+    }
+
+    /**
+     * Periodically passes the report of these metrics to a consumer, on a daemon thread, replacing any previous
+     * reporting schedule.
+     *
+     * @param periodMillis Time between reports.
+     * @param output       Receives each report.
+     */
+    public synchronized void startReporting(long periodMillis, Consumer<String> output) {
+        stopReporting();
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "dict-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        report = reporter.scheduleAtFixedRate(() -> output.accept(getReport()), periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (report != null) {
+            report.cancel(false);
+            report = null;
+        }
+    }
+
+    private static class CommandMetrics {
+        private final LatencyHistogram firstByte = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LongAdder lines = new LongAdder();
+    }
+}
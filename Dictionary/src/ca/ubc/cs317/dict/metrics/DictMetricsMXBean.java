@@ -0,0 +1,24 @@
+package ca.ubc.cs317.dict.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of DictMetrics, registered as ca.ubc.cs317.dict:type=DictMetrics.
+ */
+public interface DictMetricsMXBean {
+
+    List<CommandSnapshot> getCommands();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    Map<Integer, Long> getErrorCounts();
+
+    Map<String, Double> getCacheHitRates();
+
+    String getReport();
+
+    void reset();
+}
@@ -0,0 +1,510 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.cache.DefinitionCache;
+import ca.ubc.cs317.dict.cache.MatchCache;
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.metrics.DictMetrics;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking connection with a DICT server, driven by a DictEventLoop. Requests return immediately with a
+ * CompletableFuture that is completed on the loop thread when the reply has been parsed. Requests may be issued
+ * from any thread, and are pipelined: each command is written as soon as possible, and replies are matched to
+ * requests in the order the commands were sent.
+ *
+ * Callers must not block inside callbacks attached to the returned futures without switching to another executor,
+ * since that would stall every connection served by the same loop.
+ */
+public class AsyncDictionaryConnection implements DictEventLoop.Handler {
+
+    private static final int READ_BUFFER_SIZE = 16384;
+
+    private final DictEventLoop loop;
+    private final SocketChannel channel;
+    private final DictReplyDecoder decoder = new DictReplyDecoder();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ProtocolTrace trace;
+
+    // Only accessed on the loop thread
+    private SelectionKey key; // set on the loop thread before it can select the channel
+    private final Deque<Reply<?>> pendingReplies = new ArrayDeque<>();
+    private final Deque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final Map<String, Database> databaseMap = new LinkedHashMap<>();
+    private CompletableFuture<Collection<Database>> databaseList;
+    private DictConnectionException failure;
+    private volatile boolean closed;
+
+    private volatile DefinitionCache definitionCache;
+    private volatile MatchCache matchCache;
+    private volatile DictMetrics metrics = DictMetrics.getDefault();
+
+    /**
+     * Starts connecting to a DICT server. The connection is established in the background; requests made before it
+     * completes are sent once the welcome message is received.
+     *
+     * @param loop Event loop that drives this connection.
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @throws DictConnectionException If the host can't be resolved or the connection can't be started.
+     */
+    public AsyncDictionaryConnection(DictEventLoop loop, String host, int port) throws DictConnectionException {
+        this.loop = loop;
+        this.trace = new ProtocolTrace(host + ":" + port + " (async)");
+        try {
+            channel = SocketChannel.open();
+        } catch (IOException e) {
+            throw new DictConnectionException(e);
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            boolean connected = channel.connect(new InetSocketAddress(host, port));
+            CompletableFuture<Void> registration = new CompletableFuture<>();
+            loop.execute(() -> {
+                try {
+                    pendingReplies.add(new WelcomeReply());
+                    key = loop.register(channel, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+                    registration.complete(null);
+                } catch (IOException e) {
+                    registration.completeExceptionally(e);
+                }
+            });
+            registration.join();
+        } catch (Exception e) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // ignore all exceptions
+            }
+            throw new DictConnectionException(e);
+        }
+    }
+
+    /**
+     * Requests all definitions for a specific word. The definition cache is consulted first, which may read from
+     * disk, so this should not be called on the event dispatch thread or the thread of the event loop.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used, with the same special names accepted by DictionaryConnection.
+     * @return A future completed with all definitions returned by the server.
+     */
+    public CompletableFuture<Collection<Definition>> getDefinitions(String word, Database database) {
+        DefinitionCache cache = definitionCache;
+        Collection<Definition> cached = cache == null ? null : cache.get(word, database);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        if (!DictStringParser.isValidWord(word)) return invalidWord();
+
+        // Definitions refer to Database objects, so the database list must be known before the reply is parsed
+        CompletableFuture<Collection<Definition>> future = getDatabaseList().thenCompose(databases ->
+                send("define " + database.getName() + " " + DictStringParser.quote(word), new DefineReply(), DictMetrics.Command.DEFINE));
+        if (cache != null) future.thenAccept(definitions -> cache.put(word, database, definitions));
+        return future;
+    }
+
+    /**
+     * Requests a list of matches for a specific word pattern. Like getDefinitions, it may read the match cache from
+     * disk.
+     *
+     * @param word     The word pattern to be matched.
+     * @param strategy The strategy to be used (e.g., prefix, exact).
+     * @param database The database to be used, with the same special names accepted by DictionaryConnection.
+     * @return A future completed with the set of word matches returned by the server.
+     */
+    public CompletableFuture<Set<String>> getMatchList(String word, MatchingStrategy strategy, Database database) {
+        MatchCache cache = matchCache;
+        Set<String> cached = cache == null ? null : cache.get(word, strategy, database);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        if (!DictStringParser.isValidWord(word)) return invalidWord();
+
+        CompletableFuture<Set<String>> future = send("match " + database.getName() + " " + strategy.getName() + " " +
+                DictStringParser.quote(word), new MatchReply(), DictMetrics.Command.MATCH);
+        if (cache != null) future.thenAccept(matches -> cache.put(word, strategy, database, matches));
+        return future;
+    }
+
+    /**
+     * Requests the list of databases supported by the server. The list is only requested once per connection.
+     *
+     * @return A future completed with the Database objects supported by the server.
+     */
+    public synchronized CompletableFuture<Collection<Database>> getDatabaseList() {
+        if (databaseList == null || databaseList.isCompletedExceptionally())
+            databaseList = send("show db", new DatabaseListReply(), DictMetrics.Command.SHOW);
+        return databaseList;
+    }
+
+    /**
+     * Requests the list of matching strategies supported by the server.
+     *
+     * @return A future completed with the MatchingStrategy objects supported by the server.
+     */
+    public CompletableFuture<Set<MatchingStrategy>> getStrategyList() {
+        return send("show strat", new StrategyListReply(), DictMetrics.Command.SHOW);
+    }
+
+    public void setDefinitionCache(DefinitionCache definitionCache) {
+        this.definitionCache = definitionCache;
+    }
+
+    public void setMatchCache(MatchCache matchCache) {
+        this.matchCache = matchCache;
+    }
+
+    /**
+     * Sets where the latency and traffic of the commands sent on this connection are recorded.
+     *
+     * @param metrics The metrics to be updated, or null to disable recording.
+     */
+    public void setMetrics(DictMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The trace of the recent commands and replies of this connection. At the STATUS level, only the first
+     * status line of each reply is recorded, since the other lines are only told apart while they are parsed.
+     */
+    public ProtocolTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Checks if the server is still responsive by sending a STATUS command. Besides detecting a dropped connection,
+     * this keeps the connection from being closed by servers with an idle timeout.
+     *
+     * @return A future completed with true if the server replied with a successful status.
+     */
+    public CompletableFuture<Boolean> ping() {
+        return send("status", new StatusReply(), DictMetrics.Command.STATUS);
+    }
+
+    /**
+     * Indicates if the connection has failed or been closed, in which case every new request fails and a new
+     * connection must be opened.
+     *
+     * @return true if this connection can no longer be used, false otherwise.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Sends the final QUIT message and closes the connection. Requests still pending fail with a
+     * DictConnectionException.
+     */
+    public void close() {
+        loop.execute(() -> {
+            pendingWrites.add(ByteBuffer.wrap("quit\r\n".getBytes(StandardCharsets.UTF_8)));
+            trace.sent("quit");
+            try {
+                flushWrites();
+            } catch (IOException e) {
+                // ignore all exceptions
+            }
+            if (failure == null) failure = new DictConnectionException("Connection closed"); // not an error: no dump
+            fail(failure);
+        });
+    }
+
+    private <T> CompletableFuture<T> send(String command, Reply<T> reply, DictMetrics.Command type) {
+        loop.execute(() -> {
+            if (failure != null) {
+                reply.future.completeExceptionally(failure);
+                return;
+            }
+            byte[] bytes = (command + "\r\n").getBytes(StandardCharsets.UTF_8);
+            reply.command = type;
+            reply.sentNanos = System.nanoTime();
+            DictMetrics metrics = this.metrics;
+            if (metrics != null) metrics.recordBytesOut(bytes.length);
+            trace.sent(command);
+            pendingReplies.add(reply);
+            pendingWrites.add(ByteBuffer.wrap(bytes));
+            if (key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0)
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        });
+        return reply.future;
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+        if (key.isConnectable()) {
+            channel.finishConnect();
+            key.interestOps(pendingWrites.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        if (key.isValid() && key.isWritable())
+            flushWrites();
+        if (key.isValid() && key.isReadable())
+            readReplies();
+    }
+
+    @Override
+    public void failed(Throwable cause) {
+        fail(cause instanceof DictConnectionException ? (DictConnectionException) cause : new DictConnectionException(cause));
+    }
+
+    private void flushWrites() throws IOException {
+        while (!pendingWrites.isEmpty()) {
+            ByteBuffer buffer = pendingWrites.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) return; // socket buffer full; wait for OP_WRITE
+            pendingWrites.poll();
+        }
+        if (key.isValid()) key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void readReplies() throws IOException {
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read < 0)
+            throw new IOException("Connection closed by server");
+        readBuffer.flip();
+        decoder.feed(readBuffer);
+
+        DictMetrics metrics = this.metrics;
+        if (metrics != null) metrics.recordBytesIn(read);
+
+        while (!pendingReplies.isEmpty() && decoder.nextLine()) {
+            Reply<?> reply = pendingReplies.peek();
+            if (reply.lines == 0 && metrics != null) {
+                reply.firstLineNanos = System.nanoTime();
+                metrics.recordStatus(decoder.statusCode());
+            }
+            if (ProtocolTrace.isEnabled(ProtocolTrace.Level.TEXT))
+                trace.text(decoder.lineString());
+            else if (reply.lines == 0 && ProtocolTrace.isEnabled(ProtocolTrace.Level.STATUS)) {
+                String line = decoder.lineString();
+                trace.status(decoder.statusCode(), line.substring(Math.min(4, line.length())));
+            }
+            try {
+                if (reply.line(decoder)) {
+                    pendingReplies.poll();
+                    if (reply.command != null && metrics != null)
+                        metrics.recordCommand(reply.command, reply.sentNanos, reply.firstLineNanos, System.nanoTime(),
+                                reply.lines + 1);
+                }
+            } catch (DictConnectionException e) {
+                // An error status as the first line is the whole reply (e.g., invalid database); anywhere else, the
+                // rest of the reply may still be on its way, so the protocol state is unknown
+                if (reply.lines > 0) throw new IOException(e);
+                pendingReplies.poll();
+                reply.future.completeExceptionally(e);
+            }
+            reply.lines++;
+        }
+    }
+
+    private void fail(DictConnectionException cause) {
+        closed = true;
+        if (failure == null) {
+            failure = cause;
+            trace.failed(cause);
+        }
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore all exceptions
+        }
+        Reply<?> reply;
+        while ((reply = pendingReplies.poll()) != null)
+            reply.future.completeExceptionally(failure);
+        pendingWrites.clear();
+    }
+
+    private static <T> CompletableFuture<T> invalidWord() {
+        return CompletableFuture.failedFuture(
+                new DictConnectionException("Invalid word: control characters can't be sent to the server"));
+    }
+
+    /**
+     * Checks a status received as the first line of a reply.
+     *
+     * @return true if the reply has a body to be parsed, false if it is an empty answer (e.g., no match).
+     * @throws DictConnectionException If the status is an error.
+     */
+    private static boolean checkStatus(Status status) throws DictConnectionException {
+        switch (status.getStatusCode()) {
+            case 550:
+                throw new DictConnectionException("Invalid database");
+            case 551:
+                throw new DictConnectionException("Invalid strategy");
+            case 552:
+            case 554:
+            case 555:
+                return false;
+            default:
+                if (status.isNegativeReply())
+                    throw new DictConnectionException(status.getStatusCode() + " " + status.getDetails());
+                return true;
+        }
+    }
+
+    /**
+     * Incremental parser for the reply to one command, fed one line at a time on the loop thread.
+     */
+    private abstract static class Reply<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        int lines = 0;
+
+        // Set on the loop thread; command is null for replies that aren't recorded in the metrics
+        DictMetrics.Command command;
+        long sentNanos;
+        long firstLineNanos;
+
+        /**
+         * @return true if the line completed the reply.
+         */
+        abstract boolean line(DictReplyDecoder decoder) throws DictConnectionException;
+    }
+
+    private static class WelcomeReply extends Reply<Void> {
+        @Override
+        boolean line(DictReplyDecoder decoder) throws DictConnectionException {
+            Status status = decoder.parseStatus();
+            if (status.getStatusCode() != 220)
+                throw new DictConnectionException("Unexpected welcome message: " + status.getStatusCode());
+            future.complete(null);
+            return true;
+        }
+    }
+
+    private static class StatusReply extends Reply<Boolean> {
+        @Override
+        boolean line(DictReplyDecoder decoder) throws DictConnectionException {
+            future.complete(decoder.parseStatus().getStatusCode() == 210);
+            return true;
+        }
+    }
+
+    /**
+     * Parses replies made of an initial status, a list of lines terminated by ".", and a completion status.
+     */
+    private abstract static class ListReply<T> extends Reply<T> {
+        private boolean started = false;
+        private boolean inList = false;
+        final StringBuilder line = new StringBuilder();
+        final int[] bounds = new int[4];
+
+        @Override
+        boolean line(DictReplyDecoder decoder) throws DictConnectionException {
+            if (!started) {
+                started = true;
+                if (!checkStatus(decoder.parseStatus())) {
+                    future.complete(result());
+                    return true;
+                }
+                inList = true;
+                return false;
+            }
+            if (inList) {
+                if (decoder.isTerminator()) {
+                    inList = false;
+                } else {
+                    line.setLength(0);
+                    decoder.appendLine(line);
+                    if (DictStringParser.tokenize(line, bounds) > 1)
+                        item(DictStringParser.atom(line, bounds, 0), DictStringParser.atom(line, bounds, 1));
+                }
+                return false;
+            }
+            checkStatus(decoder.parseStatus());
+            future.complete(result());
+            return true;
+        }
+
+        abstract void item(String first, String second);
+
+        abstract T result();
+    }
+
+    private static class MatchReply extends ListReply<Set<String>> {
+        private final Set<String> matches = new LinkedHashSet<>();
+
+        @Override
+        void item(String database, String match) {
+            matches.add(match);
+        }
+
+        @Override
+        Set<String> result() {
+            return matches;
+        }
+    }
+
+    private class DatabaseListReply extends ListReply<Collection<Database>> {
+        @Override
+        void item(String name, String description) {
+            databaseMap.put(name, new Database(name, description));
+        }
+
+        @Override
+        Collection<Database> result() {
+            return Collections.unmodifiableCollection(new ArrayList<>(databaseMap.values()));
+        }
+    }
+
+    private static class StrategyListReply extends ListReply<Set<MatchingStrategy>> {
+        private final Set<MatchingStrategy> strategies = new LinkedHashSet<>();
+
+        @Override
+        void item(String name, String description) {
+            strategies.add(new MatchingStrategy(name, description));
+        }
+
+        @Override
+        Set<MatchingStrategy> result() {
+            return strategies;
+        }
+    }
+
+    private class DefineReply extends Reply<Collection<Definition>> {
+        private final Collection<Definition> definitions = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean started = false;
+        private Definition current;
+
+        @Override
+        boolean line(DictReplyDecoder decoder) throws DictConnectionException {
+            if (current != null) { // inside a definition body
+                if (decoder.isTerminator()) {
+                    current.setDefinition(text.toString());
+                    definitions.add(current);
+                    current = null;
+                } else {
+                    decoder.appendLine(text);
+                    text.append('\n');
+                }
+                return false;
+            }
+
+            Status status = decoder.parseStatus();
+            if (!started) {
+                started = true;
+                if (checkStatus(status)) return false;
+            } else if (status.getStatusCode() == 151) {
+                String[] atoms = DictStringParser.splitAtoms(status.getDetails());
+                if (atoms.length < 2)
+                    throw new DictConnectionException("Invalid definition header: " + status.getDetails());
+                current = new Definition(atoms[0], databaseMap.get(atoms[1]));
+                text.setLength(0);
+                return false;
+            } else {
+                checkStatus(status);
+            }
+            future.complete(definitions);
+            return true;
+        }
+    }
+}
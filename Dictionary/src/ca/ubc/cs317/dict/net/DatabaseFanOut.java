@@ -0,0 +1,233 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Retrieves the definitions of a word from every database of a server by sending a separate DEFINE command per
+ * database over the connections of a pool, instead of a single "define *" that the server answers one database
+ * after the other. Results are merged in the order the server lists its databases, and databases that don't answer
+ * within a deadline are left out, and reported, instead of delaying the whole answer.
+ *
+ * A request only uses a share of the connections of the pool, so that other requests aren't starved by a server with
+ * many databases; the databases wait for one of these connections in order, and the deadline of each database only
+ * starts once its command has been sent.
+ */
+public class DatabaseFanOut {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final DictionaryConnectionPool pool;
+    private final long deadlineMillis;
+    private final int concurrency;
+
+    /**
+     * Creates a fan-out that uses at most half of the connections of the pool for each request.
+     *
+     * @param pool           Pool providing the connections used for each database.
+     * @param deadlineMillis Time, counted from when the command of a database is sent, after which the database is
+     *                       dropped.
+     */
+    public DatabaseFanOut(DictionaryConnectionPool pool, long deadlineMillis) {
+        this(pool, deadlineMillis, Math.max(1, pool.getMaxConnections() / 2));
+    }
+
+    /**
+     * @param pool           Pool providing the connections used for each database.
+     * @param deadlineMillis Time, counted from when the command of a database is sent, after which the database is
+     *                       dropped.
+     * @param concurrency    Maximum number of databases asked at the same time, and so of connections used by a
+     *                       request.
+     */
+    public DatabaseFanOut(DictionaryConnectionPool pool, long deadlineMillis, int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("Invalid fan-out concurrency: " + concurrency);
+        this.pool = pool;
+        this.deadlineMillis = deadlineMillis;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Requests and retrieves the definitions for a word in all databases of the server.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @return All definitions returned by the databases that answered in time, in database order.
+     * @throws DictConnectionException If the database list can't be retrieved, or if no database answered.
+     */
+    public Collection<Definition> getDefinitions(String word) throws DictConnectionException {
+        return getDefinitions(word, null, null);
+    }
+
+    /**
+     * Requests and retrieves the definitions for a word in all databases of the server, delivering the definitions
+     * of each database to a consumer as soon as it and all databases before it have been handled.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param consumer Receives each definition in database order, on the calling thread; may be null.
+     * @return All definitions returned by the databases that answered in time, in database order.
+     * @throws DictConnectionException If the database list can't be retrieved, or if no database answered.
+     */
+    public Collection<Definition> getDefinitions(String word, Consumer<Definition> consumer) throws DictConnectionException {
+        return getDefinitions(word, consumer, null);
+    }
+
+    /**
+     * Requests and retrieves the definitions for a word in all databases of the server, delivering the definitions
+     * of each database, or the fact that it didn't answer in time, as soon as it and all databases before it have
+     * been handled.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param consumer Receives each definition in database order, on the calling thread; may be null.
+     * @param timedOut Receives each database left out because it didn't answer within the deadline, in the same
+     *                 order as the definitions, on the calling thread; may be null.
+     * @return All definitions returned by the databases that answered in time, in database order.
+     * @throws DictConnectionException If the database list can't be retrieved, or if no database answered, either
+     *                                 because they all failed or because they all timed out.
+     */
+    public Collection<Definition> getDefinitions(String word, Consumer<Definition> consumer,
+                                                 Consumer<Database> timedOut) throws DictConnectionException {
+        Collection<Database> databases;
+        DictionaryConnection connection = pool.borrow();
+        try {
+            databases = new ArrayList<>(connection.getDatabaseList());
+        } finally {
+            pool.release(connection);
+        }
+
+        List<Request> requests = new ArrayList<>();
+        Queue<Request> queue = new ConcurrentLinkedQueue<>();
+        for (Database database : databases) {
+            Request request = new Request(database);
+            requests.add(request);
+            queue.add(request);
+        }
+        for (int i = 0; i < Math.min(concurrency, requests.size()); i++)
+            EXECUTOR.execute(() -> work(word, queue));
+
+        long deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        Collection<Definition> definitions = new ArrayList<>();
+        Exception failure = null;
+        int answered = 0, missed = 0;
+        try {
+            for (Request request : requests) {
+                try {
+                    long sent = request.sent.get();
+                    Collection<Definition> result = request.result.get(
+                            Math.max(0, sent + deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    answered++;
+                    definitions.addAll(result);
+                    if (consumer != null) result.forEach(consumer);
+                } catch (TimeoutException e) {
+                    request.cancel(); // too slow: leave this database out
+                    missed++;
+                    if (timedOut != null) timedOut.accept(request.database);
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = (Exception) e.getCause();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Request pending : requests)
+                pending.cancel();
+            throw new DictConnectionException("Interrupted while waiting for definitions", e);
+        }
+
+        if (answered == 0 && failure != null)
+            throw failure instanceof DictConnectionException ? (DictConnectionException) failure : new DictConnectionException(failure);
+        if (answered == 0 && missed > 0)
+            throw new DictConnectionException("No database answered within " + deadlineMillis + " ms");
+        return definitions;
+    }
+
+    /**
+     * Asks the databases taken from a queue one after the other, until the queue is empty. Each request runs on one
+     * of the concurrency tasks started for it.
+     */
+    private void work(String word, Queue<Request> queue) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            DictionaryConnection connection;
+            try {
+                connection = pool.borrow();
+            } catch (DictConnectionException e) {
+                request.fail(e);
+                continue;
+            }
+            try {
+                if (!request.start()) continue; // interrupted while waiting for a connection
+                try {
+                    request.result.complete(connection.getDefinitions(word, request.database));
+                } catch (DictConnectionException | RuntimeException e) {
+                    request.fail(e);
+                } finally {
+                    request.finish();
+                }
+            } finally {
+                pool.release(connection); // discarded if closed because the request was cancelled
+            }
+        }
+    }
+
+    /**
+     * The DEFINE command of one database, and the task running it. A cancelled request interrupts its task, which
+     * closes the connection the task is reading from.
+     */
+    private static class Request {
+        final Database database;
+        final CompletableFuture<Long> sent = new CompletableFuture<>(); // System.nanoTime when the command was sent
+        final CompletableFuture<Collection<Definition>> result = new CompletableFuture<>();
+        private Thread runner;
+
+        Request(Database database) {
+            this.database = database;
+        }
+
+        synchronized boolean start() {
+            if (result.isDone()) return false;
+            runner = Thread.currentThread();
+            sent.complete(System.nanoTime());
+            return true;
+        }
+
+        synchronized void finish() {
+            runner = null;
+            Thread.interrupted(); // an interrupt meant for this request must not cancel the next one
+        }
+
+        void fail(Exception e) {
+            sent.complete(System.nanoTime());
+            result.completeExceptionally(e);
+        }
+
+        synchronized void cancel() {
+            sent.complete(System.nanoTime());
+            if (result.cancel(false) && runner != null)
+                runner.interrupt();
+        }
+    }
+
+    /**
+     * Uses a virtual thread per task when the runtime supports them (Java 21 and later), since each task spends
+     * nearly all of its time waiting for a connection or for the server. Older runtimes fall back to a cached pool
+     * of daemon threads.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "dict-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.cache.DefinitionCache;
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Speculatively retrieves the definitions of the first few suggestions shown to the user, so that the one the user
+ * picks is usually answered from the definition cache of the pool. Prefetching runs on a single low-priority thread,
+ * only uses a connection the pool can spare (see DictionaryConnectionPool.tryBorrow), sends a bounded number of
+ * commands per batch and stops as soon as a newer batch is requested or the batch is cancelled.
+ *
+ * For all databases ('*'), each word takes a single DEFINE command in all databases, whose reply is split by database
+ * and cached under each of them as well, matching both the requests made by DatabaseFanOut and a direct request in
+ * all databases. Databases without a definition for the word are cached as having none.
+ *
+ * Prefetching only has an effect if the pool has a definition cache. Failures are ignored. With a DictionaryRouter,
+ * each batch uses the pool of the server that is the fastest when the batch starts.
+ */
+public class DefinitionPrefetcher implements Closeable {
+
+    public static final int DEFAULT_MAX_WORDS = 3;
+    public static final int DEFAULT_RESERVED_CONNECTIONS = 1;
+
+    private final DictionaryConnectionPool pool;
+    private final DictionaryRouter router;
+    private final int maxWords;
+    private final int reservedConnections;
+    private final ExecutorService executor;
+
+    private final AtomicLong generation = new AtomicLong();
+    private Future<?> current;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public DefinitionPrefetcher(DictionaryConnectionPool pool) {
+        this(pool, null, DEFAULT_MAX_WORDS, DEFAULT_RESERVED_CONNECTIONS);
+    }
+
+    public DefinitionPrefetcher(DictionaryRouter router) {
+        this(null, router, DEFAULT_MAX_WORDS, DEFAULT_RESERVED_CONNECTIONS);
+    }
+
+    /**
+     * @param pool                Pool providing the connection and the definition cache filled by prefetching.
+     * @param maxWords            Number of words, from the start of each batch, whose definitions are prefetched. Each
+     *                            word takes one DEFINE command, so this also bounds the commands sent per batch.
+     * @param reservedConnections Number of connections of the pool left for foreground requests.
+     */
+    public DefinitionPrefetcher(DictionaryConnectionPool pool, int maxWords, int reservedConnections) {
+        this(pool, null, maxWords, reservedConnections);
+    }
+
+    private DefinitionPrefetcher(DictionaryConnectionPool pool, DictionaryRouter router, int maxWords,
+                                 int reservedConnections) {
+        if (maxWords < 0 || reservedConnections < 0)
+            throw new IllegalArgumentException("Invalid prefetch budget");
+        this.pool = pool;
+        this.router = router;
+        this.maxWords = maxWords;
+        this.reservedConnections = reservedConnections;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "dict-prefetcher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts prefetching the definitions of a list of words, cancelling any batch still in progress.
+     *
+     * @param words    Candidate words, most likely first.
+     * @param database The database the definitions will be requested from, possibly all databases ('*').
+     */
+    public synchronized void prefetch(Collection<String> words, Database database) {
+        cancel();
+        List<String> batch = new ArrayList<>(maxWords);
+        for (String word : words) {
+            if (batch.size() >= maxWords) break;
+            batch.add(word);
+        }
+        if (batch.isEmpty()) return;
+
+        long batchGeneration = generation.get();
+        current = executor.submit(() -> run(batch, database, batchGeneration));
+    }
+
+    /**
+     * Stops the current batch. A command already sent is allowed to complete, since its reply is still cached, but no
+     * further commands are sent.
+     */
+    public synchronized void cancel() {
+        generation.incrementAndGet();
+        if (current != null) {
+            current.cancel(false);
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return The number of DEFINE requests made by the prefetcher, including those answered from the cache.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of batches skipped because the pool had no connection to spare.
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    private void run(List<String> words, Database database, long batchGeneration) {
+        DictionaryConnectionPool pool;
+        DictionaryConnection connection;
+        try {
+            pool = router != null ? router.getFastestPool() : this.pool;
+            if (pool.getDefinitionCache() == null) return;
+            connection = pool.tryBorrow(reservedConnections);
+        } catch (DictConnectionException e) {
+            return;
+        }
+        if (connection == null) {
+            skipped.incrementAndGet();
+            return;
+        }
+
+        boolean usable = false;
+        try {
+            boolean all = database.getName().equals("*");
+            for (String word : words) {
+                if (generation.get() != batchGeneration) break;
+                Collection<Definition> definitions = connection.getDefinitions(word, database);
+                requests.incrementAndGet();
+                if (all) cacheByDatabase(pool.getDefinitionCache(), word, connection.getDatabaseList(), definitions);
+            }
+            usable = true;
+        } catch (DictConnectionException e) {
+            // An error reply (e.g., a database removed from the server) leaves the connection usable
+            usable = !connection.isClosed();
+        } finally {
+            if (usable) pool.release(connection);
+            else pool.invalidate(connection);
+        }
+    }
+
+    private static void cacheByDatabase(DefinitionCache cache, String word, Collection<Database> databases,
+                                        Collection<Definition> definitions) {
+        Map<Database, Collection<Definition>> byDatabase = new LinkedHashMap<>();
+        for (Database database : databases)
+            byDatabase.put(database, new ArrayList<>());
+        for (Definition definition : definitions) {
+            Collection<Definition> list = byDatabase.get(definition.getDatabase());
+            if (list != null) list.add(definition);
+        }
+        for (Map.Entry<Database, Collection<Definition>> entry : byDatabase.entrySet())
+            cache.put(word, entry.getKey(), entry.getValue());
+    }
+}
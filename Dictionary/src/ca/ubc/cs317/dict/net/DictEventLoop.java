@@ -0,0 +1,128 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A single thread driving any number of non-blocking DICT connections with a Selector. Connections register their
+ * channels with the loop, and all of their state is only touched by the loop thread; other threads hand work to the
+ * loop with execute.
+ */
+public class DictEventLoop implements Executor, Closeable {
+
+    /**
+     * Receives readiness events for a channel registered with the loop. Called on the loop thread.
+     */
+    interface Handler {
+        void handle(SelectionKey key) throws IOException;
+
+        void failed(Throwable cause);
+    }
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    public DictEventLoop() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this::run, "dict-event-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs a task on the loop thread. Tasks run in the order they are submitted.
+     *
+     * @param task Task to be run.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    SelectionKey register(SelectableChannel channel, int interestOps, Handler handler) throws IOException {
+        return channel.register(selector, interestOps, handler);
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        report(e); // a failing task must not stop the loop serving every other connection
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        if (key.isValid())
+                            handler.handle(key);
+                    } catch (Exception e) {
+                        key.cancel();
+                        failed(handler, e);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // selector failed; fall through to close every channel
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            failed((Handler) key.attachment(), new IOException("Event loop closed"));
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // ignore all exceptions
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore all exceptions
+        }
+    }
+
+    private void failed(Handler handler, Exception cause) {
+        try {
+            handler.failed(cause);
+        } catch (RuntimeException e) {
+            report(e);
+        }
+    }
+
+    private void report(RuntimeException e) {
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+}
@@ -0,0 +1,212 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the bytes of DICT server replies into lines, working directly on a ByteBuffer instead of creating a String
+ * for each line. The current line can be parsed as a status line, checked for the "." terminator of a text response,
+ * or appended (with dot-stuffing removed) to a StringBuilder.
+ *
+ * The decoder can either pull bytes from a blocking channel (readLine), or be fed bytes as they become available
+ * (feed and nextLine), which allows the same code to be used with non-blocking channels.
+ */
+public class DictReplyDecoder {
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    // Bounds of the current line in the buffer's backing array, excluding the line terminator
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private boolean hasLine = false;
+
+    private long bytesRead = 0;
+    private long linesRead = 0;
+
+    /**
+     * Creates a decoder that reads bytes from a blocking channel when readLine is called.
+     *
+     * @param channel Channel from where replies are read.
+     */
+    public DictReplyDecoder(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer.flip(); // buffer is kept in read mode: [position, limit) holds unconsumed bytes
+    }
+
+    /**
+     * Creates a decoder with no channel, whose bytes are provided using feed.
+     */
+    public DictReplyDecoder() {
+        this(null);
+    }
+
+    /**
+     * Appends bytes received from the server to the decoder.
+     *
+     * @param source Buffer in read mode; all its remaining bytes are consumed.
+     */
+    public void feed(ByteBuffer source) {
+        ensureWritable(source.remaining());
+        buffer.compact();
+        bytesRead += source.remaining();
+        buffer.put(source);
+        buffer.flip();
+    }
+
+    /**
+     * Advances to the next complete line among the bytes already received.
+     *
+     * @return true if a new line is available, false if more bytes are needed.
+     */
+    public boolean nextLine() {
+        hasLine = false;
+        byte[] array = buffer.array();
+        int start = buffer.position();
+        int limit = buffer.limit();
+        for (int i = start; i < limit; i++) {
+            if (array[i] == '\n') {
+                lineStart = start;
+                lineEnd = (i > start && array[i - 1] == '\r') ? i - 1 : i;
+                buffer.position(i + 1);
+                hasLine = true;
+                linesRead++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances to the next line, reading from the channel until a complete line is available.
+     *
+     * @throws IOException If the channel can't be read or it is closed before a complete line is received.
+     */
+    public void readLine() throws IOException {
+        while (!nextLine()) {
+            ensureWritable(1);
+            buffer.compact();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } finally {
+                buffer.flip();
+            }
+            if (read < 0)
+                throw new EOFException("Connection closed by server");
+            bytesRead += read;
+        }
+    }
+
+    /**
+     * @return true if the current line is the "." that terminates a text response.
+     */
+    public boolean isTerminator() {
+        return hasLine && lineEnd - lineStart == 1 && buffer.array()[lineStart] == '.';
+    }
+
+    /**
+     * Parses the current line as a status line, without splitting it into intermediate strings.
+     *
+     * @return The Status corresponding to the current line.
+     * @throws DictConnectionException If the line is not a valid status line.
+     */
+    public Status parseStatus() throws DictConnectionException {
+        if (!hasLine)
+            throw new DictConnectionException("Invalid status line");
+        return Status.parse(buffer.array(), lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * Reads the status code at the start of the current line without parsing the rest of it.
+     *
+     * @return The three-digit status code, or -1 if the current line doesn't start with one.
+     */
+    public int statusCode() {
+        if (!hasLine || lineEnd - lineStart < 3) return -1;
+        byte[] array = buffer.array();
+        int code = 0;
+        for (int i = lineStart; i < lineStart + 3; i++) {
+            if (array[i] < '0' || array[i] > '9') return -1;
+            code = code * 10 + array[i] - '0';
+        }
+        return code;
+    }
+
+    /**
+     * Appends the current line to a StringBuilder, removing the extra leading "." added by the server to lines that
+     * start with a period.
+     *
+     * @param builder Destination of the line's characters. No line separator is appended.
+     */
+    public void appendLine(StringBuilder builder) {
+        byte[] array = buffer.array();
+        int start = lineStart;
+        if (lineEnd - start > 1 && array[start] == '.' && array[start + 1] == '.')
+            start++;
+        appendDecoded(builder, array, start, lineEnd);
+    }
+
+    /**
+     * @return The current line as a String, with dot-stuffing removed.
+     */
+    public String lineString() {
+        StringBuilder builder = new StringBuilder(lineEnd - lineStart);
+        appendLine(builder);
+        return builder.toString();
+    }
+
+    /**
+     * @return The number of bytes received by this decoder since it was created.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The number of complete lines returned by this decoder since it was created.
+     */
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    static String decode(byte[] array, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (array[i] < 0)
+                return new String(array, start, end - start, StandardCharsets.UTF_8);
+        }
+        // ASCII-only lines can be copied without running the UTF-8 decoder
+        return new String(array, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    static void appendDecoded(StringBuilder builder, byte[] array, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = array[i];
+            if (b < 0) { // non-ASCII: let the charset handle the rest of the line
+                builder.append(new String(array, i, end - i, StandardCharsets.UTF_8));
+                return;
+            }
+            builder.append((char) b);
+        }
+    }
+
+    private void ensureWritable(int needed) {
+        int unconsumed = buffer.remaining();
+        if (unconsumed + needed <= buffer.capacity()) return;
+        int capacity = buffer.capacity();
+        while (capacity < unconsumed + needed) capacity *= 2;
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        larger.put(buffer);
+        larger.flip();
+        // Line bounds refer to the old array; the current line is discarded when the buffer grows
+        hasLine = false;
+        buffer = larger;
+    }
+}
@@ -1,29 +1,69 @@
 package ca.ubc.cs317.dict.net;
 
+import ca.ubc.cs317.dict.cache.DefinitionCache;
+import ca.ubc.cs317.dict.cache.MatchCache;
 import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.metrics.DictMetrics;
 import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
 import ca.ubc.cs317.dict.util.DictStringParser;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
-public class DictionaryConnection {
+public class DictionaryConnection implements DictionarySource {
 
-    private static final int DEFAULT_PORT = 2628;
+    public static final int DEFAULT_PORT = 2628;
+    public static final int DEFAULT_PIPELINE_WINDOW = 32;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 30000;
 
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
     private Socket socket;
-    private BufferedReader input;
+    private DictReplyDecoder input;
     private PrintWriter output;
+    private CountingOutputStream outputCounter;
+    private final ProtocolTrace trace;
+    private volatile boolean closed;
+    private volatile int reconnects;
+    private boolean errorReplyRead; // the last failure was a complete error reply, so no reply is left unread
 
     private Map<String, Database> databaseMap = new LinkedHashMap<String, Database>();
+    private Set<MatchingStrategy> strategies;
+
+    // Parts of the welcome message: "220 text <capabilities> <msg-id>"
+    private volatile String bannerText = "";
+    private volatile Set<String> capabilities = Collections.emptySet();
+    private volatile String messageId = "";
+
+    private volatile DefinitionCache definitionCache;
+    private volatile MatchCache matchCache;
+    private volatile DictMetrics metrics = DictMetrics.getDefault();
+
+    // Time the last command was sent and the first line of its reply received, and the traffic already recorded
+    private long sentNanos;
+    private long firstByteNanos;
+    private long recordedBytesIn;
+    private long recordedBytesOut;
+    private long recordedLines;
+
+    private final StringBuilder definitionText = new StringBuilder();
+    private final StringBuilder lineText = new StringBuilder();
+    private final int[] atomBounds = new int[8];
 
     /**
      * Establishes a new connection with a DICT server using an explicit host and port number, and handles initial
@@ -35,18 +75,52 @@ public class DictionaryConnection {
      *                                 don't match their expected value.
      */
     public DictionaryConnection(String host, int port) throws DictConnectionException {
+        this(host, port, DEFAULT_TIMEOUT_MILLIS);
+    }
 
+    /**
+     * Establishes a new connection with a DICT server, waiting at most timeoutMillis for the connection to be
+     * established and for each read from the server, so that a server that stops answering is detected as a broken
+     * connection instead of blocking the caller indefinitely.
+     *
+     * @param host          Name of the host where the DICT server is running
+     * @param port          Port number used by the DICT server
+     * @param timeoutMillis Connect and read timeout, in milliseconds, or 0 to wait indefinitely.
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     *                                 don't match their expected value.
+     */
+    public DictionaryConnection(String host, int port, int timeoutMillis) throws DictConnectionException {
+
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        trace = new ProtocolTrace(host + ":" + port);
         try {
-            socket = new Socket(host, port);
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            output = new PrintWriter(socket.getOutputStream(), true);
+            connect();
+        } catch (Exception e) {
+            throw failure(e);
+        }
+    }
 
-            Status welcomeStatus = Status.readStatus(input);
+    private void connect() throws Exception {
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true); // pipelined commands must not wait for the ACK of the previous one
+            input = new DictReplyDecoder(Channels.newChannel(socket.getInputStream()));
+            outputCounter = new CountingOutputStream(socket.getOutputStream());
+            output = new PrintWriter(outputCounter, true);
+
+            Status welcomeStatus = readStatus();
             if (welcomeStatus.getStatusCode() != 220)
                 throw new DictConnectionException("Sorry try connecting again");
+            parseBanner(welcomeStatus.getDetails());
         } catch (Exception e) {
-            throw new DictConnectionException(e);
+            abandonPipeline();
+            throw e;
         }
+        recordedBytesIn = recordedBytesOut = recordedLines = 0;
     }
 
     /**
@@ -66,7 +140,9 @@ public class DictionaryConnection {
      * may happen while sending the message, receiving its reply, or closing the connection.
      */
     public synchronized void close() {
+        closed = true;
         output.println("quit");
+        trace.sent("quit");
 
         try {
             socket.close();
@@ -75,6 +151,136 @@ public class DictionaryConnection {
         }
     }
 
+    /**
+     * Indicates if the connection has been closed, either locally or because the server closed its end.
+     *
+     * @return true if this connection can no longer be used, false otherwise.
+     */
+    public boolean isClosed() {
+        return socket.isClosed() || output.checkError();
+    }
+
+    /**
+     * Replaces the socket of this connection with a new one to the same server, for instance after the server closed
+     * an idle connection. The database and strategy lists already retrieved are kept, so they aren't requested again.
+     *
+     * @throws DictConnectionException If the connection was closed with close(), or a new connection can't be
+     *                                 established.
+     */
+    public synchronized void reconnect() throws DictConnectionException {
+        if (closed) throw new DictConnectionException("Connection closed");
+
+        String identity = getServerIdentity();
+        abandonPipeline();
+        try {
+            connect();
+            reconnects++;
+        } catch (Exception e) {
+            throw failure(e);
+        }
+
+        // A different server (or version) may have different databases
+        if (!identity.equals(getServerIdentity())) {
+            databaseMap.clear();
+            strategies = null;
+        }
+    }
+
+    private void parseBanner(String details) {
+        String text = details == null ? "" : details;
+        String id = "";
+        Set<String> announced = Collections.emptySet();
+
+        int idStart = text.lastIndexOf('<');
+        if (idStart >= 0 && text.indexOf('>', idStart) > idStart) {
+            id = text.substring(idStart + 1, text.indexOf('>', idStart));
+            text = text.substring(0, idStart).trim();
+            int capStart = text.lastIndexOf('<');
+            if (capStart >= 0 && text.endsWith(">")) {
+                announced = new LinkedHashSet<>();
+                for (String capability : text.substring(capStart + 1, text.length() - 1).split("\\."))
+                    if (!capability.isEmpty()) announced.add(capability);
+                text = text.substring(0, capStart).trim();
+            }
+        }
+
+        bannerText = text;
+        capabilities = Collections.unmodifiableSet(announced);
+        messageId = id;
+    }
+
+    /**
+     * @return The capabilities announced in the welcome message (e.g., "auth", "mime"), as described in RFC 2229.
+     */
+    public Set<String> getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * @return The msg-id of the welcome message, without its angle brackets. Servers generate a new one for every
+     * connection.
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Identifies the server software behind this connection, from the welcome message: its text (typically the host
+     * name and server version), its capabilities, and the host part of its msg-id, which unlike the rest of the
+     * msg-id is the same for every connection. Lists of databases and strategies retrieved from a connection are
+     * valid for any connection with the same identity.
+     *
+     * @return The identity of the server, never null.
+     */
+    public String getServerIdentity() {
+        String id = messageId;
+        return bannerText + " <" + String.join(".", capabilities) + "> " + id.substring(id.lastIndexOf('@') + 1);
+    }
+
+    /**
+     * Provides lists of databases and strategies retrieved earlier (e.g., by another connection to the same server,
+     * or in a previous run), so that they aren't requested again on this connection. Lists already retrieved by this
+     * connection are kept.
+     *
+     * @param databases  The databases supported by the server.
+     * @param strategies The matching strategies supported by the server.
+     */
+    public synchronized void preload(Collection<Database> databases, Collection<MatchingStrategy> strategies) {
+        if (databaseMap.isEmpty())
+            for (Database database : databases)
+                databaseMap.put(database.getName(), database);
+        if (this.strategies == null)
+            this.strategies = new LinkedHashSet<>(strategies);
+    }
+
+    /**
+     * @return The number of times the socket of this connection has been replaced since it was created.
+     */
+    public int getReconnectCount() {
+        return reconnects;
+    }
+
+    /**
+     * Checks if the server is still responsive by sending a STATUS command and waiting for its reply. This function
+     * ignores any exception that may happen while sending the message or receiving its reply.
+     *
+     * @return true if the server replied with a successful status, false otherwise.
+     */
+    public synchronized boolean isHealthy() {
+        if (isClosed()) return false;
+
+        send("status");
+
+        try {
+            boolean healthy = readFirstStatus().getStatusCode() == 210;
+            recordReply(DictMetrics.Command.STATUS, sentNanos);
+            return healthy;
+        } catch (Exception e) {
+            abandonPipeline();
+            return false;
+        }
+    }
+
     /**
      * Requests and retrieves all definitions for a specific word.
      *
@@ -86,51 +292,129 @@ public class DictionaryConnection {
      * @return A collection of Definition objects containing all definitions returned by the server.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
-    public synchronized Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
-        Collection<Definition> set = new ArrayList<>();
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        DefinitionCache cache = definitionCache;
+        if (cache != null) {
+            Collection<Definition> cached = cache.get(word, database);
+            if (cached != null) return cached;
+        }
+
+        Collection<Definition> definitions = fetchDefinitions(word, database, null);
+        if (cache != null) cache.put(word, database, definitions);
+        return definitions;
+    }
+
+    private synchronized Collection<Definition> fetchDefinitions(String word, Database database, Consumer<Definition> consumer) throws DictConnectionException {
         getDatabaseList(); // Ensure the list of databases has been populated
 
-        output.println("define " + database.getName() + " " + formatWord(word));
-        Definition definitionToAdd;
+        // A retried command repeats the definitions that were already delivered to the consumer; those are skipped
+        String command = defineCommand(word, database);
+        int[] delivered = {0};
+        return retrying(() -> {
+            send(command);
+
+            int[] read = {0};
+            Collection<Definition> definitions = readDefinitions(consumer == null ? null : definition -> {
+                if (read[0]++ < delivered[0]) return;
+                delivered[0]++;
+                consumer.accept(definition);
+            });
+            recordReply(DictMetrics.Command.DEFINE, sentNanos);
+            return definitions;
+        });
+    }
 
-        try {
-            Status definitionRetrievedStatus = Status.readStatus(input);
-            if (!handleStatus(definitionRetrievedStatus)) {
-                return set;
+    /**
+     * Requests and retrieves all definitions for a specific word, delivering each definition to a consumer as soon as
+     * it has been read, instead of waiting for the whole reply. The consumer is called on the calling thread.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition, with the same special names accepted by
+     *                 getDefinitions(String, Database).
+     * @param consumer Receives each definition, in the order sent by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public void getDefinitions(String word, Database database, Consumer<Definition> consumer) throws DictConnectionException {
+        DefinitionCache cache = definitionCache;
+        if (cache != null) {
+            Collection<Definition> cached = cache.get(word, database);
+            if (cached != null) {
+                cached.forEach(consumer);
+                return;
             }
+        }
 
-            String numDefinitionsRetrievedString = definitionRetrievedStatus.getDetails().split(" ")[0];
-            int numDefinitionsRetrieved = Integer.parseInt(numDefinitionsRetrievedString);
-            for (int i = 0; i < numDefinitionsRetrieved; i++) {
-
-                Status definitionStatus = Status.readStatus(input); // read word and database
-                handleStatus(definitionStatus);
-
-                String[] parsedStrings = DictStringParser.splitAtoms(definitionStatus.getDetails()); // handle word/db
-                String wordToAdd = parsedStrings[0];
-                String databaseName = parsedStrings[1];
-                definitionToAdd = new Definition(wordToAdd, databaseMap.get(databaseName));
-
-                String fromServer; // read through actual definition
-                String definition = "";
-                while ((fromServer = input.readLine()) != null) {
-                    if (!fromServer.equals(".")) {
-                        definition = definition.concat(fromServer + "\n");
-                    } else {
-                        definitionToAdd.setDefinition(definition);
-                        set.add(definitionToAdd);
-                        break;
-                    }
-                }
-            }
+        Collection<Definition> definitions = fetchDefinitions(word, database, consumer);
+        if (cache != null) cache.put(word, database, definitions);
+    }
 
-            Status completionStatus = Status.readStatus(input);
-            handleStatus(completionStatus);
-        } catch (Exception e) {
-            throw new DictConnectionException(e);
+    /**
+     * Requests and retrieves all definitions for a list of words. Commands are pipelined as described in RFC 2229: up
+     * to DEFAULT_PIPELINE_WINDOW commands are sent before their replies are read, and replies are matched to words in
+     * the order the commands were sent.
+     *
+     * @param words    The words whose definitions are to be retrieved.
+     * @param database The database to be used to retrieve the definitions, with the same special names accepted by
+     *                 getDefinitions(String, Database).
+     * @return A map from each word to the collection of definitions returned by the server, in the order of the list.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public Map<String, Collection<Definition>> getDefinitions(List<String> words, Database database) throws DictConnectionException {
+        return getDefinitions(words, database, DEFAULT_PIPELINE_WINDOW);
+    }
+
+    /**
+     * Requests and retrieves all definitions for a list of words, keeping at most window commands outstanding.
+     *
+     * @param words    The words whose definitions are to be retrieved.
+     * @param database The database to be used to retrieve the definitions.
+     * @param window   Maximum number of commands sent before their replies are read, at least 1.
+     * @return A map from each word to the collection of definitions returned by the server, in the order of the list.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     * @throws IllegalArgumentException If window is less than 1.
+     */
+    public synchronized Map<String, Collection<Definition>> getDefinitions(List<String> words, Database database, int window) throws DictConnectionException {
+        if (window < 1)
+            throw new IllegalArgumentException("Invalid pipeline window: " + window);
+        Map<String, Collection<Definition>> map = new LinkedHashMap<>();
+        getDatabaseList(); // Ensure the list of databases has been populated
+
+        DefinitionCache cache = definitionCache;
+        List<String> missing = new ArrayList<>();
+        for (String word : words) {
+            Collection<Definition> cached = cache == null ? null : cache.get(word, database);
+            map.put(word, cached);
+            if (cached == null) missing.add(word);
         }
 
-        return set;
+        // Every word is checked before anything is sent, so an invalid word can't leave replies unread
+        String[] commands = new String[missing.size()];
+        for (int i = 0; i < commands.length; i++)
+            commands[i] = defineCommand(missing.get(i), database);
+        long[] sentAt = new long[missing.size()];
+        return retrying(() -> {
+            int sent = 0, received = 0;
+            try {
+                for (; received < missing.size(); received++) {
+                    while (sent < missing.size() && sent - received < window) {
+                        output.print(commands[sent] + "\r\n");
+                        trace.sent(commands[sent]);
+                        sentAt[sent++] = System.nanoTime();
+                    }
+                    output.flush();
+                    Collection<Definition> definitions = readDefinitions(null);
+                    recordReply(DictMetrics.Command.DEFINE, sentAt[received]);
+                    map.put(missing.get(received), definitions);
+                    if (cache != null) cache.put(missing.get(received), database, definitions);
+                }
+            } catch (Exception e) {
+                // Replies to the commands sent after the failed one would be read as replies to later commands. An
+                // error reply to the last command sent leaves nothing unread, so the connection is kept (see failure)
+                if (sent > received + 1) abandonPipeline();
+                throw e;
+            }
+            return map;
+        });
     }
 
     /**
@@ -144,123 +428,387 @@ public class DictionaryConnection {
      * @return A set of word matches returned by the server.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
-    public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
-        Set<String> set = new LinkedHashSet<>();
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        MatchCache cache = matchCache;
+        if (cache != null) {
+            Set<String> cached = cache.get(word, strategy, database);
+            if (cached != null) return cached;
+        }
 
-        output.println("match " + database.getName() + " " + strategy.getName() + " " + formatWord(word));
+        Set<String> matches = fetchMatchList(word, strategy, database);
+        if (cache != null) cache.put(word, strategy, database, matches);
+        return matches;
+    }
 
-        try {
-            Status matchStatus = Status.readStatus(input);
-            if (!handleStatus(matchStatus)) {
-                return set;
-            }
+    private synchronized Set<String> fetchMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        String command = matchCommand(word, strategy, database);
+        return retrying(() -> {
+            send(command);
 
-            String fromServer;
-            while ((fromServer = input.readLine()) != null) {
-                String[] parsedStrings = DictStringParser.splitAtoms(fromServer);
+            Set<String> matches = readMatches();
+            recordReply(DictMetrics.Command.MATCH, sentNanos);
+            return matches;
+        });
+    }
 
-                if (parsedStrings.length > 1) {
-                    String match = parsedStrings[1];
-                    set.add(match);
-                } else { // when . is encountered
-                    break;
+    /**
+     * Requests and retrieves the lists of matches for several word patterns, pipelining up to
+     * DEFAULT_PIPELINE_WINDOW commands at a time.
+     *
+     * @param words    The word patterns to be matched.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the matches.
+     * @return A map from each pattern to the set of word matches returned by the server, in the order of the list.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public Map<String, Set<String>> getMatchLists(List<String> words, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return getMatchLists(words, strategy, database, DEFAULT_PIPELINE_WINDOW);
+    }
+
+    /**
+     * Requests and retrieves the lists of matches for several word patterns, keeping at most window commands
+     * outstanding.
+     *
+     * @param words    The word patterns to be matched.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the matches.
+     * @param window   Maximum number of commands sent before their replies are read, at least 1.
+     * @return A map from each pattern to the set of word matches returned by the server, in the order of the list.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     * @throws IllegalArgumentException If window is less than 1.
+     */
+    public synchronized Map<String, Set<String>> getMatchLists(List<String> words, MatchingStrategy strategy, Database database, int window) throws DictConnectionException {
+        if (window < 1)
+            throw new IllegalArgumentException("Invalid pipeline window: " + window);
+        Map<String, Set<String>> map = new LinkedHashMap<>();
+
+        String[] commands = new String[words.size()];
+        for (int i = 0; i < commands.length; i++)
+            commands[i] = matchCommand(words.get(i), strategy, database);
+        long[] sentAt = new long[words.size()];
+        return retrying(() -> {
+            int sent = 0, received = 0;
+            try {
+                for (; received < words.size(); received++) {
+                    while (sent < words.size() && sent - received < window) {
+                        output.print(commands[sent] + "\r\n");
+                        trace.sent(commands[sent]);
+                        sentAt[sent++] = System.nanoTime();
+                    }
+                    output.flush();
+                    map.put(words.get(received), readMatches());
+                    recordReply(DictMetrics.Command.MATCH, sentAt[received]);
                 }
+            } catch (Exception e) {
+                // Replies to the commands sent after the failed one would be read as replies to later commands. An
+                // error reply to the last command sent leaves nothing unread, so the connection is kept (see failure)
+                if (sent > received + 1) abandonPipeline();
+                throw e;
             }
+            return map;
+        });
+    }
 
-            Status completionStatus = Status.readStatus(input);
-            handleStatus(completionStatus);
-        } catch (Exception e) {
-            throw new DictConnectionException(e);
+    /**
+     * Sets the cache consulted by getDefinitions before sending a request to the server. Cached definitions are
+     * returned without using the socket.
+     *
+     * @param definitionCache The cache to be used, or null to disable caching.
+     */
+    public void setDefinitionCache(DefinitionCache definitionCache) {
+        this.definitionCache = definitionCache;
+    }
+
+    /**
+     * Sets the cache consulted by getMatchList before sending a request to the server. The cache may answer a pattern
+     * by filtering the cached matches of a shorter pattern.
+     *
+     * @param matchCache The cache to be used, or null to disable caching.
+     */
+    public void setMatchCache(MatchCache matchCache) {
+        this.matchCache = matchCache;
+    }
+
+    /**
+     * Sets where the latency and traffic of the commands sent on this connection are recorded. Connections use
+     * DictMetrics.getDefault() unless another instance is set.
+     *
+     * @param metrics The metrics to be updated, or null to disable recording.
+     */
+    public void setMetrics(DictMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The trace of the recent commands and replies of this connection.
+     */
+    public ProtocolTrace getTrace() {
+        return trace;
+    }
+
+    private Collection<Definition> readDefinitions(Consumer<Definition> consumer) throws Exception {
+        Collection<Definition> set = new ArrayList<>();
+        Definition definitionToAdd;
+
+        Status definitionRetrievedStatus = readFirstStatus();
+        if (!handleStatus(definitionRetrievedStatus)) {
+            return set;
+        }
+
+        String numDefinitionsRetrievedString = definitionRetrievedStatus.getDetails().split(" ")[0];
+        int numDefinitionsRetrieved = Integer.parseInt(numDefinitionsRetrievedString);
+        for (int i = 0; i < numDefinitionsRetrieved; i++) {
+
+            Status definitionStatus = readStatus(); // read word and database
+            handleStatus(definitionStatus);
+
+            String[] parsedStrings = DictStringParser.splitAtoms(definitionStatus.getDetails()); // handle word/db
+            String wordToAdd = parsedStrings[0];
+            String databaseName = parsedStrings[1];
+            definitionToAdd = new Definition(wordToAdd, databaseMap.get(databaseName));
+
+            definitionText.setLength(0); // read through actual definition
+            while (true) {
+                readTextLine();
+                if (input.isTerminator()) break;
+                input.appendLine(definitionText);
+                definitionText.append('\n');
+            }
+            definitionToAdd.setDefinition(definitionText.toString());
+            set.add(definitionToAdd);
+            if (consumer != null) consumer.accept(definitionToAdd);
+        }
+
+        Status completionStatus = readStatus();
+        handleStatus(completionStatus);
+
+        return set;
+    }
+
+    private Set<String> readMatches() throws Exception {
+        Set<String> set = new LinkedHashSet<>();
+
+        Status matchStatus = readFirstStatus();
+        if (!handleStatus(matchStatus)) {
+            return set;
+        }
+
+        while (true) {
+            readTextLine();
+            if (input.isTerminator()) break;
+            lineText.setLength(0);
+            input.appendLine(lineText);
+
+            if (DictStringParser.tokenize(lineText, atomBounds) > 1) {
+                String match = DictStringParser.atom(lineText, atomBounds, 1);
+                set.add(match);
+            }
         }
 
+        Status completionStatus = readStatus();
+        handleStatus(completionStatus);
+
         return set;
     }
 
+    /**
+     * Closes the socket after a pipelined batch fails, since replies to commands that were already sent would
+     * otherwise be read as replies to later commands.
+     */
+    private void abandonPipeline() {
+        try {
+            socket.close();
+        } catch (Exception e) {
+            // ignore all exceptions
+        }
+    }
+
     /**
      * Requests and retrieves a list of all valid databases used in the server. In addition to returning the list, this
      * method also updates the local databaseMap field, which contains a mapping from database name to Database object,
      * to be used by other methods (e.g., getDefinitionMap) to return a Database object based on the name.
      *
-     * @return A collection of Database objects supported by the server.
+     * @return A collection of Database objects supported by the server. This is a snapshot, which a later reconnection
+     * does not change.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Collection<Database> getDatabaseList() throws DictConnectionException {
 
-        if (!databaseMap.isEmpty()) return databaseMap.values();
+        if (!databaseMap.isEmpty()) return List.copyOf(databaseMap.values());
 
-        output.println("show db");
+        return retrying(() -> {
+            send("show db");
 
-        try {
-            Status databaseStatus = Status.readStatus(input);
+            Status databaseStatus = readFirstStatus();
             if (!handleStatus(databaseStatus)) {
-                return databaseMap.values();
+                return List.copyOf(databaseMap.values());
             }
 
-            String fromServer;
-            while ((fromServer = input.readLine()) != null) {
-                String[] parsedStrings = DictStringParser.splitAtoms(fromServer);
+            while (true) {
+                readTextLine();
+                if (input.isTerminator()) break;
+                String[] parsedStrings = DictStringParser.splitAtoms(input.lineString());
 
                 if (parsedStrings.length > 1) {
                     String databaseName = parsedStrings[0];
                     String databaseDescription = parsedStrings[1];
                     databaseMap.put(databaseName, new Database(databaseName, databaseDescription));
-                } else { // when . is encountered
-                    break;
                 }
             }
 
-            Status completionStatus = Status.readStatus(input);
+            Status completionStatus = readStatus();
             handleStatus(completionStatus);
-        } catch (Exception e) {
-            throw new DictConnectionException(e);
-        }
-
-        return databaseMap.values();
+            recordReply(DictMetrics.Command.SHOW, sentNanos);
+            return List.copyOf(databaseMap.values());
+        });
     }
 
     /**
-     * Requests and retrieves a list of all valid matching strategies supported by the server.
+     * Requests and retrieves a list of all valid matching strategies supported by the server. The list is retrieved
+     * once per connection, like the list of databases.
      *
      * @return A set of MatchingStrategy objects supported by the server.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        if (strategies == null) strategies = retrying(this::readStrategyList);
+        return new LinkedHashSet<>(strategies);
+    }
+
+    private Set<MatchingStrategy> readStrategyList() throws Exception {
         Set<MatchingStrategy> set = new LinkedHashSet<>();
 
-        output.println("show strat");
+        send("show strat");
 
-        try {
-            Status strategyStatus = Status.readStatus(input);
-            if (!handleStatus(strategyStatus)) {
-                return set;
-            }
+        Status strategyStatus = readFirstStatus();
+        if (!handleStatus(strategyStatus)) {
+            return set;
+        }
 
-            String fromServer;
-            while ((fromServer = input.readLine()) != null) {
-                String[] parsedStrings = DictStringParser.splitAtoms(fromServer);
+        while (true) {
+            readTextLine();
+            if (input.isTerminator()) break;
+            String[] parsedStrings = DictStringParser.splitAtoms(input.lineString());
 
-                if (parsedStrings.length > 1) {
-                    String matchingStrategyName = parsedStrings[0];
-                    String matchingStrategyDescription = parsedStrings[1];
-                    set.add(new MatchingStrategy(matchingStrategyName, matchingStrategyDescription));
-                } else { // when . is encountered
-                    break;
-                }
+            if (parsedStrings.length > 1) {
+                String matchingStrategyName = parsedStrings[0];
+                String matchingStrategyDescription = parsedStrings[1];
+                set.add(new MatchingStrategy(matchingStrategyName, matchingStrategyDescription));
             }
+        }
 
-            Status completionStatus = Status.readStatus(input);
-            handleStatus(completionStatus);
+        Status completionStatus = readStatus();
+        handleStatus(completionStatus);
+        recordReply(DictMetrics.Command.SHOW, sentNanos);
+
+        return set;
+    }
+
+    private void send(String command) {
+        output.println(command);
+        sentNanos = System.nanoTime();
+        trace.sent(command);
+    }
+
+    private Status readStatus() throws Exception {
+        Status status = Status.readStatus(input);
+        trace.status(status.getStatusCode(), status.getDetails());
+        return status;
+    }
+
+    private void readTextLine() throws Exception {
+        input.readLine();
+        if (ProtocolTrace.isEnabled(ProtocolTrace.Level.TEXT))
+            trace.text(input.lineString());
+    }
+
+    /**
+     * Wraps an exception that interrupted a command, writing the trace of this connection to the error output. Unless
+     * the server replied with an error status, part of the reply may still be unread, so the socket is closed: the
+     * connection is then discarded by its pool, or replaced before its next command.
+     */
+    private DictConnectionException failure(Exception e) {
+        trace.failed(e);
+        if (!errorReplyRead) abandonPipeline();
+        errorReplyRead = false;
+        return new DictConnectionException(e);
+    }
+
+    /**
+     * Runs a command, first replacing the socket if it is known to be closed. Every command sent by this class only
+     * reads data from the server, so a command interrupted because the server dropped the connection (typically
+     * after an idle timeout) is sent once more on a new socket. Errors reported by the server are not retried, and
+     * neither are commands whose thread was interrupted (e.g., a cancelled task), since the socket was closed on
+     * purpose.
+     */
+    private <T> T retrying(Exchange<T> exchange) throws DictConnectionException {
+        if (isClosed()) reconnect();
+
+        errorReplyRead = false;
+        try {
+            return exchange.run();
         } catch (Exception e) {
-            throw new DictConnectionException(e);
+            if (!isDisconnect(e)) throw failure(e);
         }
 
-        return set;
+        reconnect();
+        try {
+            return exchange.run();
+        } catch (Exception e) {
+            throw failure(e);
+        }
+    }
+
+    private static boolean isDisconnect(Exception e) {
+        if (Thread.currentThread().isInterrupted()) return false;
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClosedByInterruptException || cause instanceof InterruptedIOException) return false;
+            if (cause instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    private interface Exchange<T> {
+        T run() throws Exception;
     }
 
-    private String formatWord(String word) {
-        return word.contains(" ") ?
-                "\"" + word + "\"" :
-                word;
+    private Status readFirstStatus() throws Exception {
+        Status status = readStatus();
+        firstByteNanos = System.nanoTime();
+        return status;
+    }
+
+    /**
+     * Records the reply that was just read completely, together with the bytes and lines exchanged since the
+     * previous reply was recorded.
+     *
+     * @param sentNanos System.nanoTime when the command was sent.
+     */
+    private void recordReply(DictMetrics.Command command, long sentNanos) {
+        long bytesIn = input.getBytesRead(), bytesOut = outputCounter.count, lines = input.getLinesRead();
+        DictMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordCommand(command, sentNanos, firstByteNanos, System.nanoTime(), lines - recordedLines);
+            metrics.recordBytesIn(bytesIn - recordedBytesIn);
+            metrics.recordBytesOut(bytesOut - recordedBytesOut);
+        }
+        recordedBytesIn = bytesIn;
+        recordedBytesOut = bytesOut;
+        recordedLines = lines;
+    }
+
+    private String defineCommand(String word, Database database) throws DictConnectionException {
+        return "define " + database.getName() + " " + formatWord(word);
+    }
+
+    private String matchCommand(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return "match " + database.getName() + " " + strategy.getName() + " " + formatWord(word);
+    }
+
+    private String formatWord(String word) throws DictConnectionException {
+        if (!DictStringParser.isValidWord(word))
+            throw new DictConnectionException("Invalid word: control characters can't be sent to the server");
+        return DictStringParser.quote(word);
     }
 
     /**
@@ -274,7 +822,9 @@ public class DictionaryConnection {
      * @throws Exception
      */
     private boolean handleStatus(Status status) throws Exception {
-        System.out.println(status.getStatusCode() + " " + status.getDetails());
+        DictMetrics metrics = this.metrics;
+        if (metrics != null) metrics.recordStatus(status.getStatusCode());
+        errorReplyRead = status.isNegativeReply();
 
         switch (status.getStatusCode()) {
             case 550:
@@ -293,4 +843,27 @@ public class DictionaryConnection {
         }
         return true; // Notable statuses 150, 151, 152, 220, 250
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the bytes written to the socket, so the traffic of each command can be recorded.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.cache.DefinitionCache;
+import ca.ubc.cs317.dict.cache.MatchCache;
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a bounded set of DictionaryConnection objects to a single DICT server, so that independent requests (e.g.,
+ * a long definition and an autocomplete match) can use separate sockets instead of waiting for each other.
+ */
+public class DictionaryConnectionPool {
+
+    public static final int DEFAULT_MIN_CONNECTIONS = 1;
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 5000;
+
+    private final String host;
+    private final int port;
+    private final int minConnections;
+    private final int maxConnections;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int timeoutMillis;
+
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private ScheduledFuture<?> keepAlive;
+    private long keepAliveMillis;
+    private volatile DefinitionCache definitionCache;
+    private volatile MatchCache matchCache;
+    private volatile KnownLists knownLists;
+    private int openConnections = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a new pool for a DICT server using an explicit host and port number. The minimum number of connections
+     * is established immediately, so that connection problems are reported to the caller right away.
+     *
+     * @param host              Name of the host where the DICT server is running
+     * @param port              Port number used by the DICT server
+     * @param minConnections    Number of connections kept open even when idle.
+     * @param maxConnections    Maximum number of connections open at the same time.
+     * @param idleTimeoutMillis Time after which an idle connection above the minimum is closed.
+     * @throws DictConnectionException If the initial connections can't be established.
+     */
+    public DictionaryConnectionPool(String host, int port, int minConnections, int maxConnections,
+                                    long idleTimeoutMillis) throws DictConnectionException {
+        this(host, port, minConnections, maxConnections, idleTimeoutMillis, DictionaryConnection.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a new pool whose connections use the given connect and read timeout (see DictionaryConnection).
+     *
+     * @param timeoutMillis Connect and read timeout of the connections, in milliseconds.
+     * @throws DictConnectionException If the initial connections can't be established.
+     */
+    public DictionaryConnectionPool(String host, int port, int minConnections, int maxConnections,
+                                    long idleTimeoutMillis, int timeoutMillis) throws DictConnectionException {
+        if (minConnections < 0 || maxConnections < 1 || minConnections > maxConnections)
+            throw new IllegalArgumentException("Invalid pool size: " + minConnections + "-" + maxConnections);
+        this.host = host;
+        this.port = port;
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+        this.timeoutMillis = timeoutMillis;
+
+        try {
+            for (int i = 0; i < minConnections; i++) {
+                idle.push(new IdleConnection(openConnection()));
+                openConnections++;
+            }
+        } catch (DictConnectionException e) {
+            for (IdleConnection candidate : idle)
+                candidate.connection.close();
+            throw e;
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dict-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new pool for a DICT server using the default pool sizes.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @throws DictConnectionException If the initial connections can't be established.
+     */
+    public DictionaryConnectionPool(String host, int port) throws DictConnectionException {
+        this(host, port, DEFAULT_MIN_CONNECTIONS, DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Checks out a connection from the pool. An idle connection is reused if one is available, a new connection is
+     * opened if the pool is below its maximum size, and otherwise this method waits until a connection is returned.
+     * Connections that have been idle for a while are validated before being handed out.
+     *
+     * @return A connection to be used exclusively by the caller until it is passed to release.
+     * @throws DictConnectionException If a new connection can't be established or the pool has been closed.
+     */
+    public DictionaryConnection borrow() throws DictConnectionException {
+        while (true) {
+            IdleConnection candidate;
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && openConnections >= maxConnections) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new DictConnectionException("Interrupted while waiting for a connection", e);
+                    }
+                }
+                if (closed)
+                    throw new DictConnectionException("Connection pool is closed");
+                candidate = idle.poll();
+                if (candidate == null)
+                    openConnections++; // reserve a slot for the connection opened below
+            }
+
+            if (candidate == null) {
+                try {
+                    return openConnection();
+                } catch (DictConnectionException e) {
+                    discarded();
+                    throw e;
+                }
+            }
+
+            if (candidate.isFresh(validationIntervalMillis) || candidate.connection.isHealthy())
+                return candidate.connection;
+
+            candidate.connection.close();
+            discarded();
+        }
+    }
+
+    /**
+     * Checks out a connection only if it can be done without waiting and without taking one of the last connections
+     * of the pool, so that background work (e.g., prefetching) never delays requests made with borrow.
+     *
+     * @param reserve Number of connections that must remain available to borrow after this one is checked out.
+     * @return A connection to be used exclusively by the caller until it is passed to release, or null if none is
+     * available.
+     * @throws DictConnectionException If a new connection can't be established or the pool has been closed.
+     */
+    public DictionaryConnection tryBorrow(int reserve) throws DictConnectionException {
+        IdleConnection candidate;
+        synchronized (this) {
+            if (closed)
+                throw new DictConnectionException("Connection pool is closed");
+            if (idle.size() + maxConnections - openConnections <= reserve)
+                return null;
+            candidate = idle.poll();
+            if (candidate == null)
+                openConnections++;
+        }
+
+        if (candidate == null) {
+            try {
+                return openConnection();
+            } catch (DictConnectionException e) {
+                discarded();
+                throw e;
+            }
+        }
+
+        if (candidate.isFresh(validationIntervalMillis) || candidate.connection.isHealthy())
+            return candidate.connection;
+
+        candidate.connection.close();
+        discarded();
+        return null;
+    }
+
+    /**
+     * Returns a connection previously obtained with borrow. Connections whose socket has been closed are discarded
+     * instead of being made available again.
+     *
+     * @param connection The connection being returned.
+     */
+    public void release(DictionaryConnection connection) {
+        if (connection == null) return;
+        boolean discard;
+        synchronized (this) {
+            discard = closed || connection.isClosed();
+            if (!discard) {
+                connection.setDefinitionCache(definitionCache);
+                connection.setMatchCache(matchCache);
+                idle.push(new IdleConnection(connection));
+                notifyAll();
+            }
+        }
+        if (discard) {
+            connection.close();
+            discarded();
+        }
+    }
+
+    /**
+     * Closes a connection previously obtained with borrow instead of returning it to the pool, e.g., after it has
+     * failed in a way that leaves the protocol state unknown.
+     *
+     * @param connection The connection being discarded.
+     */
+    public void invalidate(DictionaryConnection connection) {
+        if (connection == null) return;
+        connection.close();
+        discarded();
+    }
+
+    /**
+     * Closes connections that have been idle for longer than the idle timeout, keeping at least the minimum number of
+     * connections open.
+     */
+    public void evictIdle() {
+        Deque<DictionaryConnection> expired = new ArrayDeque<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            // Most recently used connections are at the head, so the oldest ones are evicted first
+            Iterator<IdleConnection> it = idle.descendingIterator();
+            while (it.hasNext() && openConnections - expired.size() > minConnections) {
+                IdleConnection candidate = it.next();
+                if (now - candidate.since < idleTimeoutMillis) break;
+                it.remove();
+                expired.add(candidate.connection);
+            }
+            openConnections -= expired.size();
+            if (!expired.isEmpty()) notifyAll();
+        }
+        for (DictionaryConnection connection : expired)
+            connection.close();
+    }
+
+    /**
+     * Keeps idle connections warm by checking them with a STATUS command whenever they haven't exchanged anything
+     * with the server for the given interval, so that servers with an idle timeout don't drop them. A connection
+     * that fails the check is reconnected in the background, so the next borrower gets a working socket.
+     *
+     * @param keepAliveMillis Interval without traffic after which an idle connection is checked, which should be
+     *                        at most two thirds of the idle timeout of the server, since checks run every half
+     *                        interval; 0 disables the checks.
+     */
+    public synchronized void setKeepAliveMillis(long keepAliveMillis) {
+        if (keepAlive != null) keepAlive.cancel(false);
+        keepAlive = null;
+        this.keepAliveMillis = keepAliveMillis;
+        if (keepAliveMillis <= 0 || closed) return;
+
+        long period = Math.max(1000, keepAliveMillis / 2);
+        keepAlive = evictor.scheduleWithFixedDelay(this::keepAliveIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * Checks the idle connections that have been quiet for longer than the keep-alive interval. Connections stay in
+     * the idle list while they are checked; a borrower that takes one in the meantime simply waits for the check to
+     * finish, since the methods of DictionaryConnection are synchronized.
+     */
+    private void keepAliveIdle() {
+        Deque<IdleConnection> quiet = new ArrayDeque<>();
+        long interval;
+        synchronized (this) {
+            interval = keepAliveMillis;
+            for (IdleConnection candidate : idle)
+                if (!candidate.isFresh(interval)) quiet.add(candidate);
+        }
+
+        for (IdleConnection candidate : quiet) {
+            try {
+                if (!candidate.connection.isHealthy()) candidate.connection.reconnect();
+                candidate.pinged = System.currentTimeMillis();
+            } catch (DictConnectionException e) {
+                boolean removed;
+                synchronized (this) {
+                    removed = idle.remove(candidate);
+                }
+                if (removed) {
+                    candidate.connection.close();
+                    discarded();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and prevents new ones from being borrowed. Connections currently checked out are
+     * closed when they are returned.
+     */
+    public void close() {
+        Deque<IdleConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            openConnections -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        evictor.shutdownNow();
+        for (IdleConnection candidate : toClose)
+            candidate.connection.close();
+    }
+
+    /**
+     * Sets the definition cache shared by all connections of this pool, including those already open.
+     *
+     * @param definitionCache The cache to be used, or null to disable caching.
+     */
+    public void setDefinitionCache(DefinitionCache definitionCache) {
+        this.definitionCache = definitionCache;
+        synchronized (this) {
+            for (IdleConnection candidate : idle)
+                candidate.connection.setDefinitionCache(definitionCache);
+        }
+    }
+
+    public DefinitionCache getDefinitionCache() {
+        return definitionCache;
+    }
+
+    /**
+     * Sets the match cache shared by all connections of this pool, including those already open.
+     *
+     * @param matchCache The cache to be used, or null to disable caching.
+     */
+    public void setMatchCache(MatchCache matchCache) {
+        this.matchCache = matchCache;
+        synchronized (this) {
+            for (IdleConnection candidate : idle)
+                candidate.connection.setMatchCache(matchCache);
+        }
+    }
+
+    public MatchCache getMatchCache() {
+        return matchCache;
+    }
+
+    /**
+     * Provides the lists of databases and strategies of the server, so that connections of this pool don't request
+     * them again. The lists are only given to connections whose server identity matches, so a server replaced by a
+     * different one (e.g., after an upgrade) is still asked for its own lists.
+     *
+     * @param identity   Server identity the lists were retrieved from, as returned by
+     *                   DictionaryConnection.getServerIdentity().
+     * @param databases  The databases supported by the server.
+     * @param strategies The matching strategies supported by the server.
+     */
+    public void preload(String identity, Collection<Database> databases, Collection<MatchingStrategy> strategies) {
+        KnownLists lists = new KnownLists(identity, databases, strategies);
+        knownLists = lists;
+        Deque<IdleConnection> open;
+        synchronized (this) {
+            open = new ArrayDeque<>(idle);
+        }
+        for (IdleConnection candidate : open)
+            lists.apply(candidate.connection); // may wait for a keep-alive check, so not done while holding the lock
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public synchronized int getOpenConnections() {
+        return openConnections;
+    }
+
+    public synchronized int getIdleConnections() {
+        return idle.size();
+    }
+
+    private DictionaryConnection openConnection() throws DictConnectionException {
+        DictionaryConnection connection = new DictionaryConnection(host, port, timeoutMillis);
+        connection.setDefinitionCache(definitionCache);
+        connection.setMatchCache(matchCache);
+        KnownLists lists = knownLists;
+        if (lists != null) lists.apply(connection);
+        return connection;
+    }
+
+    private synchronized void discarded() {
+        openConnections--;
+        notifyAll();
+    }
+
+    private static class KnownLists {
+        private final String identity;
+        private final Collection<Database> databases;
+        private final Collection<MatchingStrategy> strategies;
+
+        private KnownLists(String identity, Collection<Database> databases, Collection<MatchingStrategy> strategies) {
+            this.identity = identity;
+            this.databases = new ArrayList<>(databases);
+            this.strategies = new ArrayList<>(strategies);
+        }
+
+        private void apply(DictionaryConnection connection) {
+            if (identity.equals(connection.getServerIdentity()))
+                connection.preload(databases, strategies);
+        }
+    }
+
+    private static class IdleConnection {
+        private final DictionaryConnection connection;
+        private final long since = System.currentTimeMillis();
+        private volatile long pinged;
+
+        private IdleConnection(DictionaryConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return true if the connection was used or checked by the keep-alive less than the given time ago.
+         */
+        private boolean isFresh(long millis) {
+            return System.currentTimeMillis() - Math.max(since, pinged) < millis;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.cache.DefinitionCache;
+import ca.ubc.cs317.dict.cache.MatchCache;
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.metrics.LatencyHistogram;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends requests to the fastest of several DICT servers (e.g., mirrors of the same databases). Every server is probed
+ * in the background with a STATUS command, and the latency of probes and requests is tracked as an exponentially
+ * weighted moving average. Each request goes to the healthy server with the lowest average; if it hasn't answered
+ * after the HEDGE_PERCENTILE latency of that server, the same request is also sent to the next server, and the first
+ * answer wins. A request whose connection breaks is retried on the next server right away, and the server is
+ * considered unhealthy until a probe succeeds again. Error replies (e.g., an unknown database) are returned as they
+ * are, since another server would most likely give the same answer.
+ */
+public class DictionaryRouter implements DictionarySource {
+
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 5000;
+    public static final double HEDGE_PERCENTILE = 95;
+    public static final long MIN_HEDGE_DELAY_MILLIS = 10;
+    public static final long DEFAULT_HEDGE_DELAY_MILLIS = 250;
+
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final int MAX_HEDGE_SAMPLES = 1000;
+    private static final long INITIAL_PROBE_TIMEOUT_MILLIS = 3000;
+
+    private final List<Route> routes = new ArrayList<>();
+    private final int maxConnections;
+    private final int timeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService prober;
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private volatile DefinitionCache definitionCache;
+    private volatile MatchCache matchCache;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a router and probes every server once, waiting a few seconds at most for the probes to complete.
+     *
+     * @param servers        Servers as "host" or "host:port", in order of preference when their latency is unknown.
+     * @param maxConnections Maximum number of connections open to each server.
+     * @param probeInterval  Time between probes of each server, in milliseconds.
+     */
+    public DictionaryRouter(List<String> servers, int maxConnections, long probeInterval) {
+        this(servers, maxConnections, probeInterval, DictionaryConnection.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a router whose connections use the given connect and read timeout. A server that stops answering
+     * fails the requests and probes sent to it once the timeout expires, and is then considered unhealthy.
+     *
+     * @param timeoutMillis Connect and read timeout of the connections, in milliseconds.
+     */
+    public DictionaryRouter(List<String> servers, int maxConnections, long probeInterval, int timeoutMillis) {
+        if (servers.isEmpty())
+            throw new IllegalArgumentException("No servers");
+        this.maxConnections = maxConnections;
+        this.timeoutMillis = timeoutMillis;
+        for (String server : servers) {
+            int colon = server.lastIndexOf(':');
+            routes.add(colon < 0 ? new Route(server.trim(), DictionaryConnection.DEFAULT_PORT) :
+                    new Route(server.substring(0, colon).trim(), Integer.parseInt(server.substring(colon + 1).trim())));
+        }
+
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "dict-router");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dict-router-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Future<?>> probes = probeAll();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(INITIAL_PROBE_TIMEOUT_MILLIS);
+        for (Future<?> probe : probes) {
+            try {
+                probe.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // the server stays unhealthy until a later probe succeeds
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        prober.scheduleWithFixedDelay(this::probeAll, probeInterval, probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a router using the default probe interval.
+     *
+     * @param servers        Servers as "host" or "host:port".
+     * @param maxConnections Maximum number of connections open to each server.
+     */
+    public DictionaryRouter(List<String> servers, int maxConnections) {
+        this(servers, maxConnections, DEFAULT_PROBE_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        DefinitionCache cache = definitionCache;
+        Collection<Definition> cached = cache == null ? null : cache.get(word, database);
+        if (cached != null) return cached;
+        // Cache hits are answered here, so they don't count as fast replies of a server
+        return execute(connection -> connection.getDefinitions(word, database));
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        MatchCache cache = matchCache;
+        Set<String> cached = cache == null ? null : cache.get(word, strategy, database);
+        if (cached != null) return cached;
+        return execute(connection -> connection.getMatchList(word, strategy, database));
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return execute(connection -> new ArrayList<>(connection.getDatabaseList()));
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return execute(DictionaryConnection::getStrategyList);
+    }
+
+    /**
+     * @return The pool of the server that currently has the lowest latency, for work that must stay on one server
+     * (e.g., pipelined batches).
+     * @throws DictConnectionException If no server is reachable.
+     */
+    public DictionaryConnectionPool getFastestPool() throws DictConnectionException {
+        for (Route route : rank()) {
+            DictionaryConnectionPool pool = route.pool;
+            if (pool != null && route.healthy) return pool;
+        }
+        throw new DictConnectionException("No server available");
+    }
+
+    /**
+     * Sets the definition cache consulted before routing a request, and shared by the connections to all servers.
+     *
+     * @param definitionCache The cache to be used, or null to disable caching.
+     */
+    public void setDefinitionCache(DefinitionCache definitionCache) {
+        this.definitionCache = definitionCache;
+        for (Route route : routes) {
+            DictionaryConnectionPool pool = route.pool;
+            if (pool != null) pool.setDefinitionCache(definitionCache);
+        }
+    }
+
+    /**
+     * Sets the match cache consulted before routing a request, and shared by the connections to all servers.
+     *
+     * @param matchCache The cache to be used, or null to disable caching.
+     */
+    public void setMatchCache(MatchCache matchCache) {
+        this.matchCache = matchCache;
+        for (Route route : routes) {
+            DictionaryConnectionPool pool = route.pool;
+            if (pool != null) pool.setMatchCache(matchCache);
+        }
+    }
+
+    public DefinitionCache getDefinitionCache() {
+        return definitionCache;
+    }
+
+    public MatchCache getMatchCache() {
+        return matchCache;
+    }
+
+    /**
+     * @return The number of requests that were also sent to a second server because the first one was slow.
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return The number of requests retried on another server after a failure.
+     */
+    public long getFailoverCount() {
+        return failovers.sum();
+    }
+
+    /**
+     * @return One line per server with its health, average latency and hedging threshold.
+     */
+    public String getStatus() {
+        StringBuilder status = new StringBuilder();
+        for (Route route : rank()) {
+            status.append(String.format(Locale.ROOT, "%s:%d %s avg=%.1fms hedge after %dms%n", route.host, route.port,
+                    route.healthy ? "up" : "down", route.averageNanos / 1e6,
+                    TimeUnit.NANOSECONDS.toMillis(route.hedgeDelayNanos())));
+        }
+        return status.toString();
+    }
+
+    /**
+     * Stops probing and closes the connections to all servers. Requests in progress may fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        prober.shutdownNow();
+        executor.shutdownNow();
+        for (Route route : routes) {
+            DictionaryConnectionPool pool = route.pool;
+            if (pool != null) pool.close();
+        }
+    }
+
+    /**
+     * Runs a request on the fastest server, hedging to the next one if it is slow and failing over to the others if
+     * it fails.
+     */
+    private <T> T execute(Request<T> request) throws DictConnectionException {
+        if (closed)
+            throw new DictConnectionException("Router is closed");
+        Attempts<T> attempts = new Attempts<>(rank(), request);
+        attempts.launch();
+        try {
+            try {
+                return attempts.result.get(attempts.routes.get(0).hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (attempts.launch()) hedges.increment();
+            }
+            return attempts.result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof DictConnectionException ? (DictConnectionException) cause : new DictConnectionException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while waiting for a server", e);
+        }
+    }
+
+    /**
+     * @return Healthy servers from the lowest to the highest average latency, followed by unhealthy servers, in their
+     * configured order, as a last resort.
+     */
+    private List<Route> rank() {
+        List<Route> healthy = new ArrayList<>(), unhealthy = new ArrayList<>();
+        for (Route route : routes)
+            (route.healthy ? healthy : unhealthy).add(route);
+        healthy.sort(Comparator.comparingDouble(route -> route.averageNanos == 0 ? Double.MAX_VALUE : route.averageNanos));
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    private List<Future<?>> probeAll() {
+        List<Future<?>> probes = new ArrayList<>();
+        for (Route route : routes) {
+            if (route.probing) continue; // a probe stuck on an unreachable host must not pile up
+            route.probing = true;
+            probes.add(executor.submit(() -> {
+                try {
+                    route.probe();
+                } finally {
+                    route.probing = false;
+                }
+            }));
+        }
+        return probes;
+    }
+
+    private static boolean timedOut(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) return true;
+        }
+        return false;
+    }
+
+    private interface Request<T> {
+        T apply(DictionaryConnection connection) throws DictConnectionException;
+    }
+
+    /**
+     * Thrown by Route.run when the server answered with an error, which isn't retried on another server.
+     */
+    private static class ErrorReply extends DictConnectionException {
+        private static final long serialVersionUID = 1L;
+
+        ErrorReply(DictConnectionException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * The attempts of one request: the servers are tried in ranking order, one more each time launch is called or
+     * an attempt fails, and the first successful attempt completes the result.
+     */
+    private class Attempts<T> {
+        final List<Route> routes;
+        final Request<T> request;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private int next = 0;
+        private int running = 0;
+
+        Attempts(List<Route> routes, Request<T> request) {
+            this.routes = routes;
+            this.request = request;
+        }
+
+        /**
+         * @return true if a new attempt was started, false if every server has already been tried.
+         */
+        synchronized boolean launch() {
+            if (next >= routes.size() || result.isDone()) return false;
+            Route route = routes.get(next++);
+            running++;
+            try {
+                executor.execute(() -> attempt(route));
+            } catch (RejectedExecutionException e) {
+                running--;
+                result.completeExceptionally(new DictConnectionException("Router is closed"));
+            }
+            return true;
+        }
+
+        private void attempt(Route route) {
+            try {
+                result.complete(route.run(request));
+            } catch (ErrorReply e) {
+                synchronized (this) {
+                    running--;
+                }
+                result.completeExceptionally(e.getCause());
+            } catch (DictConnectionException | RuntimeException e) {
+                synchronized (this) {
+                    running--;
+                    if (result.isDone()) return;
+                    if (launch()) {
+                        failovers.increment();
+                    } else if (running == 0) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A server, with its pool of connections and its latency statistics.
+     */
+    private class Route {
+        final String host;
+        final int port;
+        volatile DictionaryConnectionPool pool;
+        volatile boolean healthy = false;
+        volatile boolean probing = false;
+        volatile double averageNanos = 0;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Route(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        <T> T run(Request<T> request) throws DictConnectionException {
+            DictionaryConnectionPool pool;
+            DictionaryConnection connection;
+            try {
+                pool = pool();
+                connection = pool.borrow();
+            } catch (DictConnectionException e) {
+                healthy = false;
+                throw e;
+            }
+
+            long start = System.nanoTime();
+            boolean usable = false;
+            try {
+                T result = request.apply(connection);
+                record(System.nanoTime() - start);
+                usable = true;
+                return result;
+            } catch (DictConnectionException e) {
+                // An error reply (e.g., unknown database) leaves the connection open and usable; a broken one doesn't,
+                // and neither does a server that stopped answering
+                if (connection.isClosed() || timedOut(e)) {
+                    healthy = false;
+                    throw e;
+                }
+                usable = true;
+                throw new ErrorReply(e);
+            } finally {
+                if (usable) pool.release(connection);
+                else pool.invalidate(connection);
+            }
+        }
+
+        /**
+         * Measures the time taken by a STATUS command, opening the pool first if needed.
+         */
+        void probe() {
+            try {
+                DictionaryConnectionPool pool = pool();
+                DictionaryConnection connection = pool.borrow();
+                long start = System.nanoTime();
+                boolean ok = connection.isHealthy();
+                long elapsed = System.nanoTime() - start;
+                if (ok) {
+                    updateAverage(elapsed);
+                    pool.release(connection);
+                } else {
+                    pool.invalidate(connection);
+                }
+                healthy = ok;
+            } catch (DictConnectionException e) {
+                healthy = false;
+            }
+        }
+
+        private synchronized DictionaryConnectionPool pool() throws DictConnectionException {
+            if (pool == null) {
+                if (closed) throw new DictConnectionException("Router is closed");
+                DictionaryConnectionPool created = new DictionaryConnectionPool(host, port,
+                        DictionaryConnectionPool.DEFAULT_MIN_CONNECTIONS, maxConnections,
+                        DictionaryConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, timeoutMillis);
+                created.setDefinitionCache(definitionCache);
+                created.setMatchCache(matchCache);
+                pool = created;
+            }
+            return pool;
+        }
+
+        private void record(long nanos) {
+            updateAverage(nanos);
+            if (latency.getCount() >= MAX_HEDGE_SAMPLES) latency.reset(); // keep the threshold recent
+            latency.record(nanos);
+        }
+
+        private synchronized void updateAverage(long nanos) {
+            averageNanos = averageNanos == 0 ? nanos : averageNanos + EWMA_WEIGHT * (nanos - averageNanos);
+        }
+
+        /**
+         * @return How long to wait for this server before also sending the request to the next one.
+         */
+        long hedgeDelayNanos() {
+            if (latency.getCount() < MIN_HEDGE_SAMPLES)
+                return TimeUnit.MILLISECONDS.toNanos(DEFAULT_HEDGE_DELAY_MILLIS);
+            long percentile = (long) (latency.getPercentileMillis(HEDGE_PERCENTILE) * 1e6);
+            return Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_HEDGE_DELAY_MILLIS), percentile);
+        }
+    }
+}
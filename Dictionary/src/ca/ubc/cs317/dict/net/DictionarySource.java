@@ -0,0 +1,27 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * The operations of a DICT server used by the client, implemented either by a connection to a remote server or by a
+ * local engine. Database names '*' (all databases) and '!' (first database with a result) have the same meaning for
+ * every implementation.
+ */
+public interface DictionarySource {
+
+    Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException;
+
+    Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException;
+
+    Collection<Database> getDatabaseList() throws DictConnectionException;
+
+    Set<MatchingStrategy> getStrategyList() throws DictConnectionException;
+
+    void close();
+}
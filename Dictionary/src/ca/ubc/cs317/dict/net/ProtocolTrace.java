@@ -0,0 +1,234 @@
+package ca.ubc.cs317.dict.net;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the most recent commands and reply lines of a connection in a preallocated ring buffer, so the exchange that
+ * led to an error can be inspected without logging every line as it happens. Recording an entry doesn't lock or
+ * allocate: it claims a slot with an atomic increment and stores references to strings that already exist (the
+ * command and the status details), except at the TEXT level, where reply lines have to be decoded.
+ *
+ * The level is shared by all connections and can be changed at any time, through setLevel, the dictionary.trace
+ * system property, or JMX. When the level is OFF, every recording method returns after reading it.
+ */
+public class ProtocolTrace {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final String OBJECT_NAME = "ca.ubc.cs317.dict:type=ProtocolTrace";
+
+    public enum Level {
+        /** Nothing is recorded. */
+        OFF,
+        /** Commands sent and status lines received. */
+        STATUS,
+        /** Commands sent and every line received, including definitions and matches. */
+        TEXT
+    }
+
+    private static final byte SENT = '>';
+    private static final byte RECEIVED = '<';
+    private static final byte EVENT = '!';
+
+    private static volatile Level level = parseLevel(System.getProperty("dictionary.trace"), Level.OFF);
+    private static volatile Consumer<String> errorOutput = System.err::print;
+    private static final Set<ProtocolTrace> traces = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final String name;
+    private final int mask;
+    private final long[] times;
+    private final byte[] kinds;
+    private final int[] codes;
+    private final String[] texts;
+    // Sequence number + 1 of the entry in each slot, or -1 while the slot is being written
+    private final AtomicLongArray published;
+    private final AtomicLong next = new AtomicLong();
+    private final long baseNanos = System.nanoTime();
+    private final long baseMillis = System.currentTimeMillis();
+
+    /**
+     * @param name Name of the connection, shown in dumps.
+     */
+    public ProtocolTrace(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param name     Name of the connection, shown in dumps.
+     * @param capacity Number of entries kept; rounded up to a power of two.
+     */
+    public ProtocolTrace(String name, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.name = name;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.kinds = new byte[size];
+        this.codes = new int[size];
+        this.texts = new String[size];
+        this.published = new AtomicLongArray(size);
+        traces.add(this);
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level level) {
+        ProtocolTrace.level = level;
+    }
+
+    /**
+     * @return true if entries of the given level are currently recorded. Callers use this to avoid building the text
+     * of an entry that would be discarded.
+     */
+    public static boolean isEnabled(Level required) {
+        return required.compareTo(level) <= 0 && required != Level.OFF;
+    }
+
+    /**
+     * Sets where traces are written when a connection fails. By default they are printed to the standard error.
+     *
+     * @param output Receives each dump, or null to disable dumping on errors.
+     */
+    public static void setErrorOutput(Consumer<String> output) {
+        errorOutput = output;
+    }
+
+    /**
+     * Records a command sent to the server, if the level is at least STATUS.
+     */
+    public void sent(String command) {
+        if (isEnabled(Level.STATUS)) record(SENT, -1, command);
+    }
+
+    /**
+     * Records a status line received from the server, if the level is at least STATUS.
+     */
+    public void status(int code, String details) {
+        if (isEnabled(Level.STATUS)) record(RECEIVED, code, details);
+    }
+
+    /**
+     * Records a text line received from the server, if the level is TEXT.
+     */
+    public void text(String line) {
+        if (isEnabled(Level.TEXT)) record(RECEIVED, -1, line);
+    }
+
+    /**
+     * Records that the connection failed and writes the trace to the error output, if the level is not OFF.
+     *
+     * @param cause The reason of the failure.
+     */
+    public void failed(Throwable cause) {
+        if (!isEnabled(Level.STATUS)) return;
+        record(EVENT, -1, String.valueOf(cause));
+        Consumer<String> output = errorOutput;
+        if (output != null) output.accept(dump());
+    }
+
+    private void record(byte kind, int code, String text) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        published.set(slot, -1);
+        VarHandle.storeStoreFence();
+        times[slot] = System.nanoTime();
+        kinds[slot] = kind;
+        codes[slot] = code;
+        texts[slot] = text;
+        published.set(slot, sequence + 1);
+    }
+
+    /**
+     * @return The entries currently in the buffer, oldest first, one per line. Entries overwritten while the dump is
+     * taken are left out.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append("--- ").append(name).append(" ---\n");
+        long end = next.get();
+        for (long sequence = Math.max(0, end - mask - 1); sequence < end; sequence++) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence + 1) continue;
+            long time = times[slot];
+            byte kind = kinds[slot];
+            int code = codes[slot];
+            String text = texts[slot];
+            VarHandle.loadLoadFence();
+            if (published.get(slot) != sequence + 1) continue;
+
+            long millis = baseMillis + (time - baseNanos) / 1_000_000;
+            dump.append(String.format("%tT.%<tL %c ", millis, (char) kind));
+            if (code >= 0) dump.append(code).append(' ');
+            dump.append(text).append('\n');
+        }
+        return dump.toString();
+    }
+
+    /**
+     * @return The traces of all connections that haven't been garbage collected.
+     */
+    public static String dumpAll() {
+        List<ProtocolTrace> snapshot;
+        synchronized (traces) {
+            snapshot = new ArrayList<>(traces);
+        }
+        StringBuilder dump = new StringBuilder();
+        for (ProtocolTrace trace : snapshot)
+            dump.append(trace.dump());
+        return dump.toString();
+    }
+
+    /**
+     * Registers the trace level and dumps with the platform MBean server. Registering again has no effect.
+     *
+     * @throws JMException If the MBean can't be registered.
+     */
+    public static void registerMBean() throws JMException {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Control(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        }
+    }
+
+    private static Level parseLevel(String name, Level defaultLevel) {
+        if (name == null) return defaultLevel;
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultLevel;
+        }
+    }
+
+    private static class Control implements ProtocolTraceMXBean {
+        @Override
+        public String getLevel() {
+            return level.name();
+        }
+
+        @Override
+        public void setLevel(String name) {
+            Level parsed = parseLevel(name, null);
+            if (parsed == null) throw new IllegalArgumentException("Unknown trace level: " + name);
+            level = parsed;
+        }
+
+        @Override
+        public String dump() {
+            return dumpAll();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * Management interface of the protocol trace, registered as ca.ubc.cs317.dict:type=ProtocolTrace.
+ */
+public interface ProtocolTraceMXBean {
+
+    /**
+     * @return The name of the current trace level (OFF, STATUS or TEXT).
+     */
+    String getLevel();
+
+    void setLevel(String level);
+
+    /**
+     * @return The recent traffic of every open connection.
+     */
+    String dump();
+}
@@ -20,17 +20,17 @@ public class Status {
     private String details;
 
     private Status(String line) throws DictConnectionException {
-        String[] components = line.split(" ", 2);
-        if (components.length < 2)
+        if (line == null)
+            throw new DictConnectionException("Connection closed by server");
+        if (line.length() < 4 || line.charAt(3) != ' ')
             throw new DictConnectionException("Invalid status line");
-        try {
-            this.statusCode = Integer.parseInt(components[0]);
-            if (this.statusCode < 100 || this.statusCode > 599)
-                throw new DictConnectionException("Invalid status code received: " + this.statusCode);
-        } catch (NumberFormatException ex) {
-            throw new DictConnectionException("Status code number expected (" + line + ")", ex);
-        }
-        this.details = components[1];
+        this.statusCode = parseCode(line.charAt(0), line.charAt(1), line.charAt(2), line);
+        this.details = line.substring(4);
+    }
+
+    private Status(int statusCode, String details) {
+        this.statusCode = statusCode;
+        this.details = details;
     }
 
     public static Status readStatus(BufferedReader input) throws DictConnectionException {
@@ -41,6 +41,44 @@ public class Status {
         }
     }
 
+    /**
+     * Reads the next line from a decoder and parses it as a status line.
+     *
+     * @param input Decoder from which the line is read.
+     * @return The status received from the server.
+     * @throws DictConnectionException If the line can't be read or is not a valid status line.
+     */
+    public static Status readStatus(DictReplyDecoder input) throws DictConnectionException {
+        try {
+            input.readLine();
+        } catch (IOException ex) {
+            throw new DictConnectionException(ex);
+        }
+        return input.parseStatus();
+    }
+
+    /**
+     * Parses a status line stored in a byte array, decoding only the details part into a String.
+     *
+     * @param line   Array containing the line.
+     * @param offset Index of the first byte of the line.
+     * @param length Length of the line, excluding the line terminator.
+     * @return The corresponding Status.
+     * @throws DictConnectionException If the line is not a valid status line.
+     */
+    static Status parse(byte[] line, int offset, int length) throws DictConnectionException {
+        if (length < 4 || line[offset + 3] != ' ')
+            throw new DictConnectionException("Invalid status line");
+        int statusCode = parseCode((char) line[offset], (char) line[offset + 1], (char) line[offset + 2], null);
+        return new Status(statusCode, DictReplyDecoder.decode(line, offset + 4, offset + length));
+    }
+
+    private static int parseCode(char first, char second, char third, String line) throws DictConnectionException {
+        if (first < '1' || first > '5' || second < '0' || second > '9' || third < '0' || third > '9')
+            throw new DictConnectionException("Status code number expected" + (line == null ? "" : " (" + line + ")"));
+        return (first - '0') * 100 + (second - '0') * 10 + (third - '0');
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
@@ -73,6 +73,16 @@ public class DefinitionTableModel extends AbstractTableModel {
         }
     }
 
+    /**
+     * Appends a single definition to the end of the table, notifying listeners only of the inserted row.
+     *
+     * @param definition The definition to be added.
+     */
+    public void addDefinition(Definition definition) {
+        definitionList.add(definition);
+        fireTableRowsInserted(definitionList.size() - 1, definitionList.size() - 1);
+    }
+
     public void populateDefinitions(Collection<Definition> definitions) {
         definitionList.clear();
         definitionList.addAll(definitions);
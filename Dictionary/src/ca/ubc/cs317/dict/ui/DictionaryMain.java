@@ -1,27 +1,106 @@
 package ca.ubc.cs317.dict.ui;
 
+import ca.ubc.cs317.dict.cache.DefinitionCache;
+import ca.ubc.cs317.dict.cache.DiskCacheStore;
+import ca.ubc.cs317.dict.cache.LruDefinitionCache;
+import ca.ubc.cs317.dict.cache.MatchCache;
+import ca.ubc.cs317.dict.cache.PersistentDefinitionCache;
+import ca.ubc.cs317.dict.cache.PersistentMatchCache;
+import ca.ubc.cs317.dict.cache.ServerMetadata;
 import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.local.HeadwordCrawler;
+import ca.ubc.cs317.dict.local.HeadwordTrie;
+import ca.ubc.cs317.dict.local.LocalDictionary;
+import ca.ubc.cs317.dict.metrics.DictMetrics;
 import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.AsyncDictionaryConnection;
+import ca.ubc.cs317.dict.net.DatabaseFanOut;
+import ca.ubc.cs317.dict.net.DefinitionPrefetcher;
+import ca.ubc.cs317.dict.net.DictEventLoop;
 import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.DictionaryRouter;
+import ca.ubc.cs317.dict.net.DictionarySource;
+import ca.ubc.cs317.dict.net.ProtocolTrace;
 
+import javax.management.JMException;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
 public class DictionaryMain extends JFrame {
 
-    private DictionaryConnection connection;
+    private static final int DEFINITION_CACHE_ENTRIES = 1000;
+    private static final long DEFINITION_CACHE_BYTES = 16 * 1024 * 1024;
+    private static final long DEFINITION_CACHE_TTL_MILLIS = 30 * 60 * 1000;
+    private static final int MATCH_CACHE_ENTRIES = 500;
+    private static final int MATCH_CACHE_TRUNCATION_THRESHOLD = 1000;
+    private static final int POOL_MAX_CONNECTIONS = 8;
+    private static final long FAN_OUT_DEADLINE_MILLIS = 5000;
+    private static final long DISK_CACHE_BYTES = 64 * 1024 * 1024;
+    private static final long DISK_CACHE_MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    private static final long METADATA_TTL_MILLIS = 24L * 60 * 60 * 1000;
+    /**
+     * System property with the names of the databases (comma-separated, or * for all) whose headwords are retrieved
+     * after connecting, so that suggestions for them are answered locally.
+     */
+    private static final String LOCAL_HEADWORDS_PROPERTY = "dictionary.localHeadwords";
+    /**
+     * System property with the interval, in milliseconds, at which the command metrics are printed to the standard
+     * error. Metrics are always available through JMX.
+     */
+    private static final String METRICS_REPORT_PROPERTY = "dictionary.metrics.reportMillis";
+    /**
+     * System property with the interval, in milliseconds, at which idle connections are checked so that servers with
+     * an idle timeout don't drop them. Not set by default: dropped connections are reopened when next used.
+     */
+    private static final String KEEP_ALIVE_PROPERTY = "dictionary.keepAliveMillis";
+    private static final Path DISK_CACHE_FILE = Paths.get(System.getProperty("user.home"), ".dictionary-client",
+            "cache.db");
+
+    private volatile DictionaryConnectionPool pool;
+    private volatile DictionaryRouter router;
+    private volatile LocalDictionary localDictionary; // databases read from disk, for a "file:" server name
+    private DatabaseFanOut fanOut;
+    private DefinitionPrefetcher prefetcher;
+    private DictEventLoop eventLoop; // created on first use by eventLoop()
+    private volatile AsyncDictionaryConnection suggestionConnection;
+    // Looks up suggestions in the local headwords, and reopens the suggestion connection, away from the EDT
+    private final ExecutorService suggestionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dict-suggestions");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Timer keepAliveTimer;
+    private volatile boolean connected = false;
+    private SwingWorker<Session, ServerMetadata> connectWorker; // the connection being established, if any
+    private volatile DiskCacheStore diskCache;
+    private Map<String, HeadwordTrie> localHeadwords = new ConcurrentHashMap<>();
     private String serverName = "dict.org";
 
     private DefaultComboBoxModel<Database> databaseModel;
@@ -32,6 +111,7 @@ public class DictionaryMain extends JFrame {
     private JComboBox<MatchingStrategy> strategySelection;
     private WordSearchField wordSearchField;
     private JTable definitionTable;
+    private SwingWorker<Void, Definition> definitionWorker;
 
     DictionaryMain() {
         super("Dictionary");
@@ -39,11 +119,26 @@ public class DictionaryMain extends JFrame {
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if (connection == null)
-                    connection.close();
+                if (prefetcher != null)
+                    prefetcher.close();
+                if (pool != null)
+                    pool.close();
+                if (router != null)
+                    router.close();
+                if (localDictionary != null)
+                    localDictionary.close();
+                if (suggestionConnection != null)
+                    suggestionConnection.close();
+                if (diskCache != null) {
+                    try {
+                        diskCache.close();
+                    } catch (IOException ignored) {
+                    }
+                }
             }
         });
         this.setDefaultCloseOperation(EXIT_ON_CLOSE);
+        registerMetrics();
 
         JPanel optionsPanel = new JPanel(new GridBagLayout());
         GridBagConstraints c = new GridBagConstraints();
@@ -107,44 +202,110 @@ public class DictionaryMain extends JFrame {
         this.getContentPane().add(new JScrollPane(definitionTable), BorderLayout.CENTER);
     }
 
+    /**
+     * Reports a connection error. Connections reopen their socket by themselves when the server drops them, so once
+     * connected an error only means that a request failed; the server is asked again only if connecting failed.
+     */
     public void handleException(Throwable ex) {
         JOptionPane.showMessageDialog(this, "Connection error:\n" + ex.toString(), "Connection error", JOptionPane.ERROR_MESSAGE);
-        establishConnection();
+        if (!connected) establishConnection();
     }
 
     public void showDefinitions() {
+        if (!connected) return; // the connections are still being established
+
+        // The connection used for prefetching is better spent on the request the user is waiting for
+        cancelPrefetch();
 
-        new SwingWorker<Void, Void>() {
+        // Definitions still arriving for a previous search must not be added to the new one
+        if (definitionWorker != null)
+            definitionWorker.cancel(false);
+        definitionModel.populateDefinitions(Collections.<Definition>emptyList());
+
+        definitionWorker = new SwingWorker<Void, Definition>() {
             private String word = wordSearchField.getSelectedItem().toString();
+            private Database database = (Database) databaseModel.getSelectedItem();
 
             @Override
             protected Void doInBackground() throws Exception {
-                definitionModel.populateDefinitions(connection.getDefinitions(word,
-                        (Database) databaseModel.getSelectedItem()));
+                // With several servers, the router picks one (or two, if the first is slow) for the whole request;
+                // local databases answer at once
+                DictionarySource source = router != null ? router : localDictionary;
+                if (source != null) {
+                    for (Definition definition : source.getDefinitions(word, database))
+                        publish(definition);
+                    return null;
+                }
+
+                // For all databases, ask each one separately so a slow database can't hold up the others
+                if (database.getName().equals("*")) {
+                    fanOut.getDefinitions(word, definition -> publish(definition), db -> {
+                        Definition missing = new Definition(word, db);
+                        missing.setDefinition("(no answer within " + FAN_OUT_DEADLINE_MILLIS / 1000 + " seconds)");
+                        publish(missing);
+                    });
+                    return null;
+                }
+
+                DictionaryConnection connection = pool.borrow();
+                try {
+                    connection.getDefinitions(word, database, definition -> publish(definition));
+                } finally {
+                    pool.release(connection);
+                }
                 return null;
             }
 
+            @Override
+            protected void process(List<Definition> definitions) {
+                if (isCancelled()) return;
+                for (Definition definition : definitions) {
+                    definitionModel.addDefinition(definition);
+                    int i = definitionModel.getRowCount() - 1;
+                    Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
+                    definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
+                }
+            }
+
             @Override
             protected void done() {
+                if (isCancelled()) return;
                 try {
                     get(); // Just to trigger a possible exception caused by doInBackground
-                    for (int i = 0; i<definitionModel.getRowCount() ; i++) {
-                        Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
-                        definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
-                    }
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } catch (ExecutionException e) {
                     handleException(e.getCause());
                 }
             }
-        }.execute();
+        };
+        definitionWorker.execute();
 
     }
 
     public void establishConnection() {
-        if (connection != null)
-            connection.close();
+        connected = false;
+        connectWorker = null; // a connection still being established is closed when it completes
+        if (keepAliveTimer != null)
+            keepAliveTimer.stop();
+        keepAliveTimer = null;
+        if (prefetcher != null)
+            prefetcher.close();
+        prefetcher = null;
+        if (pool != null)
+            pool.close();
+        pool = null;
+        if (router != null)
+            router.close();
+        router = null;
+        fanOut = null;
+        if (localDictionary != null)
+            localDictionary.close();
+        localDictionary = null;
+        if (suggestionConnection != null)
+            suggestionConnection.close();
+        suggestionConnection = null;
+        localHeadwords = new ConcurrentHashMap<>();
 
         definitionModel.populateDefinitions(Collections.<Definition>emptyList());
         databaseModel.removeAllElements();
@@ -153,37 +314,465 @@ public class DictionaryMain extends JFrame {
         strategyModel.removeAllElements();
         wordSearchField.reset();
 
+        serverName = JOptionPane.showInputDialog(this, "Dictionary server",
+                serverName);
+        if (serverName == null) System.exit(0);
+
+        // Opening the disk cache, resolving host names and connecting all block, so they are done in the background;
+        // the lists saved by a previous run are shown as soon as they have been read
+        String name = serverName;
+        connectWorker = new SwingWorker<Session, ServerMetadata>() {
+            @Override
+            protected Session doInBackground() throws Exception {
+                Session session = new Session();
+                try {
+                    if (LocalDictionary.isLocal(name)) {
+                        // dictd databases in a local directory: no connections, so no caches, prefetching or keep-alive
+                        session.localDictionary = LocalDictionary.open(name);
+                        session.metadata = new ServerMetadata(name, Collections.emptySet(), "",
+                                session.localDictionary.getDatabaseList(), session.localDictionary.getStrategyList());
+                        return session;
+                    }
+
+                    DiskCacheStore store = openDiskCache();
+                    session.server = serverKey(name);
+                    session.snapshot = store == null ? null : ServerMetadata.load(store, session.server);
+                    if (session.snapshot != null) publish(session.snapshot);
+                    openConnections(session, name, store);
+                    if (session.snapshot == null)
+                        session.metadata = loadLists(session.pool, session.server, null);
+                    return session;
+                } catch (Exception e) {
+                    session.close();
+                    throw e;
+                }
+            }
+
+            @Override
+            protected void process(List<ServerMetadata> snapshots) {
+                if (connectWorker == this)
+                    showLists(snapshots.get(snapshots.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                Session session;
+                try {
+                    session = get();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                } catch (ExecutionException e) {
+                    if (connectWorker == this) handleException(e.getCause());
+                    return;
+                }
+                if (connectWorker != this) {
+                    session.close(); // the user moved on to another server in the meantime
+                    return;
+                }
+                connectWorker = null;
+                connected(session);
+            }
+        };
+        connectWorker.execute();
+
+        wordSearchField.grabFocus();
+    }
+
+    /**
+     * Identifies the server whose cached definitions, matches and lists are kept on disk, e.g., "dict.org:2628".
+     */
+    private static String serverKey(String serverName) {
+        if (serverName.contains(",") || serverName.contains(":")) return serverName;
+        return serverName + ":" + DictionaryConnection.DEFAULT_PORT;
+    }
+
+    /**
+     * Opens the pools (or the router, for several servers), their caches and the suggestion connection of a session.
+     * Called by the connect worker.
+     */
+    private void openConnections(Session session, String serverName, DiskCacheStore store)
+            throws DictConnectionException, IOException {
+        if (serverName.contains(",")) {
+            // Several servers (e.g., mirrors): requests go to the fastest one that is up
+            session.router = new DictionaryRouter(Arrays.asList(serverName.split(",")), POOL_MAX_CONNECTIONS);
+            session.pool = session.router.getFastestPool();
+        } else if (serverName.contains(":")) {
+            String[] serverData = serverName.split(":", 2);
+            session.pool = new DictionaryConnectionPool(serverData[0], Integer.parseInt(serverData[1]),
+                    DictionaryConnectionPool.DEFAULT_MIN_CONNECTIONS, POOL_MAX_CONNECTIONS,
+                    DictionaryConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        } else
+            session.pool = new DictionaryConnectionPool(serverName, DictionaryConnection.DEFAULT_PORT,
+                    DictionaryConnectionPool.DEFAULT_MIN_CONNECTIONS, POOL_MAX_CONNECTIONS,
+                    DictionaryConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        session.fanOut = new DatabaseFanOut(session.pool, FAN_OUT_DEADLINE_MILLIS);
+        session.prefetcher = session.router != null ? new DefinitionPrefetcher(session.router) :
+                new DefinitionPrefetcher(session.pool);
+        LruDefinitionCache definitionCache = new LruDefinitionCache(DEFINITION_CACHE_ENTRIES,
+                DEFINITION_CACHE_BYTES, DEFINITION_CACHE_TTL_MILLIS);
+        if (store != null) {
+            session.setCaches(new PersistentDefinitionCache(definitionCache, store, session.server),
+                    new PersistentMatchCache(MATCH_CACHE_ENTRIES, MATCH_CACHE_TRUNCATION_THRESHOLD, store,
+                            session.server));
+        } else {
+            session.setCaches(definitionCache, new MatchCache(MATCH_CACHE_ENTRIES, MATCH_CACHE_TRUNCATION_THRESHOLD));
+        }
+
+        // Suggestions use a non-blocking connection, so typing never waits for a definition in progress
+        session.suggestionConnection = new AsyncDictionaryConnection(eventLoop(), session.pool.getHost(),
+                session.pool.getPort());
+        session.suggestionConnection.setMatchCache(session.pool.getMatchCache());
+    }
+
+    /**
+     * Starts using a session opened by the connect worker. Called on the EDT.
+     */
+    private void connected(Session session) {
+        pool = session.pool;
+        router = session.router;
+        localDictionary = session.localDictionary;
+        fanOut = session.fanOut;
+        prefetcher = session.prefetcher;
+        suggestionConnection = session.suggestionConnection;
+        if (session.localDictionary != null) {
+            showLists(session.metadata);
+            connected = true;
+            return;
+        }
+
+        if (session.snapshot == null) {
+            showLists(session.metadata);
+            crawlHeadwords();
+        } else {
+            // The lists saved by a previous run are already shown; check them against the server in the background
+            revalidateLists(session.server, session.snapshot);
+        }
+        startKeepAlive();
+        connected = true;
+    }
+
+    /**
+     * Exposes the command metrics, the hit rates of the caches of the current server and the protocol trace through
+     * JMX, and starts printing the metrics periodically if requested with the METRICS_REPORT_PROPERTY system
+     * property.
+     */
+    private void registerMetrics() {
+        DictMetrics metrics = DictMetrics.getDefault();
+        metrics.registerCache("definitions", () -> {
+            DictionaryConnectionPool current = pool;
+            return current == null || current.getDefinitionCache() == null ? null :
+                    current.getDefinitionCache().getStats();
+        });
+        metrics.registerCache("matches", () -> {
+            DictionaryConnectionPool current = pool;
+            return current == null || current.getMatchCache() == null ? null : current.getMatchCache().getStats();
+        });
+        metrics.registerCache("disk", () -> diskCache == null ? null : diskCache.getStats());
         try {
-            serverName = JOptionPane.showInputDialog(this, "Dictionary server",
-                    serverName);
-            if (serverName == null) System.exit(0);
+            metrics.registerMBean();
+            ProtocolTrace.registerMBean();
+        } catch (JMException e) {
+            System.err.println("Metrics not registered: " + e.getMessage());
+        }
 
-            if (serverName.contains(":")) {
-                String[] serverData = serverName.split(":", 2);
-                connection = new DictionaryConnection(serverData[0], Integer.parseInt(serverData[1]));
-            } else
-                connection = new DictionaryConnection(serverName);
+        Long period = Long.getLong(METRICS_REPORT_PROPERTY);
+        if (period != null && period > 0)
+            metrics.startReporting(period, System.err::print);
+    }
 
-            for (Database db : connection.getDatabaseList()) {
-                databaseModel.addElement(db);
+    /**
+     * Opens the store that keeps cached definitions and matches across runs, the first time it is needed.
+     *
+     * @return The store, or null if it can't be opened (e.g., another instance of the client is using it), in which
+     * case only the in-memory caches are used.
+     */
+    private synchronized DiskCacheStore openDiskCache() {
+        if (diskCache == null) {
+            try {
+                diskCache = new DiskCacheStore(DISK_CACHE_FILE, DISK_CACHE_BYTES, DISK_CACHE_MAX_AGE_MILLIS);
+            } catch (IOException e) {
+                System.err.println("Disk cache disabled: " + e.getMessage());
             }
+        }
+        return diskCache;
+    }
 
-            for (MatchingStrategy strategy : connection.getStrategyList()) {
-                strategyModel.addElement(strategy);
-                if (strategy.getName().equals("prefix"))
-                    strategyModel.setSelectedItem(strategy);
+    private synchronized DictEventLoop eventLoop() throws IOException {
+        if (eventLoop == null)
+            eventLoop = new DictEventLoop();
+        return eventLoop;
+    }
+
+    /**
+     * Returns the lists of databases and strategies of the server, taken from a snapshot if the server identity
+     * hasn't changed since and the snapshot hasn't expired, and otherwise requested from the server and saved for the
+     * next run. Either way, the connections of the pool are given the lists so that they don't request them again.
+     *
+     * @param snapshot The lists saved by a previous run, or null.
+     */
+    private ServerMetadata loadLists(DictionaryConnectionPool pool, String server, ServerMetadata snapshot)
+            throws DictConnectionException {
+        DictionaryConnection connection = pool.borrow();
+        try {
+            String identity = connection.getServerIdentity();
+            ServerMetadata metadata = snapshot;
+            if (snapshot == null || !snapshot.isCurrent(identity, METADATA_TTL_MILLIS)) {
+                metadata = new ServerMetadata(identity, connection.getCapabilities(), connection.getMessageId(),
+                        connection.getDatabaseList(), connection.getStrategyList());
+                DiskCacheStore store = diskCache;
+                if (store != null) {
+                    try {
+                        metadata.save(store, server);
+                    } catch (IOException e) {
+                        // The snapshot is best effort; the lists are requested again next time
+                    }
+                }
             }
-        } catch (DictConnectionException ex) {
-            handleException(ex);
+            connection.preload(metadata.getDatabases(), metadata.getStrategies());
+            pool.preload(identity, metadata.getDatabases(), metadata.getStrategies());
+            return metadata;
+        } finally {
+            pool.release(connection);
         }
+    }
 
-        wordSearchField.grabFocus();
+    /**
+     * Checks the lists shown from a snapshot against the server, updating them if the server has changed.
+     */
+    private void revalidateLists(String server, ServerMetadata snapshot) {
+        DictionaryConnectionPool current = pool;
+        DictionaryRouter currentRouter = router;
+        new SwingWorker<ServerMetadata, Void>() {
+            @Override
+            protected ServerMetadata doInBackground() throws Exception {
+                return loadLists(fastestPool(currentRouter, current), server, snapshot);
+            }
+
+            @Override
+            protected void done() {
+                if (pool != current) return; // connected to another server in the meantime
+                try {
+                    ServerMetadata metadata = get();
+                    if (metadata != snapshot)
+                        showLists(metadata);
+                    crawlHeadwords();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } catch (ExecutionException e) {
+                    handleException(e.getCause());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Replaces the databases and strategies offered to the user, keeping the current selections if they are still
+     * available.
+     */
+    private void showLists(ServerMetadata metadata) {
+        Object selectedDatabase = databaseModel.getSelectedItem();
+        Object selectedStrategy = strategyModel.getSelectedItem();
+
+        databaseModel.removeAllElements();
+        databaseModel.addElement(new Database("*", "All databases"));
+        databaseModel.addElement(new Database("!", "Any database"));
+        for (Database db : metadata.getDatabases()) {
+            databaseModel.addElement(db);
+        }
+        if (selectedDatabase != null && databaseModel.getIndexOf(selectedDatabase) >= 0)
+            databaseModel.setSelectedItem(selectedDatabase);
+
+        strategyModel.removeAllElements();
+        for (MatchingStrategy strategy : metadata.getStrategies()) {
+            strategyModel.addElement(strategy);
+            if (strategy.getName().equals("prefix"))
+                strategyModel.setSelectedItem(strategy);
+        }
+        if (selectedStrategy != null && strategyModel.getIndexOf(selectedStrategy) >= 0)
+            strategyModel.setSelectedItem(selectedStrategy);
+    }
+
+    /**
+     * Keeps the pooled connections and the suggestion connection open while the user is idle, if requested with the
+     * KEEP_ALIVE_PROPERTY system property.
+     */
+    private void startKeepAlive() {
+        Long interval = Long.getLong(KEEP_ALIVE_PROPERTY);
+        if (interval == null || interval <= 0) return;
+
+        pool.setKeepAliveMillis(interval);
+        keepAliveTimer = new Timer((int) Math.min(Integer.MAX_VALUE, interval), e -> {
+            if (suggestionConnection != null && !suggestionConnection.isClosed())
+                suggestionConnection.ping();
+        });
+        keepAliveTimer.start();
+    }
+
+    /**
+     * Starts retrieving, in the background, the definitions of the first suggestions shown to the user, in the
+     * database currently selected.
+     *
+     * @param suggestions The suggestions, in the order they are shown.
+     */
+    public void prefetchDefinitions(Collection<String> suggestions) {
+        Database database = (Database) databaseModel.getSelectedItem();
+        if (prefetcher != null && database != null)
+            prefetcher.prefetch(suggestions, database);
+    }
+
+    public void cancelPrefetch() {
+        if (prefetcher != null)
+            prefetcher.cancel();
+    }
+
+    /**
+     * Retrieves, in the background, the headwords of the databases named in the dictionary.localHeadwords property.
+     */
+    private void crawlHeadwords() {
+        String names = System.getProperty(LOCAL_HEADWORDS_PROPERTY);
+        if (names == null || names.isEmpty()) return;
+
+        List<Database> databases = new ArrayList<>();
+        for (int i = 0; i < databaseModel.getSize(); i++) {
+            Database db = databaseModel.getElementAt(i);
+            if (db.getName().equals("*") || db.getName().equals("!")) continue;
+            if (names.equals("*") || ("," + names + ",").contains("," + db.getName() + ","))
+                databases.add(db);
+        }
+
+        boolean soundex = false;
+        for (int i = 0; i < strategyModel.getSize(); i++)
+            soundex |= strategyModel.getElementAt(i).getName().equals(HeadwordTrie.SOUNDEX);
+        boolean prepareSoundex = soundex;
+
+        DictionaryConnectionPool current = pool;
+        DictionaryRouter currentRouter = router;
+        Map<String, HeadwordTrie> headwords = localHeadwords;
+        Thread crawler = new Thread(() -> {
+            for (Database db : databases) {
+                try {
+                    // Picked again for each database, so that the crawl moves on if a server goes down
+                    DictionaryConnectionPool crawlPool = fastestPool(currentRouter, current);
+                    DictionaryConnection connection = crawlPool.borrow();
+                    try {
+                        HeadwordTrie trie = new HeadwordCrawler(connection).build(db);
+                        if (prepareSoundex) trie.prepareSoundex();
+                        headwords.put(db.getName(), trie);
+                    } finally {
+                        crawlPool.release(connection);
+                    }
+                } catch (DictConnectionException e) {
+                    // Suggestions for this database keep going to the server
+                }
+            }
+        }, "dict-headword-crawler");
+        crawler.setDaemon(true);
+        crawler.start();
     }
 
-    public Collection<String> getMatchList(String word) throws DictConnectionException {
-        return connection.getMatchList(word,
-                (MatchingStrategy) strategyModel.getSelectedItem(),
-                (Database) databaseModel.getSelectedItem());
+    public CompletableFuture<Set<String>> getMatchListAsync(String word) {
+        Database database = (Database) databaseModel.getSelectedItem();
+        MatchingStrategy strategy = (MatchingStrategy) strategyModel.getSelectedItem();
+        LocalDictionary local = localDictionary;
+        if (local != null && database != null && strategy != null) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return local.getMatchList(word, strategy, database, WordSearchField.MAX_SUGGESTIONS);
+                } catch (DictConnectionException e) {
+                    throw new CompletionException(e);
+                }
+            }, suggestionExecutor);
+        }
+
+        if (!connected) // still connecting: no suggestions yet
+            return CompletableFuture.completedFuture(Collections.emptySet());
+        if (suggestionConnection == null)
+            return CompletableFuture.failedFuture(new DictConnectionException("Not connected"));
+        HeadwordTrie headwords = database == null ? null : localHeadwords.get(database.getName());
+        return CompletableFuture.supplyAsync(() -> {
+            Set<String> matches = new LinkedHashSet<>();
+            if (headwords != null && strategy != null &&
+                    headwords.match(word, strategy.getName(), matches, WordSearchField.MAX_SUGGESTIONS))
+                return CompletableFuture.completedFuture(matches);
+
+            try {
+                return openSuggestionConnection().getMatchList(word, strategy, database);
+            } catch (DictConnectionException e) {
+                return CompletableFuture.<Set<String>>failedFuture(e);
+            }
+        }, suggestionExecutor).thenCompose(future -> future);
+    }
+
+    /**
+     * Returns the connection used for suggestions, replacing it first if the server dropped it (e.g., after an idle
+     * timeout). Only called on the suggestion thread.
+     */
+    private AsyncDictionaryConnection openSuggestionConnection() throws DictConnectionException {
+        AsyncDictionaryConnection connection = suggestionConnection;
+        if (connection == null) throw new DictConnectionException("Not connected");
+        if (connection.isClosed()) {
+            // With several servers, a dropped connection is replaced by one to the fastest server that is up
+            DictionaryConnectionPool current = fastestPool(router, pool);
+            connection = new AsyncDictionaryConnection(eventLoop, current.getHost(), current.getPort());
+            connection.setMatchCache(current.getMatchCache());
+            suggestionConnection = connection;
+        }
+        return connection;
+    }
+
+    /**
+     * Returns the pool for work that must stay on one server (pipelined batches, headword crawls, lists): with
+     * several servers, the pool of the one that is currently the fastest, so work started after a server went down
+     * or slowed down goes to another one.
+     *
+     * @param router The router of the current servers, or null if there is only one server.
+     * @param pool   The pool of the only server.
+     */
+    private static DictionaryConnectionPool fastestPool(DictionaryRouter router, DictionaryConnectionPool pool)
+            throws DictConnectionException {
+        return router != null ? router.getFastestPool() : pool;
+    }
+
+    /**
+     * The connections, caches and lists opened for a server by the connect worker.
+     */
+    private static class Session {
+        DictionaryConnectionPool pool;
+        DictionaryRouter router;
+        LocalDictionary localDictionary;
+        DatabaseFanOut fanOut;
+        DefinitionPrefetcher prefetcher;
+        AsyncDictionaryConnection suggestionConnection;
+        String server;
+        ServerMetadata snapshot; // lists saved by a previous run, shown while connecting
+        ServerMetadata metadata; // lists requested from the server, if there was no snapshot
+
+        /**
+         * Sets the caches used by all connections, including those to other servers when there are several.
+         */
+        void setCaches(DefinitionCache definitionCache, MatchCache matchCache) {
+            if (router != null) {
+                router.setDefinitionCache(definitionCache);
+                router.setMatchCache(matchCache);
+            } else {
+                pool.setDefinitionCache(definitionCache);
+                pool.setMatchCache(matchCache);
+            }
+        }
+
+        void close() {
+            if (prefetcher != null)
+                prefetcher.close();
+            if (router != null)
+                router.close();
+            else if (pool != null)
+                pool.close();
+            if (localDictionary != null)
+                localDictionary.close();
+            if (suggestionConnection != null)
+                suggestionConnection.close();
+        }
     }
 
     public static void main(String[] args) {
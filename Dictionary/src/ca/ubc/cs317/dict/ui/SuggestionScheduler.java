@@ -0,0 +1,140 @@
+package ca.ubc.cs317.dict.ui;
+
+import javax.swing.*;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules match requests for a text field as the user types. A request is only sent after the text has not changed
+ * for a debounce window, requests superseded during that window (or while another request is in flight) are replaced
+ * by the newest one before being sent, and at most one request is in flight at any time. Results that arrive for text
+ * that is no longer current are dropped.
+ *
+ * All methods except the counters must be called on the event dispatch thread.
+ */
+public class SuggestionScheduler {
+
+    public static final int DEFAULT_DEBOUNCE_MILLIS = 150;
+
+    /**
+     * Source of the match lists, called on the event dispatch thread. It must return without waiting for the server.
+     */
+    public interface Source {
+        CompletableFuture<? extends Collection<String>> getMatchList(String word);
+    }
+
+    /**
+     * Receives the results of the requests, called on the event dispatch thread.
+     */
+    public interface Listener {
+        void suggestionsReady(String word, Collection<String> matches);
+
+        void suggestionsFailed(Throwable cause);
+    }
+
+    private final Source source;
+    private final Listener listener;
+    private final Timer timer;
+
+    private String current;  // most recent text requested, used to detect stale results
+    private String pending;  // text waiting to be sent, or null if there is nothing to send
+    private boolean inFlight = false;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public SuggestionScheduler(Source source, Listener listener) {
+        this(source, listener, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    public SuggestionScheduler(Source source, Listener listener, int debounceMillis) {
+        this.source = source;
+        this.listener = listener;
+        this.timer = new Timer(debounceMillis, e -> sendPending());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Requests matches for a new text, replacing any request that has not been sent yet.
+     *
+     * @param word The text typed by the user.
+     */
+    public void request(String word) {
+        if (pending != null) coalesced.incrementAndGet();
+        current = word;
+        pending = word;
+        timer.restart();
+    }
+
+    /**
+     * Cancels any request that has not been sent yet, and marks the result of the request in flight (if any) as stale.
+     */
+    public void cancel() {
+        if (pending != null) coalesced.incrementAndGet();
+        timer.stop();
+        current = null;
+        pending = null;
+    }
+
+    public void setDebounceMillis(int debounceMillis) {
+        timer.setInitialDelay(debounceMillis);
+    }
+
+    public int getDebounceMillis() {
+        return timer.getInitialDelay();
+    }
+
+    /**
+     * @return The number of requests actually sent to the source.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return The number of requests replaced by a newer one before being sent.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return The number of results discarded because the text changed while the request was in flight.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void sendPending() {
+        if (pending == null || inFlight || timer.isRunning()) return;
+
+        final String word = pending;
+        pending = null;
+        sent.incrementAndGet();
+        inFlight = true;
+
+        CompletableFuture<? extends Collection<String>> future;
+        try {
+            future = source.getMatchList(word);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((matches, cause) -> SwingUtilities.invokeLater(() -> done(word, matches, cause)));
+    }
+
+    private void done(String word, Collection<String> matches, Throwable cause) {
+        inFlight = false;
+        if (!word.equals(current)) {
+            dropped.incrementAndGet();
+        } else if (cause != null) {
+            listener.suggestionsFailed(cause instanceof CompletionException && cause.getCause() != null ?
+                    cause.getCause() : cause);
+        } else {
+            listener.suggestionsReady(word, matches);
+        }
+        sendPending();
+    }
+}
@@ -4,17 +4,23 @@ import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.plaf.metal.MetalComboBoxEditor;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Created by Jonatan on 2017-09-10.
  */
-public class WordSearchField extends JComboBox<String> implements DocumentListener {
+public class WordSearchField extends JComboBox<String> implements DocumentListener, SuggestionScheduler.Listener {
+
+    /**
+     * Maximum number of suggestions shown below the field, including the typed word itself.
+     */
+    public static final int MAX_SUGGESTIONS = 100;
 
     private DictionaryMain main;
     private JTextField textField;
+    private SuggestionScheduler scheduler;
 
     private DefaultComboBoxModel<String> model;
 
@@ -22,6 +28,7 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
 
         this.setModel(model = new DefaultComboBoxModel<>());
         this.main = main;
+        this.scheduler = new SuggestionScheduler(main::getMatchListAsync, this);
 
         setEditable(true);
         setEditor(new MetalComboBoxEditor() {
@@ -40,6 +47,7 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
     }
 
     public void reset() {
+        scheduler.cancel();
         model.removeAllElements();
         textField.setText("");
     }
@@ -62,39 +70,52 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
 
     public void showSuggestions() {
         final String typed = textField.getText();
+        main.cancelPrefetch();
         model.removeAllElements();
-        if (typed.isEmpty())
+        if (typed.isEmpty()) {
+            scheduler.cancel();
             return;
+        }
 
-        new SwingWorker<Set<String>, String>() {
-            String word = typed;
+        scheduler.request(typed);
+    }
 
-            @Override
-            protected Set<String> doInBackground() throws Exception {
-                Set<String> matches = new LinkedHashSet<>();
-                matches.add(word);
-                matches.addAll(main.getMatchList(word));
-                return matches;
-            }
+    /**
+     * Sets how long the text must remain unchanged before a match request is sent.
+     *
+     * @param debounceMillis Debounce window in milliseconds.
+     */
+    public void setSuggestionDelay(int debounceMillis) {
+        scheduler.setDebounceMillis(debounceMillis);
+    }
 
-            @Override
-            protected void done() {
-                // If user typed another character since this worker started, stop
-                if (!textField.getText().equals(word)) return;
-                try {
-                    for (String match : this.get()) {
-                        model.addElement(match);
-                    }
-                    if (model.getSize() > 1)
-                        showPopup();
-                    else
-                        hidePopup();
-                } catch (ExecutionException e) {
-                    main.handleException(e.getCause());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }.execute();
+    public SuggestionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public void suggestionsReady(String word, Collection<String> matches) {
+        // If user typed another character since this request was sent, stop
+        if (!textField.getText().equals(word)) return;
+
+        Set<String> suggestions = new LinkedHashSet<>();
+        suggestions.add(word);
+        for (String match : matches) {
+            if (suggestions.size() >= MAX_SUGGESTIONS) break;
+            suggestions.add(match);
+        }
+        for (String match : suggestions) {
+            model.addElement(match);
+        }
+        main.prefetchDefinitions(suggestions);
+        if (model.getSize() > 1)
+            showPopup();
+        else
+            hidePopup();
+    }
+
+    @Override
+    public void suggestionsFailed(Throwable cause) {
+        main.handleException(cause);
     }
-}
+}
\ No newline at end of file
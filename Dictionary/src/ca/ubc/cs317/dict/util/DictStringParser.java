@@ -1,16 +1,13 @@
 package ca.ubc.cs317.dict.util;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
 public class DictStringParser {
 
-    private static Pattern stringUnit = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+    private static final int INITIAL_ATOMS = 8;
 
     /** Splits a String into DICT-supported atoms. This is equivalent to String.split, but if a set of quotes is found,
      * the spaces within the quotes are not used for splitting.
@@ -19,11 +16,134 @@ public class DictStringParser {
      * @return An array of strings corresponding to all "atoms" found in the original string.
      */
     public static String[] splitAtoms(String original) {
-        List<String> list = new ArrayList<>();
-        Matcher m = stringUnit.matcher(original);
-        while (m.find()) {
-            list.add(m.group(m.group(1) != null ? 1 : 2));
+        int[] bounds = new int[2 * INITIAL_ATOMS];
+        int count;
+        while ((count = tokenize(original, bounds)) > bounds.length / 2) {
+            bounds = Arrays.copyOf(bounds, 2 * count);
         }
-        return list.toArray(new String[list.size()]);
+        String[] atoms = new String[count];
+        for (int i = 0; i < count; i++) {
+            atoms[i] = atom(original, bounds, i);
+        }
+        return atoms;
+    }
+
+    /** Finds the DICT atoms in a line without creating any objects. Atoms are separated by spaces or tabs, and may be
+     * enclosed in double or single quotes, in which case they may contain spaces and backslash escapes (RFC 2229,
+     * section 2.2). The bounds of atom i are stored in bounds[2 * i] (start) and bounds[2 * i + 1] (end, exclusive),
+     * excluding the quotes; the end of quoted atoms is stored as a negative number, to be decoded by atom.
+     *
+     * @param line   Line to be split.
+     * @param bounds Array receiving the bounds of the atoms. Atoms that don't fit are counted but not stored.
+     * @return The number of atoms found in the line, which may be larger than bounds.length / 2.
+     */
+    public static int tokenize(CharSequence line, int[] bounds) {
+        int length = line.length();
+        int count = 0;
+        int i = 0;
+        while (true) {
+            while (i < length && isSpace(line.charAt(i))) i++;
+            if (i >= length) return count;
+
+            int start, end;
+            boolean quoted;
+            char c = line.charAt(i);
+            if (c == '"' || c == '\'') {
+                quoted = true;
+                start = ++i;
+                while (i < length && line.charAt(i) != c) {
+                    if (line.charAt(i) == '\\' && i + 1 < length) i++;
+                    i++;
+                }
+                end = i;
+                if (i < length) i++; // skip closing quote
+            } else {
+                quoted = false;
+                start = i;
+                while (i < length && !isSpace(line.charAt(i))) i++;
+                end = i;
+            }
+
+            if (2 * count + 1 < bounds.length) {
+                bounds[2 * count] = start;
+                bounds[2 * count + 1] = quoted ? -end - 1 : end;
+            }
+            count++;
+        }
+    }
+
+    /** Extracts an atom found by tokenize, removing escapes from quoted atoms.
+     *
+     * @param line   Line previously passed to tokenize.
+     * @param bounds Bounds filled by tokenize.
+     * @param index  Index of the atom, which must be smaller than both the count returned by tokenize and
+     *               bounds.length / 2.
+     * @return The contents of the atom.
+     */
+    public static String atom(CharSequence line, int[] bounds, int index) {
+        int start = bounds[2 * index];
+        int end = bounds[2 * index + 1];
+        if (end >= 0)
+            return line.subSequence(start, end).toString();
+
+        end = -end - 1;
+        StringBuilder builder = null;
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == '\\') {
+                if (builder == null) builder = new StringBuilder(end - start);
+                builder.append(line, start, i);
+                start = ++i; // keep the escaped character
+            }
+        }
+        if (builder == null)
+            return line.subSequence(start, end).toString();
+        return builder.append(line, start, end).toString();
+    }
+
+    /** Formats a word to be sent as the last parameter of a command (RFC 2229, section 2.2). Words with spaces,
+     * quotes or backslashes are sent as a quoted string, with quotes and backslashes escaped; other words are sent
+     * as they are.
+     *
+     * @param word Word to be sent.
+     * @return The word, quoted if needed.
+     * @throws IllegalArgumentException If the word can't be sent in a command line (see isValidWord).
+     */
+    public static String quote(String word) {
+        if (!isValidWord(word))
+            throw new IllegalArgumentException("Invalid word");
+
+        boolean plain = true;
+        for (int i = 0; i < word.length() && plain; i++) {
+            char c = word.charAt(i);
+            plain = c != ' ' && c != '"' && c != '\'' && c != '\\';
+        }
+        if (plain) return word;
+
+        StringBuilder quoted = new StringBuilder(word.length() + 8).append('"');
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '"' || c == '\\') quoted.append('\\');
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    /** Checks if a word can be sent in a command: it must not be empty, and must not contain control characters,
+     * since a CR or LF would end the command line and let the rest of the word be read as another command.
+     *
+     * @param word Word to be checked.
+     * @return true if the word can be passed to quote.
+     */
+    public static boolean isValidWord(String word) {
+        if (word == null || word.isEmpty()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < ' ' || c == 0x7f) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
     }
 }
@@ -0,0 +1,91 @@
+package ca.ubc.cs317.dict.util;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.Collection;
+
+/**
+ * Minimal helpers to write JSON output without a JSON library.
+ */
+public class Json {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Appends a string as a quoted JSON string, escaping quotes, backslashes and control characters.
+     *
+     * @param builder Destination of the JSON text.
+     * @param value   The string to be appended, or null to append a JSON null.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder appendString(StringBuilder builder, String value) {
+        if (value == null) return builder.append("null");
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * Appends a JSON array of strings.
+     *
+     * @param builder Destination of the JSON text.
+     * @param values  The strings to be appended, in iteration order.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder appendStrings(StringBuilder builder, Collection<String> values) {
+        builder.append('[');
+        boolean first = true;
+        for (String value : values) {
+            if (!first) builder.append(',');
+            first = false;
+            appendString(builder, value);
+        }
+        return builder.append(']');
+    }
+
+    /**
+     * Appends a JSON array with one object per definition, with the fields "database", "headword" and "text".
+     *
+     * @param builder     Destination of the JSON text.
+     * @param definitions The definitions to be appended, in iteration order.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder appendDefinitions(StringBuilder builder, Collection<Definition> definitions) {
+        builder.append('[');
+        boolean first = true;
+        for (Definition definition : definitions) {
+            if (!first) builder.append(',');
+            first = false;
+            appendString(builder.append("{\"database\":"),
+                    definition.getDatabase() == null ? null : definition.getDatabase().getName());
+            appendString(builder.append(",\"headword\":"), definition.getWord());
+            appendString(builder.append(",\"text\":"), definition.getDefinition()).append('}');
+        }
+        return builder.append(']');
+    }
+}
@@ -0,0 +1,174 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DiskCacheStoreTest {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testValuesSurviveReopening() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        try {
+            Path file = directory.resolve("cache.db");
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                store.put("a", bytes("first"));
+                store.put("b", bytes("second"));
+                store.put("a", bytes("replaced"));
+                store.remove("b");
+            }
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                assertEquals("replaced", string(store.get("a")));
+                assertEquals(null, string(store.get("b")));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testWritesBehindAreVisibleAndDurable() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        try {
+            Path file = directory.resolve("cache.db");
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                for (int i = 0; i < 200; i++)
+                    store.putAsync("key" + i, bytes("value " + i));
+                store.putAsync("key7", bytes("replaced"));
+                assertEquals("replaced", string(store.get("key7")), "pending value returned");
+                store.remove("key8");
+                assertEquals(null, string(store.get("key8")), "pending value removed");
+                store.flush();
+                assertEquals("value 199", string(store.get("key199")));
+            }
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                assertEquals("value 0", string(store.get("key0")));
+                assertEquals("replaced", string(store.get("key7")));
+                assertEquals(null, string(store.get("key8")));
+                assertEquals(199L, store.getStats().getEntries());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testDiskHitLargerThanMemoryTierIsReturned() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        try (DiskCacheStore store = new DiskCacheStore(directory.resolve("cache.db"), 1 << 20, 0)) {
+            Database wn = new Database("wn", "WordNet");
+            Definition definition = new Definition("apple", wn);
+            definition.setDefinition("A round fruit. ".repeat(100));
+            new PersistentDefinitionCache(new LruDefinitionCache(10, 1 << 20, 0), store, "dict.org:2628")
+                    .put("apple", wn, List.of(definition));
+
+            // A new memory tier, too small to keep the entry
+            LruDefinitionCache memory = new LruDefinitionCache(10, 100, 0);
+            PersistentDefinitionCache cache = new PersistentDefinitionCache(memory, store, "dict.org:2628");
+            assertEquals(definition.getDefinition(), cache.get("apple", wn).iterator().next().getDefinition());
+            assertEquals(0L, memory.getStats().getHits(), "no memory hit recorded");
+            assertEquals(1L, memory.getStats().getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testTornTailIsTruncated() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        try {
+            Path file = directory.resolve("cache.db");
+            long complete;
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                store.put("kept", bytes("value"));
+                complete = Files.size(file);
+                store.put("torn", bytes("a value cut short by a crash"));
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(file) - 5);
+            }
+
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                assertEquals("value", string(store.get("kept")));
+                assertEquals(null, string(store.get("torn")));
+                assertEquals(complete, Files.size(file), "file truncated after the last complete record");
+                store.put("after", bytes("appended"));
+            }
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                assertEquals("appended", string(store.get("after")));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testCorruptRecordEndsTheScan() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        try {
+            Path file = directory.resolve("cache.db");
+            long second;
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                store.put("one", bytes("1"));
+                second = Files.size(file);
+                store.put("two", bytes("2"));
+                store.put("three", bytes("3"));
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{'X'}), second + 24); // first byte of the key of "two"
+            }
+
+            try (DiskCacheStore store = new DiskCacheStore(file, 1 << 20, 0)) {
+                assertEquals("1", string(store.get("one")));
+                assertEquals(null, string(store.get("three")));
+                assertEquals(second, Files.size(file));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testCompactionKeepsNewestRecordsWithinLimit() throws Exception {
+        Path directory = Files.createTempDirectory("store");
+        try {
+            Path file = directory.resolve("cache.db");
+            long limit = 16 * 1024;
+            byte[] value = new byte[200];
+            try (DiskCacheStore store = new DiskCacheStore(file, limit, 0)) {
+                for (int i = 0; i < 500; i++)
+                    store.put("key" + i, value);
+                assertTrue(Files.size(file) <= limit, "file within its limit: " + Files.size(file));
+                assertTrue(store.getStats().getEvictions() > 0, "records evicted");
+                assertEquals(200, store.get("key499").length);
+                assertEquals(null, store.get("key0"));
+            }
+            try (DiskCacheStore store = new DiskCacheStore(file, limit, 0)) {
+                assertEquals(200, store.get("key499").length);
+                assertTrue(!Files.exists(directory.resolve("cache.db.tmp")), "temporary file removed");
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.Set;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class MatchCacheTest {
+
+    private static final Database WN = new Database("wn", "WordNet");
+    private static final MatchingStrategy PREFIX = new MatchingStrategy(MatchCache.PREFIX, "");
+    private static final MatchingStrategy SUFFIX = new MatchingStrategy(MatchCache.SUFFIX, "");
+
+    public void testNarrowingIgnoresCaseAndPunctuation() {
+        MatchCache cache = new MatchCache(10, 100);
+        cache.put("ab", PREFIX, WN, Set.of("abc", "ab-cd", "ABCs", "Abe", "abandon"));
+        assertEquals(Set.of("abc", "ab-cd", "ABCs"), cache.get("abc", PREFIX, WN));
+        assertEquals(Set.of("abc", "ab-cd", "ABCs"), cache.get("ab.c", PREFIX, WN), "pattern normalized too");
+        assertEquals(2L, cache.getNarrowedHits());
+
+        cache.put("e", SUFFIX, WN, Set.of("apple", "maple", "apple-pie", "Pine"));
+        assertEquals(Set.of("apple-pie"), cache.get("pie", SUFFIX, WN));
+    }
+
+    public void testTruncatedResultIsNotNarrowed() {
+        MatchCache cache = new MatchCache(10, 3);
+        cache.put("ab", PREFIX, WN, Set.of("abc", "abd", "abe"));
+        assertEquals(null, cache.get("abc", PREFIX, WN));
+        assertEquals(Set.of("abc", "abd", "abe"), cache.get("ab", PREFIX, WN), "exact lookups still answered");
+    }
+}
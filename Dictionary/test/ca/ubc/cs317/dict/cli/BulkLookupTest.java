@@ -0,0 +1,73 @@
+package ca.ubc.cs317.dict.cli;
+
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.local.LocalDictionary;
+import ca.ubc.cs317.dict.local.LocalDictionaryTest;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class BulkLookupTest {
+
+    private static List<String> sortedLines(String output) {
+        List<String> lines = Arrays.asList(output.split("\n"));
+        lines.sort(null);
+        return lines;
+    }
+
+    public void testLooksUpLocalDatabases() throws Exception {
+        Path directory = LocalDictionaryTest.sampleDirectory();
+        LocalDictionary dictionary = LocalDictionary.open(directory);
+        try {
+            BulkLookup lookup = new BulkLookup(dictionary, new Database("tree", ""), 2, 2, 16);
+            StringWriter output = new StringWriter();
+            lookup.run(new BufferedReader(new StringReader("apple\n\nmaple\npear\n")), output);
+
+            assertEquals(3L, lookup.getWordCount());
+            assertEquals(0L, lookup.getFailureCount());
+            List<String> lines = sortedLines(output.toString());
+            assertEquals(3, lines.size());
+            assertTrue(lines.get(0).startsWith("{\"word\":\"apple\"") && lines.get(0).contains("bearing apples"),
+                    lines.get(0));
+            assertTrue(lines.get(1).contains("lobed leaves"), lines.get(1));
+            assertEquals("{\"word\":\"pear\",\"definitions\":[]}", lines.get(2));
+        } finally {
+            dictionary.close();
+            LocalDictionaryTest.delete(directory);
+        }
+    }
+
+    public void testErrorReplyOnlyFailsItsWord() throws Exception {
+        try (FakeDictServer server = new FakeDictServer()) {
+            server.addDatabase("wn", "WordNet");
+            for (int i = 1; i <= 4; i++)
+                server.addDefinition("wn", "w" + i, "meaning of w" + i);
+            server.start(0);
+            // The 4th DEFINE fails the batch; retried one word at a time, the 8th fails only w4
+            server.injectError("define", 420, 4);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 1, 60000);
+            try {
+                BulkLookup lookup = new BulkLookup(pool, new Database("wn", ""), 1, 4, 16);
+                StringWriter output = new StringWriter();
+                lookup.run(new BufferedReader(new StringReader("w1\nw2\nw3\nw4\n")), output);
+
+                assertEquals(4L, lookup.getWordCount());
+                assertEquals(1L, lookup.getFailureCount());
+                List<String> lines = sortedLines(output.toString());
+                for (int i = 0; i < 3; i++)
+                    assertTrue(lines.get(i).contains("meaning of w" + (i + 1)), lines.get(i));
+                assertTrue(lines.get(3).startsWith("{\"word\":\"w4\",\"error\":"), lines.get(3));
+            } finally {
+                pool.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ca.ubc.cs317.dict.http;
+
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.local.LocalDictionary;
+import ca.ubc.cs317.dict.local.LocalDictionaryTest;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DictHttpGatewayTest {
+
+    private static int status(DictHttpGateway gateway, String path) throws IOException {
+        return open(gateway, path).getResponseCode();
+    }
+
+    private static String body(DictHttpGateway gateway, String path) throws IOException {
+        HttpURLConnection connection = open(gateway, path);
+        assertEquals(200, connection.getResponseCode(), path);
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static HttpURLConnection open(DictHttpGateway gateway, String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + gateway.getPort() + path).openConnection();
+    }
+
+    public void testCommandInjectionIsRejected() throws Exception {
+        try (FakeDictServer server = new FakeDictServer().addDatabase("wn", "WordNet")
+                .addDefinition("wn", "apple", "a fruit").addDefinition("wn", "setting", "a context")) {
+            server.start(0);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 1, 60000);
+            DictHttpGateway gateway = new DictHttpGateway(pool, new InetSocketAddress("localhost", 0), 2);
+            gateway.start();
+            try {
+                long commands = server.getCommandCount();
+                assertEquals(400, status(gateway, "/define?word=qqq1%0d%0adefine%20wn%20setting&db=wn"));
+                assertEquals(400, status(gateway, "/match?word=a%0ab&db=wn"));
+                assertEquals(commands, server.getCommandCount(), "nothing sent for invalid words");
+
+                // With a single pooled connection, a stray reply would be read by these requests
+                assertTrue(body(gateway, "/define?word=apple&db=wn").contains("a fruit"), "apple");
+                assertTrue(body(gateway, "/define?word=setting&db=wn").contains("a context"), "setting");
+                assertTrue(body(gateway, "/define?word=%22apple%22&db=wn").contains("\"definitions\":[]"),
+                        "quotes are part of the word");
+            } finally {
+                gateway.close();
+                pool.close();
+            }
+        }
+    }
+
+    public void testServesLocalDatabases() throws Exception {
+        Path directory = LocalDictionaryTest.sampleDirectory();
+        LocalDictionary dictionary = LocalDictionary.open(directory);
+        DictHttpGateway gateway = new DictHttpGateway(dictionary, new InetSocketAddress("localhost", 0), 2);
+        gateway.start();
+        try {
+            assertTrue(body(gateway, "/databases").contains("{\"name\":\"fruit\",\"description\":\"Fruits\"}"),
+                    "databases");
+            assertTrue(body(gateway, "/define?word=cherry&db=fruit").contains("A small red fruit."), "define");
+            assertTrue(body(gateway, "/match?word=ap&db=*").contains("\"matches\":[\"apple\",\"Apricot\"]"),
+                    "match");
+            assertEquals(400, status(gateway, "/define?word=apple&db=nope"));
+        } finally {
+            gateway.close();
+            dictionary.close();
+            LocalDictionaryTest.delete(directory);
+        }
+    }
+}
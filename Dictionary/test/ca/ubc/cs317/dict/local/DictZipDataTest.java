@@ -0,0 +1,175 @@
+package ca.ubc.cs317.dict.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+/**
+ * Builds dictzip files the way dictzip does, and compares ranges read from them with the uncompressed data.
+ */
+public class DictZipDataTest {
+
+    /**
+     * Compresses data into a dictzip file, flushing the deflate stream every chunkLength bytes.
+     *
+     * @param name    Stored as the FNAME field of the header, if not null.
+     * @param comment Stored as the FCOMMENT field of the header, if not null.
+     */
+    public static void writeDictZip(Path file, byte[] data, int chunkLength, String name, String comment)
+            throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        List<Integer> chunkSizes = new ArrayList<>();
+        byte[] buffer = new byte[chunkLength + 1024];
+        for (int start = 0; start < data.length; start += chunkLength) {
+            int before = body.size();
+            deflater.setInput(data, start, Math.min(chunkLength, data.length - start));
+            boolean last = start + chunkLength >= data.length;
+            if (last) deflater.finish();
+            int count;
+            do {
+                count = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.FULL_FLUSH);
+                body.write(buffer, 0, count);
+            } while (last ? !deflater.finished() : count == buffer.length);
+            chunkSizes.add(body.size() - before);
+        }
+        deflater.end();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int flags = 0x04 | (name != null ? 0x08 : 0) | (comment != null ? 0x10 : 0);
+        out.write(new byte[]{0x1f, (byte) 0x8b, 8, (byte) flags, 0, 0, 0, 0, 2, 3});
+        // An unrelated subfield first, as readers must skip subfields they don't know
+        int raLength = 6 + 2 * chunkSizes.size();
+        u16(out, 4 + 3 + 4 + raLength);
+        out.write('X');
+        out.write('Y');
+        u16(out, 3);
+        out.write(new byte[3]);
+        out.write('R');
+        out.write('A');
+        u16(out, raLength);
+        u16(out, 1);
+        u16(out, chunkLength);
+        u16(out, chunkSizes.size());
+        for (int size : chunkSizes) u16(out, size);
+        if (name != null) {
+            out.write(name.getBytes(StandardCharsets.ISO_8859_1));
+            out.write(0);
+        }
+        if (comment != null) {
+            out.write(comment.getBytes(StandardCharsets.ISO_8859_1));
+            out.write(0);
+        }
+        body.writeTo(out);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        u32(out, crc.getValue());
+        u32(out, data.length);
+        Files.write(file, out.toByteArray());
+    }
+
+    private static void u16(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write(value >>> 8 & 0xff);
+    }
+
+    private static void u32(ByteArrayOutputStream out, long value) {
+        u16(out, (int) (value & 0xffff));
+        u16(out, (int) (value >>> 16 & 0xffff));
+    }
+
+    private static byte[] sampleData(int length) {
+        Random random = new Random(317);
+        String[] words = {"apple ", "banana ", "cherry ", "maple ", "\n  ", "fruit. "};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) text.append(words[random.nextInt(words.length)]);
+        return text.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void checkRanges(DictZipData zip, byte[] data) throws IOException {
+        int chunkLength = zip.getChunkLength();
+        Random random = new Random(2628);
+        for (int i = 0; i < 200; i++) {
+            // Ranges around a chunk boundary, spanning up to three chunks
+            int boundary = chunkLength * (1 + random.nextInt(data.length / chunkLength - 1));
+            int offset = Math.max(0, boundary - random.nextInt(chunkLength + 1));
+            int length = Math.min(data.length - offset, random.nextInt(3 * chunkLength));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, offset, offset + length), zip.read(offset, length)),
+                    "range " + offset + "+" + length);
+        }
+        assertTrue(Arrays.equals(data, zip.read(0, data.length)), "whole file");
+        assertThrows(IOException.class, () -> zip.read(data.length - 1, 2));
+    }
+
+    public void testReadsAcrossChunks() throws Exception {
+        Path file = Files.createTempFile("sample", ".dict.dz");
+        try {
+            byte[] data = sampleData(5000);
+            writeDictZip(file, data, 256, "sample.dict", null);
+            try (DictZipData zip = new DictZipData(file, 2)) {
+                assertEquals(256, zip.getChunkLength());
+                assertEquals(20, zip.getChunkCount());
+                checkRanges(zip, data);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testHeaderLargerThanOneRead() throws Exception {
+        Path file = Files.createTempFile("large", ".dict.dz");
+        try {
+            // A chunk table of 20000 entries, followed by a name and a comment of 50000 bytes each
+            byte[] data = sampleData(20000 * 16);
+            char[] filler = new char[50000];
+            Arrays.fill(filler, 'x');
+            writeDictZip(file, data, 16, new String(filler), new String(filler));
+            try (DictZipData zip = new DictZipData(file)) {
+                assertEquals(20000, zip.getChunkCount());
+                checkRanges(zip, data);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testLocalDictionaryReadsDictZip() throws Exception {
+        Path directory = Files.createTempDirectory("dictd");
+        try {
+            byte[] dict = LocalDictionaryTest.writeDatabase(directory, "fruit",
+                    "apple", "apple\n  A round fruit.\n",
+                    "banana", "banana\n  A long yellow fruit.\n",
+                    "cherry", "cherry\n  A small red fruit.\n");
+            Files.delete(directory.resolve("fruit.dict"));
+            writeDictZip(directory.resolve("fruit.dict.dz"), dict, 10, null, "dictzip test");
+            LocalDictionary dictionary = LocalDictionary.open(directory);
+            try {
+                assertEquals("cherry\n  A small red fruit.\n", dictionary.getDefinitions("cherry",
+                        dictionary.getDatabaseList().iterator().next()).iterator().next().getDefinition());
+            } finally {
+                dictionary.close();
+            }
+        } finally {
+            LocalDictionaryTest.delete(directory);
+        }
+    }
+
+    public void testNotDictZipFails() throws Exception {
+        Path file = Files.createTempFile("plain", ".dict.dz");
+        try {
+            Files.write(file, new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 2, 3, 0});
+            assertThrows(IOException.class, () -> new DictZipData(file));
+            Files.write(file, new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 2, 3, 100, 0, 'R', 'A'});
+            assertThrows(IOException.class, () -> new DictZipData(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ca.ubc.cs317.dict.local;
+
+import java.util.*;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+/**
+ * Compares the matches of the automata with a scan of the headword list.
+ */
+public class HeadwordTrieTest {
+
+    private static final String[] STRATEGIES = {HeadwordTrie.EXACT, HeadwordTrie.PREFIX, HeadwordTrie.SUFFIX,
+            HeadwordTrie.SUBSTRING, HeadwordTrie.LEV, HeadwordTrie.SOUNDEX};
+
+    private static List<String> headwords(Random random, int count) {
+        String alphabet = "abcdeABr -";
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int length = 1 + random.nextInt(7); length > 0; length--)
+                word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            words.add(word.toString());
+        }
+        words.add("robert");
+        words.add("Rupert");
+        return words;
+    }
+
+    private static boolean expected(String strategy, String headword, String pattern) {
+        String h = headword.toLowerCase(Locale.ROOT), p = pattern.toLowerCase(Locale.ROOT);
+        switch (strategy) {
+            case HeadwordTrie.EXACT:
+                return h.equals(p);
+            case HeadwordTrie.PREFIX:
+                return h.startsWith(p);
+            case HeadwordTrie.SUFFIX:
+                return h.endsWith(p);
+            case HeadwordTrie.SUBSTRING:
+                return h.contains(p);
+            case HeadwordTrie.LEV:
+                return distance(h, p) <= 1;
+            default:
+                String code = HeadwordTrie.soundex(pattern);
+                return code != null && code.equals(HeadwordTrie.soundex(headword));
+        }
+    }
+
+    /**
+     * Edit distance counting insertions, deletions, substitutions and transpositions of adjacent characters.
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    public void testMatchesAgreeWithScan() {
+        Random random = new Random(317);
+        List<String> words = headwords(random, 3000);
+        HeadwordTrie trie = HeadwordTrie.build(words);
+        assertEquals(new HashSet<>(words).size(), trie.size());
+
+        List<String> patterns = new ArrayList<>(headwords(random, 150));
+        patterns.addAll(List.of("a", "B", "ab", "rupert", "zzz", "-"));
+        for (String pattern : patterns) {
+            for (String strategy : STRATEGIES) {
+                Set<String> expected = new TreeSet<>();
+                for (String word : words)
+                    if (expected(strategy, word, pattern)) expected.add(word);
+                Set<String> actual = new TreeSet<>();
+                assertTrue(trie.match(pattern, strategy, actual, Integer.MAX_VALUE), strategy + " supported");
+                assertEquals(expected, actual, strategy + " '" + pattern + "'");
+            }
+        }
+    }
+
+    public void testLimitIsRespected() {
+        List<String> words = headwords(new Random(1), 2000);
+        HeadwordTrie trie = HeadwordTrie.build(words);
+        for (String strategy : STRATEGIES) {
+            Set<String> matches = new HashSet<>();
+            trie.match("a", strategy, matches, 3);
+            assertTrue(matches.size() <= 3, strategy + " returned " + matches.size());
+        }
+    }
+
+    public void testPreparedSoundexMatchesLazyOne() {
+        List<String> words = headwords(new Random(7), 500);
+        HeadwordTrie lazy = HeadwordTrie.build(words), prepared = HeadwordTrie.build(words);
+        long before = prepared.memoryUsage();
+        prepared.prepareSoundex();
+        assertTrue(prepared.memoryUsage() > before, "soundex automaton built");
+
+        for (String pattern : List.of("robert", "abc", "Bar")) {
+            Set<String> expected = new TreeSet<>(), actual = new TreeSet<>();
+            lazy.match(pattern, HeadwordTrie.SOUNDEX, expected, Integer.MAX_VALUE);
+            prepared.match(pattern, HeadwordTrie.SOUNDEX, actual, Integer.MAX_VALUE);
+            assertEquals(expected, actual, pattern);
+        }
+    }
+
+    public void testUnknownStrategy() {
+        HeadwordTrie trie = HeadwordTrie.build(List.of("cat"));
+        Set<String> matches = new HashSet<>();
+        assertTrue(!trie.match("cat", "re", matches, 10), "regular expressions are not supported");
+        assertTrue(matches.isEmpty(), "set unchanged");
+        assertTrue(trie.contains("cat") && !trie.contains("ca"), "contains");
+    }
+}
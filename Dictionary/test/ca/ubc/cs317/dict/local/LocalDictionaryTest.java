@@ -0,0 +1,154 @@
+package ca.ubc.cs317.dict.local;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class LocalDictionaryTest {
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * Writes a dictd database (name.index and name.dict) to a directory.
+     *
+     * @param entries Headwords and their text, alternately.
+     * @return The contents of the .dict file.
+     */
+    public static byte[] writeDatabase(Path directory, String name, String... entries) throws IOException {
+        ByteArrayOutputStream dict = new ByteArrayOutputStream();
+        StringBuilder index = new StringBuilder();
+        for (int i = 0; i < entries.length; i += 2) {
+            byte[] text = entries[i + 1].getBytes(StandardCharsets.UTF_8);
+            index.append(entries[i]).append('\t').append(base64(dict.size())).append('\t')
+                    .append(base64(text.length)).append('\n');
+            dict.write(text);
+        }
+        Files.write(directory.resolve(name + ".index"), index.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve(name + ".dict"), dict.toByteArray());
+        return dict.toByteArray();
+    }
+
+    public static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Creates a directory with two small databases, "fruit" and "tree".
+     */
+    public static Path sampleDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("dictd");
+        writeDatabase(directory, "fruit",
+                "00-database-short", "00-database-short\n    Fruits\n",
+                "apple", "apple\n  A round fruit.\n",
+                "Apricot", "Apricot\n  A small orange fruit.\n",
+                "banana", "banana\n  A long yellow fruit.\n",
+                "cherry", "cherry\n  A small red fruit.\n");
+        writeDatabase(directory, "tree",
+                "apple", "apple\n  The tree bearing apples.\n",
+                "maple", "maple\n  A tree with lobed leaves.\n");
+        return directory;
+    }
+
+    private static String text(Collection<Definition> definitions) {
+        StringBuilder text = new StringBuilder();
+        for (Definition definition : definitions)
+            text.append(definition.getDatabase().getName()).append(": ").append(definition.getDefinition().trim())
+                    .append('\n');
+        return text.toString();
+    }
+
+    private static String base64(long value) {
+        StringBuilder digits = new StringBuilder();
+        do {
+            digits.insert(0, BASE64.charAt((int) (value & 63)));
+            value >>>= 6;
+        } while (value != 0);
+        return digits.toString();
+    }
+
+    public void testDatabasesAndDefinitions() throws Exception {
+        Path directory = sampleDirectory();
+        LocalDictionary dictionary = LocalDictionary.open(LocalDictionary.SERVER_PREFIX + directory);
+        try {
+            List<String> names = new ArrayList<>();
+            for (Database database : dictionary.getDatabaseList())
+                names.add(database.getName() + " " + database.getDescription());
+            assertEquals(List.of("fruit Fruits", "tree tree"), names);
+
+            Database fruit = new Database("fruit", "Fruits");
+            assertEquals("fruit: Apricot\n  A small orange fruit.\n",
+                    text(dictionary.getDefinitions("APRICOT", fruit)), "case is ignored");
+            assertEquals("fruit: apple\n  A round fruit.\ntree: apple\n  The tree bearing apples.\n",
+                    text(dictionary.getDefinitions("apple", new Database("*", "All"))));
+            assertEquals("fruit: apple\n  A round fruit.\n",
+                    text(dictionary.getDefinitions("apple", new Database("!", "Any"))));
+            assertEquals("tree: maple\n  A tree with lobed leaves.\n",
+                    text(dictionary.getDefinitions("maple", new Database("!", "Any"))));
+            assertTrue(dictionary.getDefinitions("pear", fruit).isEmpty(), "no definition");
+            assertThrows(DictConnectionException.class,
+                    () -> dictionary.getDefinitions("apple", new Database("nope", "")));
+        } finally {
+            dictionary.close();
+            delete(directory);
+        }
+    }
+
+    public void testMatches() throws Exception {
+        Path directory = sampleDirectory();
+        LocalDictionary dictionary = LocalDictionary.open(directory);
+        try {
+            Database all = new Database("*", "All");
+            assertEquals(Set.of("apple", "Apricot"),
+                    dictionary.getMatchList("ap", new MatchingStrategy(LocalDictionary.PREFIX, ""), all));
+            assertEquals(Set.of("apple", "maple"),
+                    dictionary.getMatchList("ple", new MatchingStrategy(LocalDictionary.SUFFIX, ""), all));
+            assertEquals(Set.of("apple", "maple"),
+                    dictionary.getMatchList("aple", new MatchingStrategy(LocalDictionary.LEV, ""), all));
+            assertEquals(Set.of(),
+                    dictionary.getMatchList("00-data", new MatchingStrategy(LocalDictionary.PREFIX, ""), all),
+                    "database information is hidden");
+            assertThrows(DictConnectionException.class,
+                    () -> dictionary.getMatchList("a", new MatchingStrategy("regexp", ""), all));
+        } finally {
+            dictionary.close();
+            delete(directory);
+        }
+    }
+
+    public void testMatchesAreLimited() throws Exception {
+        Path directory = sampleDirectory();
+        LocalDictionary dictionary = LocalDictionary.open(directory);
+        try {
+            Database all = new Database("*", "All");
+            assertEquals(1, dictionary.getMatchList("ap", new MatchingStrategy(LocalDictionary.PREFIX, ""), all, 1)
+                    .size());
+            assertEquals(2, dictionary.getMatchList("a", new MatchingStrategy(LocalDictionary.SUBSTRING, ""), all, 2)
+                    .size(), "later databases not searched once the limit is reached");
+            assertEquals(Set.of("apple", "maple"),
+                    dictionary.getMatchList("ple", new MatchingStrategy(LocalDictionary.SUFFIX, ""), all, 5));
+        } finally {
+            dictionary.close();
+            delete(directory);
+        }
+    }
+
+    public void testMissingDirectoryFails() {
+        assertTrue(LocalDictionary.isLocal("file:/tmp"), "file: names are local");
+        assertTrue(!LocalDictionary.isLocal("dict.org"), "host names are not local");
+        assertThrows(DictConnectionException.class,
+                () -> LocalDictionary.open(LocalDictionary.SERVER_PREFIX + "/nonexistent/dictd"));
+    }
+}
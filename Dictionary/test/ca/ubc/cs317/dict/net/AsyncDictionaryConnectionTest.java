@@ -0,0 +1,57 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.net.ServerSocket;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class AsyncDictionaryConnectionTest {
+
+    private static final Database WN = new Database("wn", "WordNet");
+
+    private static int unusedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String text(Collection<Definition> definitions) {
+        StringBuilder text = new StringBuilder();
+        for (Definition definition : definitions)
+            text.append(definition.getDefinition().trim());
+        return text.toString();
+    }
+
+    public void testRefusedConnectionDoesNotStopLoop() throws Exception {
+        try (FakeDictServer server = new FakeDictServer(); DictEventLoop loop = new DictEventLoop()) {
+            server.addDatabase("wn", "WordNet").addDefinition("wn", "apple", "A round fruit.");
+            server.start(0);
+            int refused = unusedPort();
+            for (int i = 0; i < 20; i++) {
+                AsyncDictionaryConnection connection;
+                try {
+                    connection = new AsyncDictionaryConnection(loop, "localhost", refused);
+                } catch (DictConnectionException e) {
+                    continue; // refused while connecting, before the loop was involved
+                }
+                AsyncDictionaryConnection failed = connection;
+                assertThrows(ExecutionException.class, () -> failed.getDatabaseList().get(5, TimeUnit.SECONDS));
+            }
+            loop.execute(() -> {
+                throw new IllegalStateException("failing task (expected by the test)");
+            });
+
+            AsyncDictionaryConnection connection = new AsyncDictionaryConnection(loop, "localhost", server.getPort());
+            assertEquals("A round fruit.", text(connection.getDefinitions("apple", WN).get(5, TimeUnit.SECONDS)),
+                    "loop still serving connections");
+            connection.close();
+        }
+    }
+}
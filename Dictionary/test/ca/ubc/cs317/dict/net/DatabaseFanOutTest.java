@@ -0,0 +1,71 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DatabaseFanOutTest {
+
+    private static FakeDictServer server(int databases) throws IOException {
+        FakeDictServer server = new FakeDictServer();
+        for (int i = 0; i < databases; i++)
+            server.addDatabase("db" + i, "Database " + i).addDefinition("db" + i, "apple", "apple in db" + i);
+        server.start(0);
+        return server;
+    }
+
+    private static String text(Collection<Definition> definitions) {
+        StringBuilder text = new StringBuilder();
+        for (Definition definition : definitions)
+            text.append(definition.getDefinition().trim()).append('\n');
+        return text.toString();
+    }
+
+    public void testDeadlineStartsWhenEachDatabaseIsAsked() throws Exception {
+        try (FakeDictServer server = server(4)) {
+            server.setLatency("define", 150);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 4, 60000);
+            try {
+                // One database at a time: 600 ms in all, but each database answers 150 ms after being asked
+                DatabaseFanOut fanOut = new DatabaseFanOut(pool, 400, 1);
+                List<Database> timedOut = new ArrayList<>();
+                assertEquals("apple in db0\napple in db1\napple in db2\napple in db3\n",
+                        text(fanOut.getDefinitions("apple", null, timedOut::add)));
+                assertEquals(List.of(), timedOut);
+                assertEquals(1L, server.getConnectionCount(), "concurrency bounds the connections used");
+            } finally {
+                pool.close();
+            }
+        }
+    }
+
+    public void testTimedOutDatabasesAreReported() throws Exception {
+        try (FakeDictServer server = server(3)) {
+            server.setLatency("define", 1000);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 4, 60000);
+            try {
+                DatabaseFanOut fanOut = new DatabaseFanOut(pool, 100, 3);
+                List<String> timedOut = new ArrayList<>();
+                long start = System.nanoTime();
+                assertThrows(DictConnectionException.class,
+                        () -> fanOut.getDefinitions("apple", null, db -> timedOut.add(db.getName())));
+                assertTrue(System.nanoTime() - start < 900_000_000L, "slow databases are not waited for");
+                assertEquals(List.of("db0", "db1", "db2"), timedOut);
+
+                server.setLatency("define", 0);
+                assertEquals("apple in db0\napple in db1\napple in db2\n", text(fanOut.getDefinitions("apple")),
+                        "cancelled connections were discarded");
+            } finally {
+                pool.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.cache.LruDefinitionCache;
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.Collection;
+import java.util.List;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DefinitionPrefetcherTest {
+
+    private static final Database ALL = new Database("*", "All");
+
+    private static String text(Collection<Definition> definitions) {
+        StringBuilder text = new StringBuilder();
+        for (Definition definition : definitions)
+            text.append(definition.getDatabase().getName()).append(": ").append(definition.getDefinition().trim())
+                    .append('\n');
+        return text.toString();
+    }
+
+    /**
+     * Waits until the prefetcher has sent the expected number of requests and given its connection back.
+     */
+    private static void await(DefinitionPrefetcher prefetcher, DictionaryConnectionPool pool, long requests)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (prefetcher.getRequestCount() < requests || pool.getIdleConnections() < pool.getOpenConnections()) {
+            if (System.currentTimeMillis() > deadline) fail("prefetch did not complete");
+            Thread.sleep(10);
+        }
+    }
+
+    public void testAllDatabasesTakeOneRequestPerWord() throws Exception {
+        try (FakeDictServer server = new FakeDictServer()) {
+            server.addDatabase("wn", "WordNet").addDatabase("gcide", "GCIDE").addDatabase("jargon", "Jargon")
+                    .addDefinition("wn", "apple", "wn apple").addDefinition("gcide", "apple", "gcide apple")
+                    .addDefinition("gcide", "pear", "gcide pear");
+            server.start(0);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 1, 60000);
+            pool.setDefinitionCache(new LruDefinitionCache(100, 1 << 20, 60000));
+            DefinitionPrefetcher prefetcher = new DefinitionPrefetcher(pool, 3, 0);
+            try {
+                prefetcher.prefetch(List.of("apple", "pear", "plum"), ALL);
+                await(prefetcher, pool, 3);
+                assertEquals(3L, prefetcher.getRequestCount(), "one request per word");
+
+                long commands = server.getCommandCount();
+                DatabaseFanOut fanOut = new DatabaseFanOut(pool, 5000);
+                assertEquals("wn: wn apple\ngcide: gcide apple\n", text(fanOut.getDefinitions("apple")));
+                assertEquals("gcide: gcide pear\n", text(fanOut.getDefinitions("pear")));
+                assertEquals("", text(fanOut.getDefinitions("plum")));
+                DictionaryConnection connection = pool.borrow();
+                try {
+                    assertEquals("wn: wn apple\ngcide: gcide apple\n", text(connection.getDefinitions("apple", ALL)));
+                } finally {
+                    pool.release(connection);
+                }
+                assertEquals(commands, server.getCommandCount(), "all answered from the cache");
+            } finally {
+                prefetcher.close();
+                pool.close();
+            }
+        }
+    }
+
+    public void testErrorReplyKeepsConnection() throws Exception {
+        try (FakeDictServer server = new FakeDictServer()) {
+            server.addDatabase("wn", "WordNet").addDefinition("wn", "apple", "wn apple");
+            server.start(0);
+            server.injectError("define", 550, 1);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort(), 1, 1, 60000);
+            pool.setDefinitionCache(new LruDefinitionCache(100, 1 << 20, 60000));
+            DefinitionPrefetcher prefetcher = new DefinitionPrefetcher(pool, 3, 0);
+            try {
+                long commands = server.getCommandCount();
+                prefetcher.prefetch(List.of("apple", "pear"), new Database("wn", "WordNet"));
+                long deadline = System.currentTimeMillis() + 5000;
+                while (server.getCommandCount() == commands || pool.getIdleConnections() < pool.getOpenConnections()) {
+                    if (System.currentTimeMillis() > deadline) fail("prefetch did not complete");
+                    Thread.sleep(10);
+                }
+                assertEquals(0L, prefetcher.getRequestCount(), "batch stopped at the error");
+                assertEquals(1, pool.getIdleConnections(), "connection kept open");
+                assertEquals(1L, server.getConnectionCount());
+            } finally {
+                prefetcher.close();
+                pool.close();
+            }
+        }
+    }
+}
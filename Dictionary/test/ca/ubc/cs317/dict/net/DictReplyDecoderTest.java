@@ -0,0 +1,68 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DictReplyDecoderTest {
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> lines(DictReplyDecoder decoder) {
+        List<String> lines = new ArrayList<>();
+        while (decoder.nextLine())
+            lines.add(decoder.isTerminator() ? "<end>" : decoder.lineString());
+        return lines;
+    }
+
+    public void testLinesSplitAcrossFeeds() {
+        DictReplyDecoder decoder = new DictReplyDecoder();
+        decoder.feed(bytes("150 1 def"));
+        assertEquals(List.of(), lines(decoder));
+        decoder.feed(bytes("initions retrieved\r"));
+        assertEquals(List.of(), lines(decoder), "line without its LF");
+        decoder.feed(bytes("\nbare LF\n"));
+        assertEquals(List.of("150 1 definitions retrieved", "bare LF"), lines(decoder));
+        assertEquals(2L, decoder.getLinesRead());
+    }
+
+    public void testDotStuffingIsRemoved() {
+        DictReplyDecoder decoder = new DictReplyDecoder();
+        decoder.feed(bytes("..hidden\r\n.\r\n..\r\n...\r\n.x\r\n"));
+        assertEquals(List.of(".hidden", "<end>", ".", "..", ".x"), lines(decoder));
+    }
+
+    public void testUtf8LinesAreDecoded() {
+        DictReplyDecoder decoder = new DictReplyDecoder();
+        byte[] line = "caf\u00e9 \u2013 na\u00efve\r\n".getBytes(StandardCharsets.UTF_8);
+        decoder.feed(ByteBuffer.wrap(line, 0, 4)); // splits the two bytes of the e acute
+        decoder.feed(ByteBuffer.wrap(line, 4, line.length - 4));
+        assertEquals(List.of("caf\u00e9 \u2013 na\u00efve"), lines(decoder));
+    }
+
+    public void testStatusLines() throws Exception {
+        DictReplyDecoder decoder = new DictReplyDecoder();
+        decoder.feed(bytes("250 ok [d/m/c = 1/0/20]\r\nabc\r\n"));
+        assertTrue(decoder.nextLine(), "status line");
+        assertEquals(250, decoder.statusCode());
+        assertEquals(250, decoder.parseStatus().getStatusCode());
+        assertTrue(decoder.nextLine(), "text line");
+        assertEquals(-1, decoder.statusCode());
+    }
+
+    public void testReadLineFromChannel() throws Exception {
+        DictReplyDecoder decoder = new DictReplyDecoder(Channels.newChannel(
+                new ByteArrayInputStream("220 hello\r\npartial".getBytes(StandardCharsets.UTF_8))));
+        decoder.readLine();
+        assertEquals("220 hello", decoder.lineString());
+        assertThrows(EOFException.class, decoder::readLine);
+    }
+}
@@ -0,0 +1,265 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.IOException;
+import java.util.*;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DictionaryConnectionTest {
+
+    private static final Database WN = new Database("wn", "WordNet");
+    private static final MatchingStrategy PREFIX = new MatchingStrategy("prefix", "Prefix");
+
+    private static FakeDictServer server(int words) throws IOException {
+        FakeDictServer server = new FakeDictServer().addDatabase("wn", "WordNet");
+        for (int i = 0; i < words; i++)
+            server.addDefinition("wn", "w" + i, "meaning of w" + i);
+        server.start(0);
+        return server;
+    }
+
+    private static String text(Collection<Definition> definitions) {
+        StringBuilder text = new StringBuilder();
+        for (Definition definition : definitions)
+            text.append(definition.getDefinition().trim());
+        return text.toString();
+    }
+
+    public void testPipelinedDefinitionsKeepOrder() throws Exception {
+        try (FakeDictServer server = server(50)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            List<String> words = new ArrayList<>();
+            for (int i = 59; i >= 0; i--)
+                words.add("w" + i); // w50 to w59 have no definition
+            Map<String, Collection<Definition>> definitions = connection.getDefinitions(words, WN, 4);
+
+            assertEquals(words, new ArrayList<>(definitions.keySet()));
+            for (String word : words)
+                assertEquals(word.compareTo("w50") >= 0 && word.length() == 3 ? "" : "meaning of " + word,
+                        text(definitions.get(word)), word);
+            connection.close();
+        }
+    }
+
+    public void testPipelinedMatchListsKeepOrder() throws Exception {
+        try (FakeDictServer server = server(30)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            Map<String, Set<String>> matches = connection.getMatchLists(List.of("w2", "w1", "x", "w29"), PREFIX, WN, 2);
+
+            assertEquals(List.of("w2", "w1", "x", "w29"), new ArrayList<>(matches.keySet()));
+            assertEquals(Set.of("w2", "w20", "w21", "w22", "w23", "w24", "w25", "w26", "w27", "w28", "w29"),
+                    matches.get("w2"));
+            assertEquals(Set.of(), matches.get("x"));
+            assertEquals(Set.of("w29"), matches.get("w29"));
+            connection.close();
+        }
+    }
+
+    public void testDatabaseListIsASnapshot() throws Exception {
+        try (FakeDictServer server = server(1)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            Collection<Database> databases = connection.getDatabaseList();
+            connection.reconnect();
+            connection.getDatabaseList();
+            assertEquals(1, databases.size());
+            assertThrows(UnsupportedOperationException.class, () -> databases.clear());
+            connection.close();
+        }
+    }
+
+    public void testInvalidWindowIsRejected() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            assertThrows(IllegalArgumentException.class, () -> connection.getDefinitions(List.of("w1"), WN, 0));
+            assertThrows(IllegalArgumentException.class,
+                    () -> connection.getMatchLists(List.of("w1"), PREFIX, WN, -1));
+            assertEquals("meaning of w1", text(connection.getDefinitions(List.of("w1"), WN, 1).get("w1")),
+                    "connection still usable");
+            connection.close();
+        }
+    }
+
+    public void testFailedBatchDoesNotDesynchronizeConnection() throws Exception {
+        try (FakeDictServer server = server(20)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            connection.getDatabaseList();
+            server.injectError("define", 420, 4);
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+                words.add("w" + i);
+            assertThrows(DictConnectionException.class, () -> connection.getDefinitions(words, WN, 8));
+
+            // Replies to the commands sent after the failed one must not be read as replies to later commands
+            server.injectError("define", 420, Integer.MAX_VALUE);
+            assertEquals("meaning of w15", text(connection.getDefinitions("w15", WN)));
+            assertEquals("meaning of w16", text(connection.getDefinitions("w16", WN)));
+            connection.close();
+        }
+    }
+
+    public void testReconnectsAfterIdleTimeout() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            server.setIdleTimeout(200);
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            assertEquals(1, connection.getDatabaseList().size());
+            Thread.sleep(500);
+
+            assertEquals("meaning of w1", text(connection.getDefinitions("w1", WN)));
+            assertEquals(1, connection.getReconnectCount());
+            assertEquals(2L, server.getConnectionCount());
+            long commands = server.getCommandCount();
+            connection.getStrategyList();
+            connection.getStrategyList();
+            assertEquals(commands + 1, server.getCommandCount(), "strategy list requested once");
+            connection.close();
+        }
+    }
+
+    public void testRetriesCommandInterruptedByDisconnect() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            server.injectDisconnect("define", 2);
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            List<Definition> streamed = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                streamed.clear();
+                connection.getDefinitions("w" + i, WN, streamed::add);
+                assertEquals("meaning of w" + i, text(streamed));
+            }
+            assertEquals(3, connection.getReconnectCount(), "every DEFINE after the first dropped once");
+
+            // The third MATCH is the second command of the batch, so the batch is sent again on a new socket
+            server.injectDisconnect("match", 3);
+            assertEquals(Set.of("w3"), connection.getMatchList("w3", PREFIX, WN));
+            assertEquals(Map.of("w1", Set.of("w1"), "w2", Set.of("w2")),
+                    connection.getMatchLists(List.of("w1", "w2"), PREFIX, WN));
+            assertEquals(4, connection.getReconnectCount());
+            connection.close();
+        }
+    }
+
+    public void testInterruptedCommandIsNotRetried() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            connection.getDatabaseList();
+            server.setLatency("define", 2000);
+
+            Exception[] failure = new Exception[1];
+            Thread thread = new Thread(() -> {
+                try {
+                    connection.getDefinitions("w1", WN);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            thread.start();
+            Thread.sleep(200);
+            thread.interrupt();
+            thread.join(5000);
+
+            assertTrue(!thread.isAlive(), "interrupted command returned");
+            assertTrue(failure[0] instanceof DictConnectionException, "interrupted command failed");
+            assertEquals(0, connection.getReconnectCount());
+            assertEquals(1L, server.getConnectionCount());
+            connection.close();
+        }
+    }
+
+    public void testServerErrorsAreNotRetried() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            server.injectError("match", 420, 1);
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            long commands = server.getCommandCount();
+            assertThrows(DictConnectionException.class, () -> connection.getMatchList("w", PREFIX, WN));
+            assertEquals(commands + 1, server.getCommandCount());
+            assertEquals(0, connection.getReconnectCount());
+            assertTrue(!connection.isClosed(), "an error reply leaves the connection in sync");
+            assertEquals("meaning of w1", text(connection.getDefinitions("w1", WN)));
+            connection.close();
+        }
+    }
+
+    public void testErrorReplyToLastCommandSentKeepsConnection() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            connection.getDatabaseList();
+            server.injectError("define", 420, 3);
+            assertThrows(DictConnectionException.class,
+                    () -> connection.getDefinitions(List.of("w0", "w1", "w2"), WN, 4));
+            assertTrue(!connection.isClosed(), "no reply left unread after the last one");
+
+            server.injectError("match", 420, 1);
+            assertThrows(DictConnectionException.class,
+                    () -> connection.getMatchLists(List.of("w1", "w2"), PREFIX, WN, 1));
+            assertTrue(!connection.isClosed(), "the second command was never sent");
+
+            assertEquals("meaning of w1", text(connection.getDefinitions("w1", WN)));
+            assertEquals(0, connection.getReconnectCount());
+            assertEquals(1L, server.getConnectionCount());
+            connection.close();
+        }
+    }
+
+    public void testInterruptedReplyClosesConnection() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            server.addDatabase("foldoc", "FOLDOC").addDefinition("foldoc", "w1", "another meaning of w1");
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            assertThrows(DictConnectionException.class, () -> connection.getDefinitions("w1", new Database("*", "All"),
+                    definition -> { throw new IllegalStateException("consumer failed"); }));
+            assertTrue(connection.isClosed(), "a reply left half read closes the connection");
+
+            assertEquals("meaning of w2", text(connection.getDefinitions("w2", WN)));
+            assertEquals(1, connection.getReconnectCount());
+            connection.close();
+        }
+    }
+
+    public void testWordsAreQuotedAndControlCharactersRejected() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            server.addDefinition("wn", "say \"hi\"", "a greeting").addDefinition("wn", "c:\\dir", "a path");
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            assertEquals("a greeting", text(connection.getDefinitions("say \"hi\"", WN)));
+            assertEquals("a path", text(connection.getDefinitions("c:\\dir", WN)));
+
+            long commands = server.getCommandCount();
+            assertThrows(DictConnectionException.class, () -> connection.getDefinitions("x\r\ndefine wn w1", WN));
+            assertThrows(DictConnectionException.class,
+                    () -> connection.getDefinitions(List.of("w1", "x\ny", "w2"), WN));
+            assertThrows(DictConnectionException.class, () -> connection.getMatchList("x\ry", PREFIX, WN));
+            assertEquals(commands, server.getCommandCount(), "nothing sent for invalid words");
+
+            assertEquals("meaning of w2", text(connection.getDefinitions("w2", WN)));
+            connection.close();
+        }
+    }
+
+    public void testClosedConnectionIsNotReopened() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            DictionaryConnection connection = new DictionaryConnection("localhost", server.getPort());
+            connection.close();
+            assertThrows(DictConnectionException.class, () -> connection.getDefinitions("w1", WN));
+            assertEquals(1L, server.getConnectionCount());
+        }
+    }
+
+    public void testPoolKeepAliveKeepsIdleConnectionsOpen() throws Exception {
+        try (FakeDictServer server = server(5)) {
+            server.setIdleTimeout(1600);
+            DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", server.getPort());
+            pool.setKeepAliveMillis(1000);
+            Thread.sleep(3500);
+
+            DictionaryConnection connection = pool.borrow();
+            assertEquals("meaning of w2", text(connection.getDefinitions("w2", WN)));
+            assertEquals(0, connection.getReconnectCount());
+            assertEquals(1L, server.getConnectionCount());
+            pool.release(connection);
+            pool.close();
+        }
+    }
+}
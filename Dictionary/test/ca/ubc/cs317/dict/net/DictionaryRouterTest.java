@@ -0,0 +1,85 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.fake.FakeDictServer;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collection;
+import java.util.List;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DictionaryRouterTest {
+
+    private static final Database WN = new Database("wn", "WordNet");
+
+    private static FakeDictServer server(String meaning) throws IOException {
+        FakeDictServer server = new FakeDictServer().addDatabase("wn", "WordNet").addDefinition("wn", "apple", meaning);
+        server.start(0);
+        return server;
+    }
+
+    /**
+     * Creates a router that ranks the first server first, since the probes of the second one are slow.
+     */
+    private static DictionaryRouter router(FakeDictServer first, FakeDictServer second) {
+        second.setLatency("status", 300);
+        return new DictionaryRouter(List.of("localhost:" + first.getPort(), "localhost:" + second.getPort()), 2, 60000);
+    }
+
+    private static String text(Collection<Definition> definitions) {
+        StringBuilder text = new StringBuilder();
+        for (Definition definition : definitions)
+            text.append(definition.getDefinition().trim());
+        return text.toString();
+    }
+
+    public void testBrokenConnectionFailsOver() throws Exception {
+        try (FakeDictServer first = server("first"); FakeDictServer second = server("second")) {
+            first.injectDisconnect("define", 1);
+            DictionaryRouter router = router(first, second);
+            try {
+                assertEquals("second", text(router.getDefinitions("apple", WN)));
+                // The second server is tried as soon as the first fails, unless the hedge delay expired before
+                assertEquals(1L, router.getFailoverCount() + router.getHedgeCount());
+            } finally {
+                router.close();
+            }
+        }
+    }
+
+    public void testErrorReplyIsNotFailedOver() throws Exception {
+        try (FakeDictServer first = server("first"); FakeDictServer second = server("second")) {
+            first.injectError("define", 550, 1);
+            DictionaryRouter router = router(first, second);
+            try {
+                assertThrows(DictConnectionException.class, () -> router.getDefinitions("apple", WN));
+                assertEquals(0L, router.getFailoverCount());
+                first.injectError("define", 550, Integer.MAX_VALUE);
+                assertEquals("first", text(router.getDefinitions("apple", WN)), "first server still used");
+            } finally {
+                router.close();
+            }
+        }
+    }
+
+    public void testSilentServerTimesOut() throws Exception {
+        // Connections are completed by the backlog of the socket, but nothing is ever sent on them
+        try (ServerSocket silent = new ServerSocket(0)) {
+            long start = System.nanoTime();
+            assertThrows(DictConnectionException.class,
+                    () -> new DictionaryConnection("localhost", silent.getLocalPort(), 200));
+
+            DictionaryRouter router = new DictionaryRouter(List.of("localhost:" + silent.getLocalPort()), 2, 60000, 200);
+            try {
+                assertThrows(DictConnectionException.class, () -> router.getDefinitions("apple", WN));
+            } finally {
+                router.close();
+            }
+            assertTrue(System.nanoTime() - start < 5_000_000_000L, "requests to a silent server time out");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ca.ubc.cs317.dict.test;
+
+import java.util.Objects;
+
+/**
+ * Assertions used by the tests. A failed check throws an AssertionError describing the values involved.
+ */
+public final class Check {
+
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    private Check() {
+    }
+
+    public static void assertTrue(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    public static void assertEquals(Object expected, Object actual) {
+        assertEquals(expected, actual, null);
+    }
+
+    public static void assertEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual))
+            throw new AssertionError((message == null ? "" : message + ": ") + "expected <" + expected +
+                    "> but was <" + actual + ">");
+    }
+
+    /**
+     * Runs code that must fail with a given type of exception.
+     *
+     * @return The exception thrown.
+     */
+    public static <T extends Throwable> T assertThrows(Class<T> type, Body body) {
+        try {
+            body.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) return type.cast(e);
+            throw new AssertionError("expected " + type.getSimpleName() + " but got " + e, e);
+        }
+        throw new AssertionError("expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+
+    public static void fail(String message) {
+        throw new AssertionError(message);
+    }
+}
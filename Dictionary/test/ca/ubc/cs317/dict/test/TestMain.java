@@ -0,0 +1,65 @@
+package ca.ubc.cs317.dict.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Runs the tests offline: tests that need a server start an in-process FakeDictServer. Every public method of a test
+ * class whose name starts with "test" is run on a new instance of the class. The first argument, if present, selects
+ * the classes whose simple name contains it. The exit status is 1 if any test failed.
+ */
+public final class TestMain {
+
+    private static final String[] CLASSES = {
+            "ca.ubc.cs317.dict.util.DictStringParserTest",
+            "ca.ubc.cs317.dict.net.DictReplyDecoderTest",
+            "ca.ubc.cs317.dict.net.DictionaryConnectionTest",
+            "ca.ubc.cs317.dict.net.DictionaryRouterTest",
+            "ca.ubc.cs317.dict.net.DatabaseFanOutTest",
+            "ca.ubc.cs317.dict.net.AsyncDictionaryConnectionTest",
+            "ca.ubc.cs317.dict.net.DefinitionPrefetcherTest",
+            "ca.ubc.cs317.dict.cache.DiskCacheStoreTest",
+            "ca.ubc.cs317.dict.cache.MatchCacheTest",
+            "ca.ubc.cs317.dict.local.HeadwordTrieTest",
+            "ca.ubc.cs317.dict.local.DictZipDataTest",
+            "ca.ubc.cs317.dict.local.LocalDictionaryTest",
+            "ca.ubc.cs317.dict.http.DictHttpGatewayTest",
+            "ca.ubc.cs317.dict.cli.BulkLookupTest",
+    };
+
+    private TestMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 ? args[0] : "";
+        int run = 0, failed = 0;
+        for (String name : CLASSES) {
+            Class<?> type = Class.forName(name);
+            if (!type.getSimpleName().contains(filter)) continue;
+
+            Method[] methods = type.getMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                if (!method.getName().startsWith("test") || method.getParameterCount() != 0 ||
+                        Modifier.isStatic(method.getModifiers()))
+                    continue;
+                run++;
+                long start = System.nanoTime();
+                try {
+                    method.invoke(type.getConstructor().newInstance());
+                    System.out.printf("PASS %s.%s (%d ms)%n", type.getSimpleName(), method.getName(),
+                            (System.nanoTime() - start) / 1000000);
+                } catch (InvocationTargetException e) {
+                    failed++;
+                    System.out.printf("FAIL %s.%s%n", type.getSimpleName(), method.getName());
+                    e.getCause().printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.printf("%d tests, %d failed%n", run, failed);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
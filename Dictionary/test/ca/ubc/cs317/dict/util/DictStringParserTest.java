@@ -0,0 +1,68 @@
+package ca.ubc.cs317.dict.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static ca.ubc.cs317.dict.test.Check.*;
+
+public class DictStringParserTest {
+
+    private static List<String> atoms(String line) {
+        return Arrays.asList(DictStringParser.splitAtoms(line));
+    }
+
+    public void testSplitsOnSpacesAndTabs() {
+        assertEquals(List.of("define", "wn", "cat"), atoms("define  wn\tcat"));
+        assertEquals(List.of(), atoms("   "));
+    }
+
+    public void testDoubleQuotesKeepSpaces() {
+        assertEquals(List.of("151", "ice cream", "wn", "WordNet (r) 3.0 (2006)"),
+                atoms("151 \"ice cream\" wn \"WordNet (r) 3.0 (2006)\""));
+        assertEquals(List.of("", "x"), atoms("\"\" x"));
+    }
+
+    public void testBackslashEscapesInQuotedAtoms() {
+        assertEquals(List.of("say \"hi\"", "a\\b"), atoms("\"say \\\"hi\\\"\" \"a\\\\b\""));
+    }
+
+    public void testBackslashesAreLiteralOutsideQuotes() {
+        assertEquals(List.of("a\\b"), atoms("a\\b"));
+    }
+
+    public void testSingleQuotes() {
+        assertEquals(List.of("it's here", "x"), atoms("'it\\'s here' x"));
+        assertEquals(List.of("don't stop"), atoms("\"don't stop\""), "single quote inside double quotes");
+        assertEquals(List.of("say \"hi\""), atoms("'say \"hi\"'"), "double quote inside single quotes");
+    }
+
+    public void testUnterminatedQuoteRunsToEndOfLine() {
+        assertEquals(List.of("a", "b c"), atoms("a \"b c"));
+    }
+
+    public void testQuoteRoundTrips() {
+        for (String word : List.of("cat", "ice cream", "say \"hi\"", "back\\slash", "don't", "a\tb".replace("\t", "-"))) {
+            String quoted = DictStringParser.quote(word);
+            assertEquals(List.of("define", "wn", word), atoms("define wn " + quoted), quoted);
+        }
+        assertEquals("cat", DictStringParser.quote("cat"));
+        assertEquals("\"say \\\"hi\\\"\"", DictStringParser.quote("say \"hi\""));
+    }
+
+    public void testControlCharactersAreRejected() {
+        for (String word : List.of("a\r\ndefine wn b", "a\nb", "tab\there", "nul\u0000", "", "del\u007f")) {
+            assertTrue(!DictStringParser.isValidWord(word), "invalid: " + word);
+            assertThrows(IllegalArgumentException.class, () -> DictStringParser.quote(word));
+        }
+        assertTrue(DictStringParser.isValidWord("caf\u00e9 au lait"), "non-ASCII words are valid");
+    }
+
+    public void testTokenizeCountsAtomsThatDontFit() {
+        int[] bounds = new int[4];
+        String line = "one two three four";
+        assertEquals(4, DictStringParser.tokenize(line, bounds));
+        assertEquals("two", DictStringParser.atom(line, bounds, 1));
+        assertEquals(List.of("one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten"),
+                atoms("one two three four five six seven eight nine ten"));
+    }
+}